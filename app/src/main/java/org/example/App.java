@@ -1,8 +1,13 @@
 package org.example;
 
+import java.io.File;
+import java.util.Iterator;
+import java.util.stream.Stream;
 import org.example.client.ClientUI;
+import org.example.client.LoadGenerator;
 import org.example.server.Server;
 import org.example.client.TimeSeriesClient;
+import org.example.client.Workload;
 
 /**
  * Programa principal
@@ -13,13 +18,20 @@ public class App {
     private static final String DEFAULT_PORT = "7575";
     private static final String DEFAULT_MAX_DAYS = "30";
     private static final String DEFAULT_MAX_SERIES_IN_MEMORY = "5";
+    private static final String DEFAULT_EXECUTION_MODE = "nio";
+    private static final String DEFAULT_LOAD_CONNECTIONS = "16";
+    private static final String DEFAULT_LOAD_RATE = "1000";
+    private static final String DEFAULT_LOAD_SECONDS = "30";
     private static final String CLIENT_MODE = "client";
     private static final String SERVER_MODE = "server";
+    private static final String LOAD_MODE = "load";
 
     public static void main(String[] args) {
         try {
             if (args.length == 0) {
-                System.err.println("Usage: java App <client|server> [options]");
+                System.err.println("Usage: java App <client|server|load> [options]");
+                System.err.println("  server [port] [maxDays] [maxSeriesInMemory] [nio|virtual]");
+                System.err.println("  load [port] [connections] [ops/s] [seconds] [workload.jsonl]");
                 return;
             }
 
@@ -27,7 +39,8 @@ public class App {
             switch (mode) {
                 case CLIENT_MODE: startClient(args); break;
                 case SERVER_MODE: startServer(args); break;
-                default: System.err.println("Invalid mode. Use 'client' or 'server'."); break;
+                case LOAD_MODE: startLoad(args); break;
+                default: System.err.println("Invalid mode. Use 'client', 'server' or 'load'."); break;
             }
         } catch (Exception e) {
             System.err.println("An error occurred: " + e.getMessage());
@@ -55,13 +68,54 @@ public class App {
             String port = args.length > 1 ? args[1] : DEFAULT_PORT;
             String maxDays = args.length > 2 ? args[2] : DEFAULT_MAX_DAYS;
             String maxSeriesInMemory = args.length > 3 ? args[3] : DEFAULT_MAX_SERIES_IN_MEMORY;
+            String executionMode = args.length > 4 ? args[4] : DEFAULT_EXECUTION_MODE;
 
             Server serverApp = new Server();
-            serverApp.startServer(port, maxDays, maxSeriesInMemory);
+            serverApp.startServer(port, maxDays, maxSeriesInMemory, executionMode);
         } catch (NumberFormatException e) {
             System.err.println("Invalid numeric argument for server: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
         } catch (Exception e) {
             System.err.println("Failed to start server: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Gerador de carga contra um servidor local
+     * Sem ficheiro de workload usa uma mistura sintética, configurável por
+     * timeseries.load.mix (ver Workload.Mix), timeseries.load.products e
+     * timeseries.load.maxInFlight. Com ficheiro, seconds <= 0 envia-o todo.
+     */
+    private static void startLoad(String[] args) {
+        try {
+            int port = Integer.parseInt(args.length > 1 ? args[1] : DEFAULT_PORT);
+            int connections = Integer.parseInt(args.length > 2 ? args[2] : DEFAULT_LOAD_CONNECTIONS);
+            double rate = Double.parseDouble(args.length > 3 ? args[3] : DEFAULT_LOAD_RATE);
+            long seconds = Long.parseLong(args.length > 4 ? args[4] : DEFAULT_LOAD_SECONDS);
+
+            Iterator<Workload.Operation> operations;
+            if (args.length > 5) {
+                operations = Workload.read(new File(args[5])).iterator();
+            } else {
+                if (seconds <= 0) throw new IllegalArgumentException("A mistura sintética precisa de uma duração");
+                Workload.Mix mix = new Workload.Mix(
+                    System.getProperty("timeseries.load.mix", Workload.Mix.DEFAULT),
+                    Integer.getInteger("timeseries.load.products", 100));
+                operations = Stream.generate(mix::next).iterator();
+            }
+
+            LoadGenerator generator = new LoadGenerator("localhost", port, connections, rate,
+                Integer.getInteger("timeseries.load.maxInFlight", 10_000));
+            System.out.println("Load: " + connections + " connections, " + rate + " ops/s, port " + port + "...");
+            long elapsed = generator.run(operations, seconds * 1000, "loadgen", "loadgen");
+            generator.report(System.out, elapsed);
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid numeric argument for load: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+        } catch (Exception e) {
+            System.err.println("Load generator failed: " + e.getMessage());
+        }
+    }
+}
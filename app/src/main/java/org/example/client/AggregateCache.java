@@ -0,0 +1,85 @@
+package org.example.client;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cache dos agregados por (produto, dia) dos dias fechados
+ *
+ * Um dia fechado não muda, pelo que a entrada nunca fica desatualizada
+ * enquanto o servidor mantiver os seus dados; só o dia corrente é sempre
+ * pedido ao servidor. O dia corrente conhecido avança com os avisos de
+ * mudança de dia e com as respostas; os dias mais antigos do que maxDays
+ * antes dele são descartados.
+ */
+class AggregateCache {
+    /**
+     * Agregados de um produto num dia
+     */
+    static class Day {
+        final long quantity;
+        final double volume;
+        final double averagePrice;
+        final double maxPrice;
+        final boolean hasSales;
+
+        Day(long quantity, double volume, double averagePrice, double maxPrice, boolean hasSales) {
+            this.quantity = quantity;
+            this.volume = volume;
+            this.averagePrice = averagePrice;
+            this.maxPrice = maxPrice;
+            this.hasSales = hasSales;
+        }
+    }
+
+    private final Map<String, Map<Integer, Day>> products = new ConcurrentHashMap<>();
+    private final int maxDays;
+    private final AtomicInteger currentDay = new AtomicInteger(-1);
+
+    AggregateCache(int maxDays) {
+        this.maxDays = Math.max(1, maxDays);
+    }
+
+    int getMaxDays() {
+        return maxDays;
+    }
+
+    /**
+     * Dia corrente do servidor tal como é conhecido aqui, ou -1
+     */
+    int currentDay() {
+        return currentDay.get();
+    }
+
+    Day get(String product, int day) {
+        Map<Integer, Day> days = products.get(product);
+        return days != null ? days.get(day) : null;
+    }
+
+    void put(String product, int day, Day aggregates) {
+        int today = currentDay.get();
+        if (day >= today || day < today - maxDays) return;
+        products.computeIfAbsent(product, p -> new ConcurrentHashMap<>()).put(day, aggregates);
+    }
+
+    /**
+     * O servidor passou para o dia dado; avisos atrasados ou repetidos são ignorados
+     */
+    void advanceTo(int day) {
+        int previous = currentDay.getAndAccumulate(day, Math::max);
+        if (day <= previous) return;
+        int oldest = day - maxDays;
+        for (Map<Integer, Day> days : products.values()) {
+            days.keySet().removeIf(d -> d < oldest);
+        }
+    }
+
+    /**
+     * Descarta tudo, por exemplo ao perder a ligação (podem ter-se perdido avisos)
+     */
+    void clear() {
+        currentDay.set(-1);
+        products.clear();
+    }
+}
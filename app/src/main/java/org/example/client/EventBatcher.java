@@ -0,0 +1,128 @@
+package org.example.client;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Agrupa eventos e envia-os com ADD_EVENTS
+ * Um lote parte quando atinge maxBatchSize eventos ou quando o evento mais
+ * antigo do lote espera há maxDelayMs, o que acontecer primeiro.
+ * Erros de um envio em segundo plano são relançados no próximo add/flush.
+ */
+public class EventBatcher implements AutoCloseable {
+    private final TimeSeriesClient client;
+    private final int maxBatchSize;
+    private final long maxDelayMs;
+    private final ScheduledExecutorService timer;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private List<TimeSeriesClient.EventRecord> buffer = new ArrayList<>();
+    private ScheduledFuture<?> scheduledFlush;
+    private IOException failure;
+
+    public EventBatcher(TimeSeriesClient client, int maxBatchSize, long maxDelayMs) {
+        if (maxBatchSize <= 0) throw new IllegalArgumentException("maxBatchSize tem de ser positivo");
+        this.client = client;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayMs = maxDelayMs;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "timeseries-event-batcher");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Acrescenta um evento ao lote; envia-o se ficar cheio
+     */
+    public void add(String productName, long quantity, double price) throws IOException {
+        List<TimeSeriesClient.EventRecord> full = null;
+        lock.lock();
+        try {
+            rethrowFailure();
+            buffer.add(new TimeSeriesClient.EventRecord(productName, quantity, price));
+            if (buffer.size() >= maxBatchSize) {
+                full = takeBuffer();
+            } else if (scheduledFlush == null) {
+                scheduledFlush = timer.schedule(this::flushInBackground, maxDelayMs, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (full != null) client.addEvents(full);
+    }
+
+    /**
+     * Envia já o que estiver no lote
+     */
+    public void flush() throws IOException {
+        List<TimeSeriesClient.EventRecord> batch;
+        lock.lock();
+        try {
+            rethrowFailure();
+            batch = takeBuffer();
+        } finally {
+            lock.unlock();
+        }
+        if (!batch.isEmpty()) client.addEvents(batch);
+    }
+
+    private void flushInBackground() {
+        List<TimeSeriesClient.EventRecord> batch;
+        lock.lock();
+        try {
+            scheduledFlush = null;
+            batch = takeBuffer();
+        } finally {
+            lock.unlock();
+        }
+        if (batch.isEmpty()) return;
+        try {
+            client.addEvents(batch);
+        } catch (IOException e) {
+            lock.lock();
+            try {
+                failure = e;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Deve ser chamado com o lock adquirido
+    private List<TimeSeriesClient.EventRecord> takeBuffer() {
+        List<TimeSeriesClient.EventRecord> batch = buffer;
+        buffer = new ArrayList<>();
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        return batch;
+    }
+
+    // Deve ser chamado com o lock adquirido
+    private void rethrowFailure() throws IOException {
+        if (failure == null) return;
+        IOException e = failure;
+        failure = null;
+        throw new IOException("Falha ao enviar lote de eventos: " + e.getMessage(), e);
+    }
+
+    /**
+     * Envia o lote pendente e termina o temporizador
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            timer.shutdown();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.example.client;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import org.example.domain.EventBatch;
+
+/**
+ * Eventos de um dia lidos por partes (STREAM_OPEN / STREAM_NEXT)
+ * Enquanto uma parte é percorrida a seguinte já foi pedida, pelo que há no
+ * máximo duas partes em memória. Erros de rede são lançados como
+ * UncheckedIOException por hasNext / next.
+ */
+public class EventStream implements Iterator<TimeSeriesClient.EventRecord>, AutoCloseable {
+    private final TimeSeriesClient client;
+    private final int streamId;
+    private final int chunkSize;
+
+    private EventBatch current;
+    private int position = 0;
+    private boolean more;
+    private CompletableFuture<DataInputStream> pendingChunk;
+    private boolean closed = false;
+
+    EventStream(TimeSeriesClient client, int streamId, int chunkSize, TimeSeriesClient.StreamChunk first)
+        throws IOException {
+        this.client = client;
+        this.streamId = streamId;
+        this.chunkSize = chunkSize;
+        accept(first);
+    }
+
+    private void accept(TimeSeriesClient.StreamChunk chunk) throws IOException {
+        current = chunk.events;
+        position = 0;
+        more = chunk.more;
+        pendingChunk = more ? client.requestChunk(streamId, chunkSize) : null;
+    }
+
+    @Override
+    public boolean hasNext() {
+        // Uma parte pode vir vazia sem a leitura ter acabado
+        while (position == current.size()) {
+            if (pendingChunk == null || closed) return false;
+            try {
+                accept(client.awaitChunk(pendingChunk));
+            } catch (IOException e) {
+                pendingChunk = null;
+                throw new UncheckedIOException(e);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public TimeSeriesClient.EventRecord next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        int i = position++;
+        return new TimeSeriesClient.EventRecord(current.productAt(i), current.quantityAt(i), current.priceAt(i));
+    }
+
+    /**
+     * Termina a leitura; se ainda houver partes no servidor, liberta o cursor
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        if (pendingChunk == null) return;
+        // Espera pela parte já pedida, para o pedido de fecho não a ultrapassar
+        TimeSeriesClient.StreamChunk last = client.awaitChunk(pendingChunk);
+        pendingChunk = null;
+        if (last.more) client.closeStream(streamId);
+    }
+}
@@ -0,0 +1,150 @@
+package org.example.client;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import org.example.metrics.LatencyHistogram;
+import org.example.protocol.ProtocolCommands;
+
+/**
+ * Gerador de carga: envia uma sequência de operações a um ritmo fixo por
+ * várias ligações e mede a latência por comando
+ *
+ * A carga é em malha aberta: cada operação tem um instante previsto (pelo
+ * ritmo ou pelo "atMs" do ficheiro) e a latência conta desde esse instante,
+ * não desde o envio. Se o servidor atrasar, as operações seguintes não são
+ * adiadas nem deixam de contar o tempo que esperaram (sem omissão
+ * coordenada). Cada operação corre numa virtual thread; as ligações são
+ * partilhadas, já que o cliente multiplexa pedidos.
+ */
+public class LoadGenerator {
+    private static final int MAX_COMMAND = 256;
+
+    private final String host;
+    private final int port;
+    private final int connections;
+    private final double ratePerSecond;
+    private final int maxInFlight;
+
+    private final AtomicReferenceArray<LatencyHistogram> latencies = new AtomicReferenceArray<>(MAX_COMMAND);
+    private final AtomicReferenceArray<LongAdder> errors = new AtomicReferenceArray<>(MAX_COMMAND);
+
+    public LoadGenerator(String host, int port, int connections, double ratePerSecond, int maxInFlight) {
+        if (connections < 1) throw new IllegalArgumentException("É preciso pelo menos uma ligação");
+        if (ratePerSecond <= 0) throw new IllegalArgumentException("O ritmo tem de ser positivo");
+        this.host = host;
+        this.port = port;
+        this.connections = connections;
+        this.ratePerSecond = ratePerSecond;
+        this.maxInFlight = Math.max(1, maxInFlight);
+    }
+
+    /**
+     * Envia as operações até se esgotarem ou passar durationMs (<= 0: sem limite)
+     * e devolve a duração efetiva em nanossegundos
+     */
+    public long run(Iterator<Workload.Operation> operations, long durationMs, String username, String password)
+        throws IOException, InterruptedException {
+        List<TimeSeriesClient> clients = new ArrayList<>(connections);
+        try {
+            for (int i = 0; i < connections; i++) {
+                TimeSeriesClient client = new TimeSeriesClient(host, port);
+                client.connect();
+                client.register(username, password); // falha se já existir
+                if (!client.login(username, password)) {
+                    throw new IOException("Login falhou para " + username);
+                }
+                clients.add(client);
+            }
+            return drive(operations, durationMs, clients);
+        } finally {
+            for (TimeSeriesClient client : clients) {
+                client.disconnect();
+            }
+        }
+    }
+
+    private long drive(Iterator<Workload.Operation> operations, long durationMs, List<TimeSeriesClient> clients)
+        throws InterruptedException {
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        double intervalNanos = 1e9 / ratePerSecond;
+        long start = System.nanoTime();
+        long deadline = durationMs > 0 ? start + durationMs * 1_000_000 : Long.MAX_VALUE;
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            long sent = 0;
+            while (operations.hasNext()) {
+                Workload.Operation operation = operations.next();
+                long intended = operation.atMs() >= 0
+                    ? start + operation.atMs() * 1_000_000
+                    : start + (long) (sent * intervalNanos);
+                if (intended >= deadline) break;
+
+                long wait;
+                while ((wait = intended - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                // Limite de pedidos em curso; o tempo aqui bloqueado também conta
+                inFlight.acquire();
+                TimeSeriesClient client = clients.get((int) (sent % clients.size()));
+                sent++;
+                executor.execute(() -> {
+                    int command = operation.command();
+                    try {
+                        operation.run(client);
+                    } catch (IOException | RuntimeException e) {
+                        counter(errors, command).increment();
+                    } finally {
+                        histogram(command).record(System.nanoTime() - intended);
+                        inFlight.release();
+                    }
+                });
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private LatencyHistogram histogram(int command) {
+        LatencyHistogram histogram = latencies.get(command);
+        if (histogram != null) return histogram;
+        latencies.compareAndSet(command, null, new LatencyHistogram());
+        return latencies.get(command);
+    }
+
+    private static LongAdder counter(AtomicReferenceArray<LongAdder> counters, int command) {
+        LongAdder counter = counters.get(command);
+        if (counter != null) return counter;
+        counters.compareAndSet(command, null, new LongAdder());
+        return counters.get(command);
+    }
+
+    /**
+     * Escreve o débito e a latência por comando, em microssegundos
+     */
+    public void report(PrintStream out, long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        out.printf("%-18s %9s %7s %10s %10s %10s %10s %10s%n",
+            "Comando", "Pedidos", "Erros", "Ops/s", "p50(us)", "p99(us)", "p99.9(us)", "max(us)");
+        long totalCount = 0;
+        for (int command = 0; command < MAX_COMMAND; command++) {
+            LatencyHistogram histogram = latencies.get(command);
+            if (histogram == null) continue;
+            LatencyHistogram.Snapshot s = histogram.snapshot();
+            LongAdder failed = errors.get(command);
+            totalCount += s.count;
+            out.printf("%-18s %9d %7d %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                ProtocolCommands.name(command), s.count, failed != null ? failed.sum() : 0,
+                s.count / seconds, s.p50 / 1e3, s.p99 / 1e3, s.p999 / 1e3, s.max / 1e3);
+        }
+        out.printf("Total: %d pedidos em %.1f s (%.1f ops/s, pedido %.1f ops/s)%n",
+            totalCount, seconds, totalCount / seconds, ratePerSecond);
+    }
+}
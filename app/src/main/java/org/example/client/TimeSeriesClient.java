@@ -1,19 +1,37 @@
 package org.example.client;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.Socket;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
 
+import org.example.domain.EventBatch;
+import org.example.protocol.BinaryProtocol;
 import org.example.protocol.ProtocolCommands;
 
 /**
  * Biblioteca cliente para acesso ao servidor de séries temporais
  * Suporta operações multi-threaded com sincronização eficiente
+ * Cada pedido leva um id que o servidor repete na resposta: vários pedidos
+ * ficam em curso na mesma ligação e uma thread de leitura entrega cada
+ * resposta ao pedido certo, pelo que uma espera longa não bloqueia as outras
  */
 public class TimeSeriesClient {
     private final String host;
@@ -21,8 +39,23 @@ public class TimeSeriesClient {
     private Socket socket;
     private DataInputStream dis;
     private DataOutputStream dos;
+    // Protege apenas a escrita de frames; as respostas chegam pela thread de leitura
     private final ReentrantLock socketLock = new ReentrantLock();
     
+    // Pedidos em curso, por id
+    private final Map<Integer, CompletableFuture<DataInputStream>> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger nextRequestId = new AtomicInteger(1);
+    private volatile IOException failure;
+    
+    // Token devolvido pelo último login, para retomar a sessão noutra ligação
+    private volatile String sessionToken;
+    
+    // Agregados dos dias fechados; null se a cache não estiver ativa
+    private volatile AggregateCache aggregateCache;
+    
+    // Ids de produto já resolvidos; são estáveis no servidor, mesmo entre reinícios
+    private final Map<String, Integer> productIds = new ConcurrentHashMap<>();
+    
     public TimeSeriesClient(String host, int port) {
         this.host = host;
         this.port = port;
@@ -35,208 +68,611 @@ public class TimeSeriesClient {
         socketLock.lock();
         try {
             socket = new Socket(host, port);
-            dis = new DataInputStream(socket.getInputStream());
-            dos = new DataOutputStream(socket.getOutputStream());
+            socket.setTcpNoDelay(true);
+            dis = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            dos = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            failure = null;
+            
+            Thread reader = new Thread(this::readResponses, "timeseries-client-reader");
+            reader.setDaemon(true);
+            reader.start();
         } finally {
             socketLock.unlock();
         }
+        // Avisos perdidos enquanto não havia ligação; volta a subscrever no login
+        AggregateCache cache = aggregateCache;
+        if (cache != null) cache.clear();
     }
     
     /**
-     * Registra novo utilizador
+     * Ciclo da thread de leitura: entrega cada resposta ao pedido com o mesmo id
      */
-    public boolean register(String username, String password) throws IOException {
-        socketLock.lock();
+    private void readResponses() {
+        DataInputStream in = dis;
         try {
-            dos.writeInt(ProtocolCommands.REGISTER);
-            dos.writeUTF(username);
-            dos.writeUTF(password);
-            dos.flush();
-            
-            int response = dis.readInt();
-            String message = dis.readUTF();
-            return response == ProtocolCommands.RESPONSE_SUCCESS;
-        } finally {
-            socketLock.unlock();
+            while (true) {
+                DataInputStream response = new DataInputStream(new ByteArrayInputStream(BinaryProtocol.readFrame(in)));
+                int requestId = response.readInt();
+                if (requestId == ProtocolCommands.PUSH_REQUEST_ID) {
+                    handlePush(response);
+                    continue;
+                }
+                CompletableFuture<DataInputStream> future = pending.remove(requestId);
+                if (future != null) future.complete(response);
+            }
+        } catch (IOException e) {
+            socketLock.lock();
+            try {
+                // Leitor de uma ligação anterior, já substituída por connect()
+                if (in != dis) return;
+                failure = e;
+            } finally {
+                socketLock.unlock();
+            }
+            // Os avisos de mudança de dia deixam de chegar
+            AggregateCache cache = aggregateCache;
+            if (cache != null) cache.clear();
+            for (Integer id : pending.keySet()) {
+                CompletableFuture<DataInputStream> future = pending.remove(id);
+                if (future != null) future.completeExceptionally(e);
+            }
         }
     }
     
     /**
-     * Faz login no servidor
+     * Frame enviada pelo servidor sem pedido (id PUSH_REQUEST_ID)
      */
-    public boolean login(String username, String password) throws IOException {
+    private void handlePush(DataInputStream push) throws IOException {
+        int command = push.readInt();
+        if (command == ProtocolCommands.DAY_CHANGED) {
+            int day = push.readInt();
+            AggregateCache cache = aggregateCache;
+            if (cache != null) cache.advanceTo(day);
+        }
+    }
+    
+    /**
+     * Escreve o corpo de um pedido
+     */
+    @FunctionalInterface
+    private interface RequestBody {
+        void write(DataOutputStream out) throws IOException;
+    }
+    
+    /**
+     * Envia um pedido e devolve a resposta quando esta chegar
+     * O pedido é serializado fora do lock; só a escrita da frame é exclusiva
+     */
+    private CompletableFuture<DataInputStream> send(int command, RequestBody body) throws IOException {
+        int requestId = nextRequestId.getAndIncrement();
+        if (requestId == ProtocolCommands.PUSH_REQUEST_ID) requestId = nextRequestId.getAndIncrement();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeInt(requestId);
+        out.writeInt(command);
+        body.write(out);
+        out.flush();
+        
+        CompletableFuture<DataInputStream> future = new CompletableFuture<>();
+        pending.put(requestId, future);
         socketLock.lock();
         try {
-            dos.writeInt(ProtocolCommands.LOGIN);
-            dos.writeUTF(username);
-            dos.writeUTF(password);
-            dos.flush();
-            
-            int response = dis.readInt();
-            String message = dis.readUTF();
-            return response == ProtocolCommands.RESPONSE_SUCCESS;
+            if (failure != null) throw new IOException("Ligação terminada", failure);
+            BinaryProtocol.writeFrame(dos, buffer.toByteArray());
+        } catch (IOException e) {
+            pending.remove(requestId);
+            throw e;
         } finally {
             socketLock.unlock();
         }
+        return future;
+    }
+    
+    /**
+     * Envia um pedido e bloqueia apenas a thread que o fez até à resposta
+     */
+    private DataInputStream call(int command, RequestBody body) throws IOException {
+        return await(send(command, body));
+    }
+    
+    private static DataInputStream await(CompletableFuture<DataInputStream> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrompido à espera da resposta");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw new IOException(cause.getMessage(), cause);
+            throw new IOException(cause);
+        }
+    }
+    
+    /**
+     * Lê o código de resposta e lança exceção com a mensagem do servidor em caso de erro
+     */
+    private static DataInputStream expectSuccess(DataInputStream in) throws IOException {
+        int response = in.readInt();
+        if (response != ProtocolCommands.RESPONSE_SUCCESS) {
+            throw new IOException(in.readUTF());
+        }
+        return in;
+    }
+    
+    /**
+     * true enquanto a ligação estiver aberta e a thread de leitura ativa
+     */
+    public boolean isConnected() {
+        Socket current = socket;
+        return current != null && !current.isClosed() && failure == null;
+    }
+    
+    /**
+     * Verifica se o servidor responde nesta ligação dentro de timeoutMs
+     */
+    public boolean ping(long timeoutMs) {
+        try {
+            DataInputStream in = send(ProtocolCommands.PING, out -> { })
+                .get(timeoutMs, TimeUnit.MILLISECONDS);
+            return in.readInt() == ProtocolCommands.RESPONSE_SUCCESS;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (IOException | ExecutionException | TimeoutException e) {
+            return false;
+        }
+    }
+    
+    /**
+     * Registra novo utilizador
+     */
+    public boolean register(String username, String password) throws IOException {
+        DataInputStream in = call(ProtocolCommands.REGISTER, out -> {
+            out.writeUTF(username);
+            out.writeUTF(password);
+        });
+        int response = in.readInt();
+        String message = in.readUTF();
+        return response == ProtocolCommands.RESPONSE_SUCCESS;
+    }
+    
+    /**
+     * Faz login no servidor
+     */
+    public boolean login(String username, String password) throws IOException {
+        DataInputStream in = call(ProtocolCommands.LOGIN, out -> {
+            out.writeUTF(username);
+            out.writeUTF(password);
+        });
+        int response = in.readInt();
+        String message = in.readUTF();
+        if (response != ProtocolCommands.RESPONSE_SUCCESS) return false;
+        sessionToken = in.readUTF();
+        resubscribeDayChanges();
+        return true;
+    }
+    
+    /**
+     * Autentica esta ligação com um token de sessão, sem enviar a password
+     * Usado ao restabelecer uma ligação perdida
+     */
+    public boolean resumeSession(String token) throws IOException {
+        DataInputStream in = call(ProtocolCommands.RESUME_SESSION, out -> out.writeUTF(token));
+        int response = in.readInt();
+        String message = in.readUTF();
+        if (response != ProtocolCommands.RESPONSE_SUCCESS) return false;
+        sessionToken = token;
+        resubscribeDayChanges();
+        return true;
+    }
+    
+    /**
+     * Token de sessão do último login ou retoma, ou null
+     */
+    public String getSessionToken() {
+        return sessionToken;
     }
     
     /**
      * Adiciona evento ao dia corrente
      */
     public void addEvent(String productName, long quantity, double price) throws IOException {
-        socketLock.lock();
-        try {
-            dos.writeInt(ProtocolCommands.ADD_EVENT);
-            dos.writeUTF(productName);
-            dos.writeLong(quantity);
-            dos.writeDouble(price);
-            dos.flush();
-            
-            int response = dis.readInt();
-            String message = dis.readUTF();
-        } finally {
-            socketLock.unlock();
+        DataInputStream in = call(ProtocolCommands.ADD_EVENT, out -> {
+            out.writeUTF(productName);
+            out.writeLong(quantity);
+            out.writeDouble(price);
+        });
+        expectSuccess(in).readUTF();
+    }
+    
+    /**
+     * Adiciona um lote de eventos ao dia corrente numa só ida e volta
+     * Os nomes de produto são enviados uma vez, num dicionário
+     */
+    public int addEvents(List<EventRecord> events) throws IOException {
+        List<Object[]> encoded = new ArrayList<>(events.size());
+        for (EventRecord event : events) {
+            encoded.add(new Object[]{event.productName, event.quantity, event.price});
         }
+        DataInputStream in = call(ProtocolCommands.ADD_EVENTS, out -> BinaryProtocol.serializeEvents(out, encoded));
+        return expectSuccess(in).readInt();
+    }
+    
+    /**
+     * Resolve nomes de produto para ids (registando os novos no servidor)
+     */
+    public int[] resolveProducts(String... products) throws IOException {
+        DataInputStream in = call(ProtocolCommands.RESOLVE_PRODUCTS, out -> {
+            out.writeInt(products.length);
+            for (String product : products) {
+                out.writeUTF(product);
+            }
+        });
+        int count = expectSuccess(in).readInt();
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = in.readInt();
+            productIds.put(products[i], ids[i]);
+        }
+        return ids;
+    }
+    
+    /**
+     * Id do produto, resolvido no servidor só na primeira vez
+     */
+    public int productId(String product) throws IOException {
+        Integer id = productIds.get(product);
+        return id != null ? id : resolveProducts(product)[0];
+    }
+    
+    /**
+     * Adiciona evento ao dia corrente, por id de produto
+     */
+    public void addEvent(int productId, long quantity, double price) throws IOException {
+        DataInputStream in = call(ProtocolCommands.ADD_EVENT_ID, out -> {
+            out.writeInt(productId);
+            out.writeLong(quantity);
+            out.writeDouble(price);
+        });
+        expectSuccess(in).readUTF();
+    }
+    
+    /**
+     * Adiciona um lote de eventos por id de produto
+     * Os arrays são paralelos: o evento i é (productIds[i], quantities[i], prices[i])
+     */
+    public int addEvents(int[] productIds, long[] quantities, double[] prices) throws IOException {
+        if (productIds.length != quantities.length || productIds.length != prices.length) {
+            throw new IllegalArgumentException("Arrays de eventos com tamanhos diferentes");
+        }
+        DataInputStream in = call(ProtocolCommands.ADD_EVENTS_ID, out -> {
+            out.writeInt(productIds.length);
+            for (int i = 0; i < productIds.length; i++) {
+                out.writeInt(productIds[i]);
+                out.writeLong(quantities[i]);
+                out.writeDouble(prices[i]);
+            }
+        });
+        return expectSuccess(in).readInt();
+    }
+    
+    /**
+     * Cria um agregador que envia eventos em lotes, por tamanho ou por tempo
+     */
+    public EventBatcher batcher(int maxBatchSize, long maxDelayMs) {
+        return new EventBatcher(this, maxBatchSize, maxDelayMs);
     }
     
     /**
      * Avança para próximo dia
      */
     public int nextDay() throws IOException {
-        socketLock.lock();
-        try {
-            dos.writeInt(ProtocolCommands.NEXT_DAY);
-            dos.flush();
-            
-            int response = dis.readInt();
-            int currentDay = dis.readInt();
-            return currentDay;
-        } finally {
-            socketLock.unlock();
+        DataInputStream in = call(ProtocolCommands.NEXT_DAY, out -> { });
+        return expectSuccess(in).readInt();
+    }
+    
+    /**
+     * Ativa a cache dos agregados dos dias fechados usada por getQuantity,
+     * getVolume e getPriceStats (por nome), para lookbacks até maxDays
+     * Passa a pedir ao servidor só os dias que faltam e o dia corrente, e
+     * subscreve as mudanças de dia para descartar os dias que saem da janela.
+     */
+    public void enableAggregateCache(int maxDays) throws IOException {
+        AggregateCache cache = new AggregateCache(maxDays);
+        aggregateCache = cache;
+        subscribeDayChanges(cache);
+    }
+    
+    // Depois de autenticar uma nova ligação, se a cache estiver ativa
+    private void resubscribeDayChanges() throws IOException {
+        AggregateCache cache = aggregateCache;
+        if (cache != null) subscribeDayChanges(cache);
+    }
+    
+    private void subscribeDayChanges(AggregateCache cache) throws IOException {
+        DataInputStream in = call(ProtocolCommands.SUBSCRIBE_DAY_CHANGES, out -> { });
+        cache.advanceTo(expectSuccess(in).readInt());
+    }
+    
+    /**
+     * Somas do dia corrente e dos dias fechados de uma janela
+     */
+    private static class DayTotals {
+        long quantity;
+        double volume;
+        double averagePriceSum;
+        int daysWithSales;
+        double maxPrice;
+        
+        void add(AggregateCache.Day day) {
+            quantity += day.quantity;
+            volume += day.volume;
+            if (day.hasSales) {
+                averagePriceSum += day.averagePrice;
+                daysWithSales++;
+                maxPrice = Math.max(maxPrice, day.maxPrice);
+            }
         }
     }
     
+    /**
+     * Totais do dia corrente e dos daysLookback dias anteriores, com os dias
+     * fechados da cache; null se a cache não servir (inativa, lookback maior
+     * do que a cache ou o servidor voltou a um dia anterior)
+     */
+    private DayTotals cachedTotals(String product, int daysLookback) throws IOException {
+        AggregateCache cache = aggregateCache;
+        if (cache == null || daysLookback < 0 || daysLookback > cache.getMaxDays()) return null;
+        int today = cache.currentDay();
+        if (today < 0) return null;
+        
+        int fromDay = Math.max(0, today - daysLookback);
+        while (fromDay < today && cache.get(product, fromDay) != null) {
+            fromDay++;
+        }
+        int requestedFrom = fromDay;
+        DataInputStream in = call(ProtocolCommands.GET_DAY_AGGREGATES, out -> {
+            out.writeUTF(product);
+            out.writeInt(requestedFrom);
+        });
+        expectSuccess(in);
+        int serverDay = in.readInt();
+        int firstDay = in.readInt();
+        AggregateCache.Day[] received = new AggregateCache.Day[in.readInt()];
+        for (int i = 0; i < received.length; i++) {
+            received[i] = new AggregateCache.Day(in.readLong(), in.readDouble(), in.readDouble(),
+                in.readDouble(), in.readBoolean());
+        }
+        if (serverDay < today) {
+            // Não são os dados que estão na cache
+            cache.clear();
+            return null;
+        }
+        cache.advanceTo(serverDay);
+        for (int i = 0; i < received.length - 1; i++) {
+            cache.put(product, firstDay + i, received[i]);
+        }
+        
+        DayTotals totals = new DayTotals();
+        totals.add(received[received.length - 1]);
+        for (int day = Math.max(0, serverDay - daysLookback); day < serverDay; day++) {
+            AggregateCache.Day aggregates = day >= firstDay ? received[day - firstDay] : cache.get(product, day);
+            if (aggregates == null) return null;
+            totals.add(aggregates);
+        }
+        return totals;
+    }
+    
     /**
      * Obtém quantidade de vendas nos últimos d dias
      */
     public long getQuantity(String product, int daysLookback) throws IOException {
-        socketLock.lock();
-        try {
-            dos.writeInt(ProtocolCommands.GET_QUANTITY);
-            dos.writeUTF(product);
-            dos.writeInt(daysLookback);
-            dos.flush();
-            
-            int response = dis.readInt();
-            return dis.readLong();
-        } finally {
-            socketLock.unlock();
-        }
+        DayTotals totals = cachedTotals(product, daysLookback);
+        if (totals != null) return totals.quantity;
+        DataInputStream in = call(ProtocolCommands.GET_QUANTITY, out -> {
+            out.writeUTF(product);
+            out.writeInt(daysLookback);
+        });
+        return expectSuccess(in).readLong();
+    }
+    
+    public long getQuantity(int productId, int daysLookback) throws IOException {
+        DataInputStream in = call(ProtocolCommands.GET_QUANTITY_ID, out -> {
+            out.writeInt(productId);
+            out.writeInt(daysLookback);
+        });
+        return expectSuccess(in).readLong();
     }
     
     /**
      * Obtém volume de vendas nos últimos d dias
      */
     public double getVolume(String product, int daysLookback) throws IOException {
-        socketLock.lock();
-        try {
-            dos.writeInt(ProtocolCommands.GET_VOLUME);
-            dos.writeUTF(product);
-            dos.writeInt(daysLookback);
-            dos.flush();
-            
-            int response = dis.readInt();
-            return dis.readDouble();
-        } finally {
-            socketLock.unlock();
-        }
+        DayTotals totals = cachedTotals(product, daysLookback);
+        if (totals != null) return totals.volume;
+        DataInputStream in = call(ProtocolCommands.GET_VOLUME, out -> {
+            out.writeUTF(product);
+            out.writeInt(daysLookback);
+        });
+        return expectSuccess(in).readDouble();
+    }
+    
+    public double getVolume(int productId, int daysLookback) throws IOException {
+        DataInputStream in = call(ProtocolCommands.GET_VOLUME_ID, out -> {
+            out.writeInt(productId);
+            out.writeInt(daysLookback);
+        });
+        return expectSuccess(in).readDouble();
     }
     
     /**
      * Obtém estatísticas de preço (média e máximo)
      */
     public PriceStats getPriceStats(String product, int daysLookback) throws IOException {
-        socketLock.lock();
-        try {
-            dos.writeInt(ProtocolCommands.GET_PRICE_STATS);
-            dos.writeUTF(product);
-            
-            dos.writeInt(daysLookback);
-            dos.flush();
-            
-            int response = dis.readInt();
-            double average = dis.readDouble();
-            double maximum = dis.readDouble();
-            return new PriceStats(average, maximum);
-        } finally {
-            socketLock.unlock();
+        DayTotals totals = cachedTotals(product, daysLookback);
+        if (totals != null) {
+            return new PriceStats(totals.averagePriceSum / Math.max(totals.daysWithSales, 1), totals.maxPrice);
         }
+        DataInputStream in = call(ProtocolCommands.GET_PRICE_STATS, out -> {
+            out.writeUTF(product);
+            out.writeInt(daysLookback);
+        });
+        expectSuccess(in);
+        double average = in.readDouble();
+        double maximum = in.readDouble();
+        return new PriceStats(average, maximum);
+    }
+    
+    public PriceStats getPriceStats(int productId, int daysLookback) throws IOException {
+        DataInputStream in = call(ProtocolCommands.GET_PRICE_STATS_ID, out -> {
+            out.writeInt(productId);
+            out.writeInt(daysLookback);
+        });
+        expectSuccess(in);
+        double average = in.readDouble();
+        double maximum = in.readDouble();
+        return new PriceStats(average, maximum);
     }
     
     /**
      * Obtém eventos para produtos específicos de um dia anterior
      */
     public List<EventRecord> getEvents(int dayOffset, Set<String> products) throws IOException {
-        socketLock.lock();
-        try {
-            dos.writeInt(ProtocolCommands.GET_EVENTS);
-            dos.writeInt(dayOffset);
-            dos.writeInt(products.size());
+        DataInputStream in = call(ProtocolCommands.GET_EVENTS, out -> {
+            out.writeInt(dayOffset);
+            out.writeInt(products.size());
             for (String product : products) {
-                dos.writeUTF(product);
+                out.writeUTF(product);
             }
-            dos.flush();
-            
-            int response = dis.readInt();
-            List<EventRecord> events = new ArrayList<>();
-            int eventCount = dis.readInt();
-            
-            for (int i = 0; i < eventCount; i++) {
-                String productName = dis.readUTF();
-                long quantity = dis.readLong();
-                double price = dis.readDouble();
-                events.add(new EventRecord(productName, quantity, price));
+        });
+        expectSuccess(in);
+        
+        List<EventRecord> events = new ArrayList<>();
+        int eventCount = in.readInt();
+        for (int i = 0; i < eventCount; i++) {
+            String productName = in.readUTF();
+            long quantity = in.readLong();
+            double price = in.readDouble();
+            events.add(new EventRecord(productName, quantity, price));
+        }
+        return events;
+    }
+    
+    /**
+     * Lê por partes os eventos dos produtos pedidos de um dia anterior
+     * Só ficam em memória uma ou duas partes de chunkSize eventos (a
+     * seguinte é pedida enquanto a atual é percorrida). O EventStream deve
+     * ser fechado se não for lido até ao fim.
+     */
+    public EventStream streamEvents(int dayOffset, Set<String> products, int chunkSize) throws IOException {
+        DataInputStream in = call(ProtocolCommands.STREAM_OPEN, out -> {
+            out.writeInt(dayOffset);
+            out.writeInt(products.size());
+            for (String product : products) {
+                out.writeUTF(product);
             }
-            
-            return events;
-        } finally {
-            socketLock.unlock();
+            out.writeInt(chunkSize);
+        });
+        expectSuccess(in);
+        int streamId = in.readInt();
+        return new EventStream(this, streamId, chunkSize, readChunk(in));
+    }
+    
+    /**
+     * Parte de uma leitura por partes
+     */
+    static class StreamChunk {
+        final EventBatch events;
+        final boolean more;
+        
+        StreamChunk(EventBatch events, boolean more) {
+            this.events = events;
+            this.more = more;
         }
     }
     
+    private static StreamChunk readChunk(DataInputStream in) throws IOException {
+        EventBatch events = BinaryProtocol.deserializeEventBatch(in);
+        return new StreamChunk(events, in.readBoolean());
+    }
+    
+    CompletableFuture<DataInputStream> requestChunk(int streamId, int chunkSize) throws IOException {
+        return send(ProtocolCommands.STREAM_NEXT, out -> {
+            out.writeInt(streamId);
+            out.writeInt(chunkSize);
+        });
+    }
+    
+    StreamChunk awaitChunk(CompletableFuture<DataInputStream> response) throws IOException {
+        return readChunk(expectSuccess(await(response)));
+    }
+    
+    void closeStream(int streamId) throws IOException {
+        DataInputStream in = call(ProtocolCommands.STREAM_CLOSE, out -> out.writeInt(streamId));
+        expectSuccess(in);
+    }
+    
     /**
-     * Espera por vendas simultâneas de dois produtos
+     * Espera por vendas simultâneas de dois produtos no dia corrente
+     * Devolve false se o dia acabar ou o timeout expirar (timeoutMs <= 0: sem limite)
      */
     public boolean waitSimultaneous(String product1, String product2, long timeoutMs) throws IOException {
-        socketLock.lock();
-        try {
-            dos.writeInt(ProtocolCommands.WAIT_SIMULTANEOUS);
-            dos.writeUTF(product1);
-            dos.writeUTF(product2);
-            dos.flush();
-            
-            int response = dis.readInt();
-            return dis.readBoolean();
-        } finally {
-            socketLock.unlock();
-        }
+        DataInputStream in = call(ProtocolCommands.WAIT_SIMULTANEOUS, out -> {
+            out.writeUTF(product1);
+            out.writeUTF(product2);
+            out.writeLong(timeoutMs);
+        });
+        return expectSuccess(in).readBoolean();
+    }
+    
+    public boolean waitSimultaneous(int productId1, int productId2, long timeoutMs) throws IOException {
+        DataInputStream in = call(ProtocolCommands.WAIT_SIMULTANEOUS_ID, out -> {
+            out.writeInt(productId1);
+            out.writeInt(productId2);
+            out.writeLong(timeoutMs);
+        });
+        return expectSuccess(in).readBoolean();
     }
     
     /**
-     * Espera por n vendas consecutivas do mesmo produto
+     * Espera por n vendas consecutivas do mesmo produto no dia corrente
+     * Devolve "" se o dia acabar ou o timeout expirar (timeoutMs <= 0: sem limite)
      */
     public String waitConsecutive(int count, long timeoutMs) throws IOException {
-        socketLock.lock();
-        try {
-            dos.writeInt(ProtocolCommands.WAIT_CONSECUTIVE);
-            dos.writeInt(count);
-            dos.flush();
-            
-            int response = dis.readInt();
-            return dis.readUTF();
-        } finally {
-            socketLock.unlock();
+        DataInputStream in = call(ProtocolCommands.WAIT_CONSECUTIVE, out -> {
+            out.writeInt(count);
+            out.writeLong(timeoutMs);
+        });
+        return expectSuccess(in).readUTF();
+    }
+    
+    /**
+     * Obtém a fotografia das métricas do servidor (contadores e histogramas)
+     */
+    public Stats getStats() throws IOException {
+        DataInputStream in = call(ProtocolCommands.STATS, out -> { });
+        expectSuccess(in);
+        
+        Stats stats = new Stats();
+        int counterCount = in.readInt();
+        for (int i = 0; i < counterCount; i++) {
+            String name = in.readUTF();
+            stats.counters.put(name, in.readLong());
         }
+        int histogramCount = in.readInt();
+        for (int i = 0; i < histogramCount; i++) {
+            String name = in.readUTF();
+            Histogram histogram = new Histogram();
+            histogram.count = in.readLong();
+            histogram.mean = in.readDouble();
+            histogram.max = in.readLong();
+            histogram.p50 = in.readLong();
+            histogram.p90 = in.readLong();
+            histogram.p99 = in.readLong();
+            histogram.p999 = in.readLong();
+            stats.histograms.put(name, histogram);
+        }
+        return stats;
     }
     
     /**
@@ -280,4 +716,27 @@ public class TimeSeriesClient {
             this.maximum = maximum;
         }
     }
+    
+    /**
+     * Métricas do servidor devolvidas pelo comando STATS
+     * Histogramas por comando ("cmd.GET_QUANTITY.service", ...) e de espera
+     * por locks ("lock.series.read", ...), com tempos em nanossegundos
+     */
+    public static class Stats {
+        public final Map<String, Long> counters = new LinkedHashMap<>();
+        public final Map<String, Histogram> histograms = new LinkedHashMap<>();
+    }
+    
+    /**
+     * Resumo de um histograma de latências, em nanossegundos
+     */
+    public static class Histogram {
+        public long count;
+        public double mean;
+        public long max;
+        public long p50;
+        public long p90;
+        public long p99;
+        public long p999;
+    }
 }
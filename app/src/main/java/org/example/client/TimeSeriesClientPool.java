@@ -0,0 +1,297 @@
+package org.example.client;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Conjunto de ligações autenticadas ao servidor, para aplicações com muitas threads
+ *
+ * Cada pedido requisita uma ligação, usa-a e devolve-a; as ligações são
+ * criadas à medida das necessidades até ao máximo e as threads a mais
+ * esperam por uma livre (até checkoutTimeoutMs). Uma ligação parada há mais
+ * de healthCheckIntervalMs é verificada com PING antes de ser entregue.
+ *
+ * Uma ligação que morre é substituída por uma nova, autenticada com o token
+ * de sessão (RESUME_SESSION) ou, se este já não valer, com login. O pedido
+ * que estava em curso nessa ligação não é repetido, porque pode ter chegado
+ * a ser aplicado; a exceção chega a quem o fez.
+ *
+ * As esperas (WAIT_*) usam ligações próprias, partilhadas por todas as
+ * esperas graças à multiplexagem de pedidos, para não ocuparem ligações
+ * do conjunto durante minutos.
+ */
+public class TimeSeriesClientPool implements AutoCloseable {
+    private static final long PING_TIMEOUT_MS = 2000;
+
+    /**
+     * Operação executada com uma ligação requisitada
+     */
+    @FunctionalInterface
+    public interface Operation<T> {
+        T apply(TimeSeriesClient client) throws IOException;
+    }
+
+    private static class PooledConnection {
+        final TimeSeriesClient client;
+        long lastUsedNanos = System.nanoTime();
+
+        PooledConnection(TimeSeriesClient client) {
+            this.client = client;
+        }
+    }
+
+    private final String host;
+    private final int port;
+    private final String username;
+    private final String password;
+    private final int maxConnections;
+    private final long healthCheckIntervalNanos;
+    private final long checkoutTimeoutNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    // Protegidos por lock; as livres usadas mais recentemente saem primeiro
+    private final Deque<PooledConnection> idle = new ArrayDeque<>();
+    private int open = 0;
+    // Escrito com lock; lido também nas ligações das esperas
+    private volatile boolean closed = false;
+
+    // Ligações das esperas, escolhidas em rotação
+    private final ReentrantLock waitLock = new ReentrantLock();
+    private final TimeSeriesClient[] waitClients;
+    private final AtomicInteger nextWaitClient = new AtomicInteger();
+
+    private volatile String sessionToken;
+
+    public TimeSeriesClientPool(String host, int port, String username, String password,
+                                int maxConnections, int waitConnections,
+                                long healthCheckIntervalMs, long checkoutTimeoutMs) {
+        if (maxConnections < 1) throw new IllegalArgumentException("É preciso pelo menos uma ligação");
+        this.host = host;
+        this.port = port;
+        this.username = username;
+        this.password = password;
+        this.maxConnections = maxConnections;
+        this.waitClients = new TimeSeriesClient[Math.max(1, waitConnections)];
+        this.healthCheckIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, healthCheckIntervalMs));
+        this.checkoutTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, checkoutTimeoutMs));
+    }
+
+    public TimeSeriesClientPool(String host, int port, String username, String password, int maxConnections) {
+        this(host, port, username, password, maxConnections, 1, 30_000, 30_000);
+    }
+
+    /**
+     * Abre e autentica uma ligação, de preferência com o token de sessão
+     */
+    private TimeSeriesClient openConnection() throws IOException {
+        TimeSeriesClient client = new TimeSeriesClient(host, port);
+        client.connect();
+        try {
+            String token = sessionToken;
+            if (token == null || !client.resumeSession(token)) {
+                if (!client.login(username, password)) {
+                    throw new IOException("Login falhou para " + username);
+                }
+            }
+            sessionToken = client.getSessionToken();
+            return client;
+        } catch (IOException e) {
+            client.disconnect();
+            throw e;
+        }
+    }
+
+    /**
+     * Executa a operação com uma ligação do conjunto
+     */
+    public <T> T execute(Operation<T> operation) throws IOException {
+        PooledConnection connection = checkout();
+        try {
+            return operation.apply(connection.client);
+        } finally {
+            release(connection);
+        }
+    }
+
+    private PooledConnection checkout() throws IOException {
+        PooledConnection connection = null;
+        lock.lock();
+        try {
+            long remaining = checkoutTimeoutNanos;
+            while (true) {
+                if (closed) throw new IOException("Conjunto de ligações fechado");
+                connection = idle.pollFirst();
+                if (connection != null) break;
+                if (open < maxConnections) {
+                    open++;
+                    break;
+                }
+                if (remaining <= 0) throw new IOException("Sem ligações livres");
+                remaining = released.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrompido à espera de uma ligação");
+        } finally {
+            lock.unlock();
+        }
+
+        // Fora do lock: verificar ou abrir a ligação não atrasa as outras threads
+        try {
+            if (connection != null && !healthy(connection)) {
+                disconnectQuietly(connection.client);
+                connection = null;
+            }
+            if (connection == null) connection = new PooledConnection(openConnection());
+            return connection;
+        } catch (IOException | RuntimeException e) {
+            discard();
+            throw e;
+        }
+    }
+
+    private boolean healthy(PooledConnection connection) {
+        if (!connection.client.isConnected()) return false;
+        if (System.nanoTime() - connection.lastUsedNanos < healthCheckIntervalNanos) return true;
+        return connection.client.ping(PING_TIMEOUT_MS);
+    }
+
+    private void release(PooledConnection connection) {
+        if (!connection.client.isConnected()) {
+            discard();
+            disconnectQuietly(connection.client);
+            return;
+        }
+        connection.lastUsedNanos = System.nanoTime();
+        lock.lock();
+        try {
+            if (!closed) {
+                idle.addFirst(connection);
+                released.signal();
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        disconnectQuietly(connection.client);
+    }
+
+    private static void disconnectQuietly(TimeSeriesClient client) {
+        try {
+            client.disconnect();
+        } catch (IOException e) {
+            // A ligação já não é usada
+        }
+    }
+
+    // Liberta o lugar de uma ligação que deixou de existir
+    private void discard() {
+        lock.lock();
+        try {
+            open--;
+            released.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ligação para esperas, restabelecida se tiver morrido
+     */
+    private TimeSeriesClient waitClient() throws IOException {
+        int slot = Math.floorMod(nextWaitClient.getAndIncrement(), waitClients.length);
+        waitLock.lock();
+        try {
+            if (closed) throw new IOException("Conjunto de ligações fechado");
+            TimeSeriesClient client = waitClients[slot];
+            if (client == null || !client.isConnected()) {
+                if (client != null) disconnectQuietly(client);
+                client = openConnection();
+                waitClients[slot] = client;
+            }
+            return client;
+        } finally {
+            waitLock.unlock();
+        }
+    }
+
+    public void addEvent(String productName, long quantity, double price) throws IOException {
+        execute(client -> {
+            client.addEvent(productName, quantity, price);
+            return null;
+        });
+    }
+
+    public int addEvents(List<TimeSeriesClient.EventRecord> events) throws IOException {
+        return execute(client -> client.addEvents(events));
+    }
+
+    public int nextDay() throws IOException {
+        return execute(TimeSeriesClient::nextDay);
+    }
+
+    public long getQuantity(String product, int daysLookback) throws IOException {
+        return execute(client -> client.getQuantity(product, daysLookback));
+    }
+
+    public double getVolume(String product, int daysLookback) throws IOException {
+        return execute(client -> client.getVolume(product, daysLookback));
+    }
+
+    public TimeSeriesClient.PriceStats getPriceStats(String product, int daysLookback) throws IOException {
+        return execute(client -> client.getPriceStats(product, daysLookback));
+    }
+
+    public List<TimeSeriesClient.EventRecord> getEvents(int dayOffset, Set<String> products) throws IOException {
+        return execute(client -> client.getEvents(dayOffset, products));
+    }
+
+    public boolean waitSimultaneous(String product1, String product2, long timeoutMs) throws IOException {
+        return waitClient().waitSimultaneous(product1, product2, timeoutMs);
+    }
+
+    public String waitConsecutive(int count, long timeoutMs) throws IOException {
+        return waitClient().waitConsecutive(count, timeoutMs);
+    }
+
+    /**
+     * Fecha todas as ligações; as que estão em uso fecham quando forem devolvidas
+     */
+    @Override
+    public void close() throws IOException {
+        List<TimeSeriesClient> toClose = new ArrayList<>();
+        lock.lock();
+        try {
+            closed = true;
+            for (PooledConnection connection : idle) {
+                toClose.add(connection.client);
+            }
+            idle.clear();
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        waitLock.lock();
+        try {
+            for (int i = 0; i < waitClients.length; i++) {
+                if (waitClients[i] != null) toClose.add(waitClients[i]);
+                waitClients[i] = null;
+            }
+        } finally {
+            waitLock.unlock();
+        }
+        for (TimeSeriesClient client : toClose) {
+            client.disconnect();
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package org.example.client;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.*;
+import org.example.protocol.ProtocolCommands;
+
+/**
+ * Sequência de operações a enviar pelo gerador de carga
+ *
+ * Pode ser lida de um ficheiro JSONL, um objeto por linha:
+ *   {"command": "ADD_EVENT", "product": "A", "quantity": 3, "price": 2.5}
+ *   {"command": "GET_QUANTITY", "product": "A", "days": 7, "atMs": 120}
+ *   {"command": "GET_EVENTS", "dayOffset": 1, "products": ["A", "B"]}
+ *   {"command": "WAIT_CONSECUTIVE", "count": 3, "timeoutMs": 100}
+ * ou gerada a partir de uma mistura de comandos com pesos. "atMs" (opcional)
+ * é o instante da operação desde o início; sem ele as operações seguem o
+ * ritmo pedido.
+ */
+public class Workload {
+    private static final long DEFAULT_WAIT_TIMEOUT_MS = 100;
+
+    /**
+     * Pedido a um servidor, com o comando usado para o agrupar no relatório
+     */
+    public interface Operation {
+        int command();
+        long atMs(); // < 0: segue o ritmo pedido
+        void run(TimeSeriesClient client) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface Call {
+        void run(TimeSeriesClient client) throws IOException;
+    }
+
+    private static Operation operation(int command, long atMs, Call call) {
+        return new Operation() {
+            public int command() { return command; }
+            public long atMs() { return atMs; }
+            public void run(TimeSeriesClient client) throws IOException { call.run(client); }
+        };
+    }
+
+    /**
+     * Lê um ficheiro JSONL; linhas vazias são ignoradas
+     */
+    public static List<Operation> read(File file) throws IOException {
+        List<Operation> operations = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) continue;
+                try {
+                    operations.add(parse(new JsonReader(line).readObject()));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(file + ":" + lineNumber + ": " + e.getMessage());
+                }
+            }
+        }
+        return operations;
+    }
+
+    private static Operation parse(Map<String, Object> fields) {
+        String command = string(fields, "command", null);
+        long atMs = number(fields, "atMs", -1);
+        switch (command) {
+            case "ADD_EVENT": {
+                String product = string(fields, "product", null);
+                long quantity = number(fields, "quantity", 1);
+                double price = decimal(fields, "price", 1);
+                return operation(ProtocolCommands.ADD_EVENT, atMs, c -> c.addEvent(product, quantity, price));
+            }
+            case "NEXT_DAY":
+                return operation(ProtocolCommands.NEXT_DAY, atMs, TimeSeriesClient::nextDay);
+            case "GET_QUANTITY": {
+                String product = string(fields, "product", null);
+                int days = (int) number(fields, "days", 0);
+                return operation(ProtocolCommands.GET_QUANTITY, atMs, c -> c.getQuantity(product, days));
+            }
+            case "GET_VOLUME": {
+                String product = string(fields, "product", null);
+                int days = (int) number(fields, "days", 0);
+                return operation(ProtocolCommands.GET_VOLUME, atMs, c -> c.getVolume(product, days));
+            }
+            case "GET_PRICE_STATS": {
+                String product = string(fields, "product", null);
+                int days = (int) number(fields, "days", 0);
+                return operation(ProtocolCommands.GET_PRICE_STATS, atMs, c -> c.getPriceStats(product, days));
+            }
+            case "GET_EVENTS": {
+                int dayOffset = (int) number(fields, "dayOffset", 1);
+                Set<String> products = new HashSet<>(strings(fields, "products"));
+                return operation(ProtocolCommands.GET_EVENTS, atMs, c -> c.getEvents(dayOffset, products));
+            }
+            case "WAIT_SIMULTANEOUS": {
+                String product1 = string(fields, "product1", null);
+                String product2 = string(fields, "product2", null);
+                long timeoutMs = number(fields, "timeoutMs", DEFAULT_WAIT_TIMEOUT_MS);
+                return operation(ProtocolCommands.WAIT_SIMULTANEOUS, atMs,
+                    c -> c.waitSimultaneous(product1, product2, timeoutMs));
+            }
+            case "WAIT_CONSECUTIVE": {
+                int count = (int) number(fields, "count", 2);
+                long timeoutMs = number(fields, "timeoutMs", DEFAULT_WAIT_TIMEOUT_MS);
+                return operation(ProtocolCommands.WAIT_CONSECUTIVE, atMs, c -> c.waitConsecutive(count, timeoutMs));
+            }
+            default:
+                throw new IllegalArgumentException("Comando desconhecido: " + command);
+        }
+    }
+
+    private static String string(Map<String, Object> fields, String name, String defaultValue) {
+        Object value = fields.get(name);
+        if (value == null) {
+            if (defaultValue != null) return defaultValue;
+            throw new IllegalArgumentException("Falta o campo \"" + name + "\"");
+        }
+        if (!(value instanceof String)) throw new IllegalArgumentException("\"" + name + "\" não é texto");
+        return (String) value;
+    }
+
+    private static long number(Map<String, Object> fields, String name, long defaultValue) {
+        Object value = fields.get(name);
+        if (value == null) return defaultValue;
+        if (!(value instanceof Double)) throw new IllegalArgumentException("\"" + name + "\" não é um número");
+        return (long) (double) (Double) value;
+    }
+
+    private static double decimal(Map<String, Object> fields, String name, double defaultValue) {
+        Object value = fields.get(name);
+        if (value == null) return defaultValue;
+        if (!(value instanceof Double)) throw new IllegalArgumentException("\"" + name + "\" não é um número");
+        return (Double) value;
+    }
+
+    private static List<String> strings(Map<String, Object> fields, String name) {
+        Object value = fields.get(name);
+        if (!(value instanceof List)) throw new IllegalArgumentException("\"" + name + "\" não é uma lista");
+        List<String> result = new ArrayList<>();
+        for (Object item : (List<?>) value) {
+            if (!(item instanceof String)) throw new IllegalArgumentException("\"" + name + "\" só pode ter texto");
+            result.add((String) item);
+        }
+        return result;
+    }
+
+    /**
+     * Mistura sintética de comandos, gerada a pedido
+     * O formato da mistura é "comando=peso,..." com os comandos add, quantity,
+     * volume, price, events, simultaneous, consecutive e nextday.
+     */
+    public static class Mix {
+        public static final String DEFAULT = "add=70,quantity=8,volume=8,price=8,events=4,simultaneous=1,consecutive=1";
+
+        private final String[] products;
+        private final List<String> kinds = new ArrayList<>();
+        private final int[] cumulative;
+        private final int total;
+        private final SplittableRandom random = new SplittableRandom(42);
+
+        public Mix(String spec, int productCount) {
+            this.products = new String[Math.max(2, productCount)];
+            for (int i = 0; i < products.length; i++) {
+                products[i] = "produto-" + i;
+            }
+            String[] parts = spec.split(",");
+            this.cumulative = new int[parts.length];
+            int sum = 0;
+            for (String part : parts) {
+                String[] kv = part.trim().split("=");
+                if (kv.length != 2) throw new IllegalArgumentException("Mistura inválida: " + part);
+                int weight = Integer.parseInt(kv[1].trim());
+                if (weight < 0) throw new IllegalArgumentException("Peso negativo: " + part);
+                sum += weight;
+                cumulative[kinds.size()] = sum;
+                kinds.add(kv[0].trim().toLowerCase());
+            }
+            if (sum == 0) throw new IllegalArgumentException("Mistura sem pesos: " + spec);
+            this.total = sum;
+            for (String kind : kinds) {
+                next(kind); // valida os nomes já aqui
+            }
+        }
+
+        /**
+         * Próxima operação; só pode ser chamado por uma thread
+         */
+        public Operation next() {
+            int pick = random.nextInt(total);
+            int i = 0;
+            while (cumulative[i] <= pick) i++;
+            return next(kinds.get(i));
+        }
+
+        private Operation next(String kind) {
+            String product = products[random.nextInt(products.length)];
+            switch (kind) {
+                case "add": {
+                    long quantity = 1 + random.nextInt(10);
+                    double price = 1 + random.nextInt(10000) / 100.0;
+                    return operation(ProtocolCommands.ADD_EVENT, -1, c -> c.addEvent(product, quantity, price));
+                }
+                case "quantity": {
+                    int days = random.nextInt(30);
+                    return operation(ProtocolCommands.GET_QUANTITY, -1, c -> c.getQuantity(product, days));
+                }
+                case "volume": {
+                    int days = random.nextInt(30);
+                    return operation(ProtocolCommands.GET_VOLUME, -1, c -> c.getVolume(product, days));
+                }
+                case "price": {
+                    int days = random.nextInt(30);
+                    return operation(ProtocolCommands.GET_PRICE_STATS, -1, c -> c.getPriceStats(product, days));
+                }
+                case "events": {
+                    int dayOffset = 1 + random.nextInt(3);
+                    Set<String> wanted = Set.of(product);
+                    return operation(ProtocolCommands.GET_EVENTS, -1, c -> c.getEvents(dayOffset, wanted));
+                }
+                case "simultaneous": {
+                    String other = products[random.nextInt(products.length)];
+                    return operation(ProtocolCommands.WAIT_SIMULTANEOUS, -1,
+                        c -> c.waitSimultaneous(product, other, DEFAULT_WAIT_TIMEOUT_MS));
+                }
+                case "consecutive": {
+                    int count = 2 + random.nextInt(3);
+                    return operation(ProtocolCommands.WAIT_CONSECUTIVE, -1,
+                        c -> c.waitConsecutive(count, DEFAULT_WAIT_TIMEOUT_MS));
+                }
+                case "nextday":
+                    return operation(ProtocolCommands.NEXT_DAY, -1, TimeSeriesClient::nextDay);
+                default:
+                    throw new IllegalArgumentException("Comando desconhecido na mistura: " + kind);
+            }
+        }
+    }
+
+    /**
+     * Leitor mínimo de JSON para as linhas do ficheiro: objetos, listas,
+     * texto, números (como Double), true / false / null
+     */
+    private static class JsonReader {
+        private final String text;
+        private int pos = 0;
+
+        JsonReader(String text) {
+            this.text = text;
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> readObject() {
+            Object value = readValue();
+            skipSpaces();
+            if (!(value instanceof Map) || pos != text.length()) {
+                throw new IllegalArgumentException("Esperado um objeto JSON por linha");
+            }
+            return (Map<String, Object>) value;
+        }
+
+        private Object readValue() {
+            skipSpaces();
+            if (pos >= text.length()) throw error("fim inesperado");
+            char c = text.charAt(pos);
+            switch (c) {
+                case '{': return readMap();
+                case '[': return readList();
+                case '"': return readString();
+                case 't': return literal("true", Boolean.TRUE);
+                case 'f': return literal("false", Boolean.FALSE);
+                case 'n': return literal("null", null);
+                default: return readNumber();
+            }
+        }
+
+        private Map<String, Object> readMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            pos++;
+            skipSpaces();
+            if (peek() == '}') {
+                pos++;
+                return map;
+            }
+            while (true) {
+                skipSpaces();
+                String key = readString();
+                skipSpaces();
+                expect(':');
+                map.put(key, readValue());
+                skipSpaces();
+                if (peek() == ',') {
+                    pos++;
+                    continue;
+                }
+                expect('}');
+                return map;
+            }
+        }
+
+        private List<Object> readList() {
+            List<Object> list = new ArrayList<>();
+            pos++;
+            skipSpaces();
+            if (peek() == ']') {
+                pos++;
+                return list;
+            }
+            while (true) {
+                list.add(readValue());
+                skipSpaces();
+                if (peek() == ',') {
+                    pos++;
+                    continue;
+                }
+                expect(']');
+                return list;
+            }
+        }
+
+        private String readString() {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (true) {
+                if (pos >= text.length()) throw error("texto não terminado");
+                char c = text.charAt(pos++);
+                if (c == '"') return sb.toString();
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                if (pos >= text.length()) throw error("texto não terminado");
+                char escaped = text.charAt(pos++);
+                switch (escaped) {
+                    case 'n': sb.append('\n'); break;
+                    case 't': sb.append('\t'); break;
+                    case 'r': sb.append('\r'); break;
+                    case 'b': sb.append('\b'); break;
+                    case 'f': sb.append('\f'); break;
+                    case 'u':
+                        if (pos + 4 > text.length()) throw error("escape inválido");
+                        sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                        pos += 4;
+                        break;
+                    default: sb.append(escaped);
+                }
+            }
+        }
+
+        private Double readNumber() {
+            int start = pos;
+            while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) pos++;
+            if (start == pos) throw error("valor inesperado");
+            try {
+                return Double.parseDouble(text.substring(start, pos));
+            } catch (NumberFormatException e) {
+                throw error("número inválido");
+            }
+        }
+
+        private Object literal(String word, Object value) {
+            if (!text.startsWith(word, pos)) throw error("valor inesperado");
+            pos += word.length();
+            return value;
+        }
+
+        private void skipSpaces() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) pos++;
+        }
+
+        private char peek() {
+            if (pos >= text.length()) throw error("fim inesperado");
+            return text.charAt(pos);
+        }
+
+        private void expect(char c) {
+            if (peek() != c) throw error("esperado '" + c + "'");
+            pos++;
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("JSON inválido na posição " + pos + ": " + message);
+        }
+    }
+}
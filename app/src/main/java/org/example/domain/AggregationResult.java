@@ -1,29 +1,9 @@
 package org.example.domain;
 
 /**
- * Cache para resultados de agregações
+ * Resultados de agregações devolvidos pelas séries temporais
  */
 public class AggregationResult {
-    public static class QuantityResult {
-        public long totalQuantity;
-        public long computedAtDay;
-        
-        public QuantityResult(long totalQuantity, long computedAtDay) {
-            this.totalQuantity = totalQuantity;
-            this.computedAtDay = computedAtDay;
-        }
-    }
-    
-    public static class VolumeResult {
-        public double totalVolume;
-        public long computedAtDay;
-        
-        public VolumeResult(double totalVolume, long computedAtDay) {
-            this.totalVolume = totalVolume;
-            this.computedAtDay = computedAtDay;
-        }
-    }
-    
     public static class PriceStats {
         public double average;
         public double maximum;
@@ -35,4 +15,34 @@ public class AggregationResult {
             this.computedAtDay = computedAtDay;
         }
     }
+    
+    /**
+     * Agregados de um produto dia a dia, de firstDay até ao dia corrente
+     * (a última posição). A média de preço é a média do dia; hasSales
+     * indica se o dia conta para a média das médias.
+     */
+    public static class DayAggregates {
+        public final int currentDay;
+        public final int firstDay;
+        public final long[] quantities;
+        public final double[] volumes;
+        public final double[] averagePrices;
+        public final double[] maxPrices;
+        public final boolean[] hasSales;
+        
+        public DayAggregates(int currentDay, int firstDay) {
+            int days = currentDay - firstDay + 1;
+            this.currentDay = currentDay;
+            this.firstDay = firstDay;
+            this.quantities = new long[days];
+            this.volumes = new double[days];
+            this.averagePrices = new double[days];
+            this.maxPrices = new double[days];
+            this.hasSales = new boolean[days];
+        }
+        
+        public int size() {
+            return quantities.length;
+        }
+    }
 }
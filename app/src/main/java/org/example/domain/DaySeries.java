@@ -0,0 +1,29 @@
+package org.example.domain;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Leitura das vendas de um dia
+ * Implementada pelo dia corrente (TimeSeries, mutável) e pelos dias
+ * fechados (SealedTimeSeries, imutáveis e sem locks)
+ */
+public interface DaySeries {
+    int getDay();
+
+    boolean hasProduct(String product);
+
+    long calculateQuantity(String product, int daysLookback, int currentDay);
+
+    double calculateVolume(String product, int daysLookback, int currentDay);
+
+    AggregationResult.PriceStats calculatePriceStats(String product, int daysLookback, int currentDay);
+
+    List<Event> getEventsForProducts(Set<String> productNames);
+
+    List<Event> getAllEvents();
+
+    EventCursor openCursor(Set<String> productNames);
+
+    void forEachProduct(ProductAggregates.Visitor visitor);
+}
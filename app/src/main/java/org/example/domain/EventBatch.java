@@ -0,0 +1,42 @@
+package org.example.domain;
+
+/**
+ * Lote de eventos codificado por dicionário, tal como chega no comando ADD_EVENTS
+ * products[productIndex[i]] é o produto do i-ésimo evento; productIds, se
+ * existir, tem o id global de cada entrada de products
+ */
+public class EventBatch {
+    private final String[] products;
+    private final int[] productIds;
+    private final int[] productIndex;
+    private final long[] quantities;
+    private final double[] prices;
+
+    public EventBatch(String[] products, int[] productIndex, long[] quantities, double[] prices) {
+        this(products, null, productIndex, quantities, prices);
+    }
+
+    public EventBatch(String[] products, int[] productIds, int[] productIndex, long[] quantities, double[] prices) {
+        this.products = products;
+        this.productIds = productIds;
+        this.productIndex = productIndex;
+        this.quantities = quantities;
+        this.prices = prices;
+    }
+
+    /**
+     * O mesmo lote com os ids globais dos produtos resolvidos
+     */
+    public EventBatch withProductIds(int[] ids) {
+        return new EventBatch(products, ids, productIndex, quantities, prices);
+    }
+
+    public int size() { return productIndex.length; }
+    public String[] getProducts() { return products; }
+    public int[] getProductIds() { return productIds; }
+    public int productIdAt(int i) { return productIds[productIndex[i]]; }
+    public int productIndexAt(int i) { return productIndex[i]; }
+    public String productAt(int i) { return products[productIndex[i]]; }
+    public long quantityAt(int i) { return quantities[i]; }
+    public double priceAt(int i) { return prices[i]; }
+}
@@ -0,0 +1,38 @@
+package org.example.domain;
+
+import java.util.Arrays;
+
+/**
+ * Constrói um EventBatch com capacidade fixa, sobre um dicionário já conhecido
+ */
+class EventBatchBuilder {
+    private final String[] products;
+    private final int[] productIndex;
+    private final long[] quantities;
+    private final double[] prices;
+    private int size = 0;
+
+    EventBatchBuilder(String[] products, int capacity) {
+        this.products = products;
+        this.productIndex = new int[Math.max(1, capacity)];
+        this.quantities = new long[productIndex.length];
+        this.prices = new double[productIndex.length];
+    }
+
+    void add(int product, long quantity, double price) {
+        productIndex[size] = product;
+        quantities[size] = quantity;
+        prices[size] = price;
+        size++;
+    }
+
+    boolean isFull() {
+        return size == productIndex.length;
+    }
+
+    EventBatch build() {
+        if (isFull()) return new EventBatch(products, productIndex, quantities, prices);
+        return new EventBatch(products, Arrays.copyOf(productIndex, size),
+            Arrays.copyOf(quantities, size), Arrays.copyOf(prices, size));
+    }
+}
@@ -0,0 +1,175 @@
+package org.example.domain;
+
+import java.util.*;
+
+/**
+ * Armazenamento colunar dos eventos de um dia
+ * Cada atributo vive num array primitivo próprio e os nomes de produto
+ * são codificados num dicionário local ao dia (nome -> id inteiro).
+ * As colunas crescem em blocos de tamanho fixo, sem cópias ao crescer.
+ * Não é thread-safe: a sincronização fica a cargo de quem a usa.
+ */
+public class EventColumns {
+    static final int CHUNK_SHIFT = 12;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    // Dicionário de produtos do dia
+    private final Map<String, Integer> productIds = new HashMap<>();
+    private final List<String> productNames = new ArrayList<>();
+    // Id global (dicionário do servidor) -> id do dia; -1 se ainda não visto
+    private int[] globalToLocal = new int[0];
+
+    // Colunas divididas em blocos
+    private int[][] productChunks = new int[1][];
+    private long[][] quantityChunks = new long[1][];
+    private double[][] priceChunks = new double[1][];
+    private long[][] timestampChunks = new long[1][];
+    private int size = 0;
+
+    /**
+     * Acrescenta um evento às colunas e devolve o id do produto
+     */
+    public int add(String productName, long quantity, double price, long timestamp) {
+        int productId = intern(productName);
+        add(productId, quantity, price, timestamp);
+        return productId;
+    }
+
+    /**
+     * Acrescenta um evento cujo produto já foi resolvido com intern()
+     */
+    public void add(int productId, long quantity, double price, long timestamp) {
+        int chunk = size >>> CHUNK_SHIFT;
+        int offset = size & CHUNK_MASK;
+        if (offset == 0) allocateChunk(chunk);
+
+        productChunks[chunk][offset] = productId;
+        quantityChunks[chunk][offset] = quantity;
+        priceChunks[chunk][offset] = price;
+        timestampChunks[chunk][offset] = timestamp;
+        size++;
+    }
+
+    /**
+     * Id do produto no dicionário do dia, acrescentando-o se for novo
+     */
+    public int intern(String productName) {
+        Integer id = productIds.get(productName);
+        if (id != null) return id;
+        int newId = productNames.size();
+        productIds.put(productName, newId);
+        productNames.add(productName);
+        return newId;
+    }
+
+    /**
+     * Id do produto no dicionário do dia a partir do seu id global
+     * Só a primeira vez que o id global aparece custa uma pesquisa pelo nome
+     */
+    public int internGlobal(int globalId, String productName) {
+        if (globalId < globalToLocal.length) {
+            int local = globalToLocal[globalId];
+            if (local >= 0) return local;
+        } else {
+            int oldLength = globalToLocal.length;
+            globalToLocal = Arrays.copyOf(globalToLocal, Math.max(globalId + 1, oldLength * 2));
+            Arrays.fill(globalToLocal, oldLength, globalToLocal.length, -1);
+        }
+        int local = intern(productName);
+        globalToLocal[globalId] = local;
+        return local;
+    }
+
+    /**
+     * Id do dia de um produto dado pelo id global, ou -1 se não tiver vendas
+     */
+    public int localId(int globalId) {
+        return globalId >= 0 && globalId < globalToLocal.length ? globalToLocal[globalId] : -1;
+    }
+
+    private void allocateChunk(int chunk) {
+        if (chunk == productChunks.length) {
+            int newLength = chunk * 2;
+            productChunks = Arrays.copyOf(productChunks, newLength);
+            quantityChunks = Arrays.copyOf(quantityChunks, newLength);
+            priceChunks = Arrays.copyOf(priceChunks, newLength);
+            timestampChunks = Arrays.copyOf(timestampChunks, newLength);
+        }
+        productChunks[chunk] = new int[CHUNK_SIZE];
+        quantityChunks[chunk] = new long[CHUNK_SIZE];
+        priceChunks[chunk] = new double[CHUNK_SIZE];
+        timestampChunks[chunk] = new long[CHUNK_SIZE];
+    }
+
+    /**
+     * Id do produto no dicionário do dia, ou -1 se não existir
+     */
+    public int productId(String productName) {
+        Integer id = productIds.get(productName);
+        return id != null ? id : -1;
+    }
+
+    public String productName(int productId) { return productNames.get(productId); }
+    public int productCount() { return productNames.size(); }
+    public int size() { return size; }
+
+    public int productIdAt(int i) { return productChunks[i >>> CHUNK_SHIFT][i & CHUNK_MASK]; }
+    public long quantityAt(int i) { return quantityChunks[i >>> CHUNK_SHIFT][i & CHUNK_MASK]; }
+    public double priceAt(int i) { return priceChunks[i >>> CHUNK_SHIFT][i & CHUNK_MASK]; }
+    public long timestampAt(int i) { return timestampChunks[i >>> CHUNK_SHIFT][i & CHUNK_MASK]; }
+
+    /**
+     * Reconstrói o evento na posição i
+     */
+    public Event eventAt(int i) {
+        return new Event(productName(productIdAt(i)), quantityAt(i), priceAt(i), timestampAt(i));
+    }
+
+    public String[] productNameArray() { return productNames.toArray(new String[0]); }
+
+    /**
+     * Cópias contíguas das colunas, com o tamanho exato
+     */
+    public int[] productIdArray() {
+        int[] out = new int[size];
+        for (int c = 0, from = 0; from < size; c++, from += CHUNK_SIZE) {
+            System.arraycopy(productChunks[c], 0, out, from, Math.min(CHUNK_SIZE, size - from));
+        }
+        return out;
+    }
+
+    public long[] quantityArray() { return copyLongs(quantityChunks); }
+    public long[] timestampArray() { return copyLongs(timestampChunks); }
+
+    public double[] priceArray() {
+        double[] out = new double[size];
+        for (int c = 0, from = 0; from < size; c++, from += CHUNK_SIZE) {
+            System.arraycopy(priceChunks[c], 0, out, from, Math.min(CHUNK_SIZE, size - from));
+        }
+        return out;
+    }
+
+    private long[] copyLongs(long[][] chunks) {
+        long[] out = new long[size];
+        for (int c = 0, from = 0; from < size; c++, from += CHUNK_SIZE) {
+            System.arraycopy(chunks[c], 0, out, from, Math.min(CHUNK_SIZE, size - from));
+        }
+        return out;
+    }
+
+    /**
+     * Máscara de ids do dicionário correspondentes aos nomes dados
+     * Devolve null se nenhum dos produtos existir no dia
+     */
+    public boolean[] productMask(Set<String> names) {
+        boolean[] mask = null;
+        for (String name : names) {
+            int id = productId(name);
+            if (id < 0) continue;
+            if (mask == null) mask = new boolean[productNames.size()];
+            mask[id] = true;
+        }
+        return mask;
+    }
+}
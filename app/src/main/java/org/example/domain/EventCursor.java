@@ -0,0 +1,17 @@
+package org.example.domain;
+
+/**
+ * Leitura por partes dos eventos de um dia, por ordem temporal
+ * Vê os eventos que existiam quando foi aberto; cada parte tem no máximo
+ * o número de eventos pedido, pelo que a memória usada não depende do
+ * tamanho do dia. Não é thread-safe: cada cursor é lido por um pedido de
+ * cada vez.
+ */
+public interface EventCursor {
+    /**
+     * Próximos eventos, até max; pode vir vazio, só hasMore diz se acabou
+     */
+    EventBatch next(int max);
+
+    boolean hasMore();
+}
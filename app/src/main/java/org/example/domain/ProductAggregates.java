@@ -0,0 +1,88 @@
+package org.example.domain;
+
+import java.util.Arrays;
+
+/**
+ * Acumuladores por produto mantidos incrementalmente a cada evento
+ * Indexados pelo id do produto no dicionário do dia, guardados em
+ * arrays primitivos paralelos (soma de quantidade, volume, soma de preços,
+ * preço máximo e número de vendas).
+ * Não é thread-safe: a sincronização fica a cargo de quem a usa.
+ */
+public class ProductAggregates {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] quantity = new long[INITIAL_CAPACITY];
+    private double[] volume = new double[INITIAL_CAPACITY];
+    private double[] priceSum = new double[INITIAL_CAPACITY];
+    private double[] priceMax = new double[INITIAL_CAPACITY];
+    private long[] count = new long[INITIAL_CAPACITY];
+
+    /**
+     * Regista uma venda do produto com o id dado
+     */
+    public void add(int productId, long qty, double price) {
+        if (productId >= count.length) grow(productId + 1);
+        quantity[productId] += qty;
+        volume[productId] += price * qty;
+        priceSum[productId] += price;
+        if (price > priceMax[productId]) priceMax[productId] = price;
+        count[productId]++;
+    }
+
+    /**
+     * Soma a este produto os acumuladores de um produto de outra instância
+     * Usado para juntar as stripes do dia corrente
+     */
+    public void merge(int productId, ProductAggregates other, int otherId) {
+        if (other.count(otherId) == 0) return;
+        if (productId >= count.length) grow(productId + 1);
+        quantity[productId] += other.quantity[otherId];
+        volume[productId] += other.volume[otherId];
+        priceSum[productId] += other.priceSum[otherId];
+        if (other.priceMax[otherId] > priceMax[productId]) priceMax[productId] = other.priceMax[otherId];
+        count[productId] += other.count[otherId];
+    }
+
+    private void grow(int minCapacity) {
+        int newCapacity = Math.max(minCapacity, count.length * 2);
+        quantity = Arrays.copyOf(quantity, newCapacity);
+        volume = Arrays.copyOf(volume, newCapacity);
+        priceSum = Arrays.copyOf(priceSum, newCapacity);
+        priceMax = Arrays.copyOf(priceMax, newCapacity);
+        count = Arrays.copyOf(count, newCapacity);
+    }
+
+    private boolean known(int productId) {
+        return productId >= 0 && productId < count.length;
+    }
+
+    public long quantity(int productId) { return known(productId) ? quantity[productId] : 0; }
+    public double volume(int productId) { return known(productId) ? volume[productId] : 0; }
+    public double priceSum(int productId) { return known(productId) ? priceSum[productId] : 0; }
+    public double priceMax(int productId) { return known(productId) ? priceMax[productId] : 0; }
+    public long count(int productId) { return known(productId) ? count[productId] : 0; }
+
+    public double averagePrice(int productId) {
+        long n = count(productId);
+        return n > 0 ? priceSum[productId] / n : 0;
+    }
+
+    /**
+     * Percorre os produtos com vendas, resolvendo o nome pelo dicionário dado
+     */
+    public void forEach(EventColumns dictionary, Visitor visitor) {
+        int products = dictionary.productCount();
+        for (int id = 0; id < products; id++) {
+            if (count(id) == 0) continue;
+            visitor.visit(dictionary.productName(id), quantity[id], volume[id], averagePrice(id), priceMax[id]);
+        }
+    }
+
+    /**
+     * Recebe o resumo diário de um produto
+     */
+    public interface Visitor {
+        void visit(String product, long quantity, double volume, double averagePrice, double maxPrice);
+    }
+}
@@ -0,0 +1,217 @@
+package org.example.domain;
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.*;
+
+/**
+ * Fotografia imutável de um dia fechado
+ * Colunas compactadas e agregações por produto pré-calculadas. As colunas
+ * são buffers: arrays em memória para um dia acabado de fechar, ou vistas
+ * diretas sobre o ficheiro mapeado de um dia carregado do disco.
+ * Como nada muda depois de construída, pode ser partilhada entre threads e
+ * lida sem qualquer lock (só são usados acessos absolutos aos buffers).
+ */
+public final class SealedTimeSeries implements DaySeries {
+    private final int day;
+
+    // Dicionário do dia
+    private final String[] productNames;
+    private final Map<String, Integer> productIds;
+
+    // Colunas
+    private final IntBuffer productIdColumn;
+    private final LongBuffer quantities;
+    private final DoubleBuffer prices;
+    private final LongBuffer timestamps;
+    private final int size;
+
+    // Agregações por produto
+    private final long[] totalQuantity;
+    private final double[] totalVolume;
+    private final double[] averagePrice;
+    private final double[] maxPrice;
+
+    public SealedTimeSeries(int day, String[] productNames,
+                            IntBuffer productIdColumn, LongBuffer quantities,
+                            DoubleBuffer prices, LongBuffer timestamps,
+                            long[] totalQuantity, double[] totalVolume,
+                            double[] averagePrice, double[] maxPrice) {
+        this.day = day;
+        this.productNames = productNames;
+        this.productIdColumn = productIdColumn;
+        this.quantities = quantities;
+        this.prices = prices;
+        this.timestamps = timestamps;
+        this.size = productIdColumn.limit();
+        this.totalQuantity = totalQuantity;
+        this.totalVolume = totalVolume;
+        this.averagePrice = averagePrice;
+        this.maxPrice = maxPrice;
+
+        Map<String, Integer> ids = new HashMap<>(productNames.length * 2);
+        for (int id = 0; id < productNames.length; id++) {
+            ids.put(productNames[id], id);
+        }
+        this.productIds = Collections.unmodifiableMap(ids);
+    }
+
+    /**
+     * Constrói a fotografia a partir de colunas em arrays, calculando as agregações
+     */
+    public static SealedTimeSeries fromArrays(int day, String[] productNames, int[] productIdColumn,
+                                              long[] quantities, double[] prices, long[] timestamps) {
+        int products = productNames.length;
+        long[] totalQuantity = new long[products];
+        double[] totalVolume = new double[products];
+        double[] averagePrice = new double[products];
+        double[] maxPrice = new double[products];
+        long[] count = new long[products];
+        for (int i = 0; i < productIdColumn.length; i++) {
+            int id = productIdColumn[i];
+            totalQuantity[id] += quantities[i];
+            totalVolume[id] += prices[i] * quantities[i];
+            averagePrice[id] += prices[i];
+            if (prices[i] > maxPrice[id]) maxPrice[id] = prices[i];
+            count[id]++;
+        }
+        for (int id = 0; id < products; id++) {
+            if (count[id] > 0) averagePrice[id] /= count[id];
+        }
+        return new SealedTimeSeries(day, productNames,
+            IntBuffer.wrap(productIdColumn), LongBuffer.wrap(quantities),
+            DoubleBuffer.wrap(prices), LongBuffer.wrap(timestamps),
+            totalQuantity, totalVolume, averagePrice, maxPrice);
+    }
+
+    /**
+     * Compacta as colunas de um dia vivo numa fotografia imutável
+     */
+    static SealedTimeSeries of(int day, EventColumns columns) {
+        return fromArrays(day, columns.productNameArray(), columns.productIdArray(),
+            columns.quantityArray(), columns.priceArray(), columns.timestampArray());
+    }
+
+    private int productId(String product) {
+        Integer id = productIds.get(product);
+        return id != null ? id : -1;
+    }
+
+    @Override
+    public int getDay() { return day; }
+
+    @Override
+    public boolean hasProduct(String product) {
+        return productIds.containsKey(product);
+    }
+
+    @Override
+    public long calculateQuantity(String product, int daysLookback, int currentDay) {
+        int id = productId(product);
+        return id >= 0 ? totalQuantity[id] : 0;
+    }
+
+    @Override
+    public double calculateVolume(String product, int daysLookback, int currentDay) {
+        int id = productId(product);
+        return id >= 0 ? totalVolume[id] : 0;
+    }
+
+    @Override
+    public AggregationResult.PriceStats calculatePriceStats(String product, int daysLookback, int currentDay) {
+        int id = productId(product);
+        if (id < 0) return new AggregationResult.PriceStats(0, 0, currentDay);
+        return new AggregationResult.PriceStats(averagePrice[id], maxPrice[id], currentDay);
+    }
+
+    @Override
+    public List<Event> getEventsForProducts(Set<String> names) {
+        boolean[] mask = new boolean[productNames.length];
+        boolean any = false;
+        for (String name : names) {
+            int id = productId(name);
+            if (id >= 0) {
+                mask[id] = true;
+                any = true;
+            }
+        }
+        List<Event> result = new ArrayList<>();
+        if (!any) return result;
+        for (int i = 0; i < size; i++) {
+            if (mask[productIdColumn.get(i)]) result.add(eventAt(i));
+        }
+        return result;
+    }
+
+    @Override
+    public List<Event> getAllEvents() {
+        List<Event> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(eventAt(i));
+        }
+        return result;
+    }
+
+    @Override
+    public EventCursor openCursor(Set<String> names) {
+        // Índice, na lista de produtos pedidos, de cada produto do dia (-1: não pedido)
+        int[] requested = new int[productNames.length];
+        Arrays.fill(requested, -1);
+        List<String> found = new ArrayList<>();
+        for (String name : names) {
+            int id = productId(name);
+            if (id >= 0 && requested[id] < 0) {
+                requested[id] = found.size();
+                found.add(name);
+            }
+        }
+        String[] products = found.toArray(new String[0]);
+
+        return new EventCursor() {
+            private int next = products.length > 0 ? 0 : size;
+
+            @Override
+            public EventBatch next(int max) {
+                EventBatchBuilder batch = new EventBatchBuilder(products, max);
+                while (next < size && !batch.isFull()) {
+                    int index = requested[productIdColumn.get(next)];
+                    if (index >= 0) batch.add(index, quantities.get(next), prices.get(next));
+                    next++;
+                }
+                return batch.build();
+            }
+
+            @Override
+            public boolean hasMore() {
+                return next < size;
+            }
+        };
+    }
+
+    private Event eventAt(int i) {
+        return new Event(productNames[productIdColumn.get(i)], quantities.get(i), prices.get(i), timestamps.get(i));
+    }
+
+    @Override
+    public void forEachProduct(ProductAggregates.Visitor visitor) {
+        for (int id = 0; id < productNames.length; id++) {
+            visitor.visit(productNames[id], totalQuantity[id], totalVolume[id], averagePrice[id], maxPrice[id]);
+        }
+    }
+
+    public int size() { return size; }
+    public int productCount() { return productNames.length; }
+    public String productName(int productId) { return productNames[productId]; }
+
+    // Acesso por posição, usado na escrita do ficheiro do dia
+    public int productIdAt(int i) { return productIdColumn.get(i); }
+    public long quantityAt(int i) { return quantities.get(i); }
+    public double priceAt(int i) { return prices.get(i); }
+    public long timestampAt(int i) { return timestamps.get(i); }
+
+    public long totalQuantity(int productId) { return totalQuantity[productId]; }
+    public double totalVolume(int productId) { return totalVolume[productId]; }
+    public double averagePrice(int productId) { return averagePrice[productId]; }
+    public double maxPrice(int productId) { return maxPrice[productId]; }
+}
@@ -1,199 +1,568 @@
 package org.example.domain;
 
+import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import org.example.metrics.LatencyHistogram;
 
 /**
- * Série temporal para um dia específico com sincronização eficiente
- * Usa ReadWriteLock para permitir múltiplas leituras simultâneas
+ * Série temporal do dia corrente, dividida em stripes
+ * Cada thread escreve sempre na mesma stripe (escolhida pelo id da thread),
+ * com colunas, dicionário e agregações próprios e um lock que na prática
+ * não tem contenção, pelo que a ingestão escala com o número de threads.
+ * As leituras juntam as stripes a pedido. Ao fechar o dia é convertida
+ * numa SealedTimeSeries imutável.
  */
-public class TimeSeries {
-    private final List<Event> events;
-    private final Set<String> productNames = new HashSet<>();
+public class TimeSeries implements DaySeries {
+    // Potência de 2, por omissão o nº de processadores arredondado para cima
+    private static final int STRIPES = Integer.highestOneBit(
+        Math.max(1, Integer.getInteger("timeseries.ingestStripes",
+            Runtime.getRuntime().availableProcessors()) * 2 - 1));
+
+    // Linhas percorridas por parte de um cursor, com os locks adquiridos
+    private static final int CURSOR_ROWS_PER_PART = 64 * 1024;
+
     private final int day;
-    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
-    
-    // Cache de agregações
-    private final Map<String, AggregationResult.QuantityResult> quantityCache = new HashMap<>();
-    private final Map<String, AggregationResult.VolumeResult> volumeCache = new HashMap<>();
-    private final Map<String, AggregationResult.PriceStats> priceStatsCache = new HashMap<>();
-    
+    private final Stripe[] stripes;
+    // Tempo de espera pelo lock da stripe na ingestão; null se não medido
+    private final LatencyHistogram stripeLockWait;
+    // Escrito com todos os locks das stripes adquiridos
+    private volatile boolean closed = false;
+
+    // Devolvido pela ingestão com registo quando o dia já foi fechado
+    public static final long CLOSED = -1;
+
+    /**
+     * Registo de um evento (ou lote) feito sob o lock da stripe, antes de
+     * entrar no dia; devolve a posição a esperar para o tornar durável
+     */
+    @FunctionalInterface
+    public interface IngestLog {
+        long append(int day) throws IOException;
+    }
+
+    /**
+     * Parte do dia escrita por um subconjunto das threads
+     */
+    private static class Stripe {
+        final ReentrantLock lock = new ReentrantLock();
+        final EventColumns columns = new EventColumns();
+        final ProductAggregates aggregates = new ProductAggregates();
+    }
+
     public TimeSeries(int day) {
-        this.events = new ArrayList<>();
+        this(day, null);
+    }
+
+    public TimeSeries(int day, LatencyHistogram stripeLockWait) {
+        this(day, stripeLockWait, STRIPES);
+    }
+
+    /**
+     * Dia com o número de stripes dado, arredondado para uma potência de 2
+     */
+    public TimeSeries(int day, LatencyHistogram stripeLockWait, int stripeCount) {
         this.day = day;
+        this.stripeLockWait = stripeLockWait;
+        this.stripes = new Stripe[Integer.highestOneBit(Math.max(1, stripeCount * 2 - 1))];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    private Stripe stripeForCurrentThread() {
+        long id = Thread.currentThread().threadId();
+        int h = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return stripes[(h ^ (h >>> 16)) & (stripes.length - 1)];
     }
-    
+
+    private void lockForIngest(Stripe stripe) {
+        if (stripeLockWait != null) stripeLockWait.lock(stripe.lock);
+        else stripe.lock.lock();
+    }
+
     /**
      * Adiciona evento à série temporal
-     * Usa write lock pois modifica a lista
      */
-    public void addEvent(Event event) {
-        lock.writeLock().lock();
+    public boolean addEvent(Event event) {
+        return addEvent(event.getProductName(), event.getQuantity(), event.getPrice(), event.getTimestamp());
+    }
+
+    /**
+     * Adiciona evento sem criar objeto Event intermédio
+     * Devolve false se o dia já tiver sido fechado
+     */
+    public boolean addEvent(String productName, long quantity, double price, long timestamp) {
+        Stripe stripe = stripeForCurrentThread();
+        lockForIngest(stripe);
         try {
-            events.add(event);
-            productNames.add(event.getProductName());
-            // Invalidar caches relevantes
-            quantityCache.remove(event.getProductName());
-            volumeCache.remove(event.getProductName());
-            priceStatsCache.remove(event.getProductName());
+            if (closed) return false;
+            int productId = stripe.columns.add(productName, quantity, price, timestamp);
+            stripe.aggregates.add(productId, quantity, price);
+            return true;
         } finally {
-            lock.writeLock().unlock();
+            stripe.lock.unlock();
         }
     }
 
-    // New method to check existence efficiently (O(1))
-    public boolean hasProduct(String product) {
-        lock.readLock().lock();
+    /**
+     * Adiciona evento de um produto já resolvido no dicionário global
+     * O nome só é usado na primeira venda do produto nesta stripe
+     * Devolve false se o dia já tiver sido fechado
+     */
+    public boolean addEvent(int productId, String productName, long quantity, double price, long timestamp) {
+        Stripe stripe = stripeForCurrentThread();
+        lockForIngest(stripe);
         try {
-            return productNames.contains(product);
+            if (closed) return false;
+            addToStripe(stripe, productId, productName, quantity, price, timestamp);
+            return true;
         } finally {
-            lock.readLock().unlock();
+            stripe.lock.unlock();
         }
     }
-    
+
     /**
-     * Obtém lista de eventos para produtos específicos
-     * Usa read lock pois apenas lê
+     * Como addEvent, mas regista o evento no log antes de o juntar ao dia
+     * close() espera pelo lock da stripe, pelo que nada é registado com este
+     * dia depois de fechado. Devolve a posição do registo, ou CLOSED
      */
-    public List<Event> getEventsForProducts(Set<String> productNames) {
-        lock.readLock().lock();
+    public long addEvent(int productId, String productName, long quantity, double price, long timestamp,
+                         IngestLog log) throws IOException {
+        Stripe stripe = stripeForCurrentThread();
+        lockForIngest(stripe);
         try {
-            List<Event> result = new ArrayList<>();
-            for (Event event : events) {
-                if (productNames.contains(event.getProductName())) {
-                    result.add(event);
-                }
-            }
-            return result;
+            if (closed) return CLOSED;
+            long position = log.append(day);
+            addToStripe(stripe, productId, productName, quantity, price, timestamp);
+            return position;
         } finally {
-            lock.readLock().unlock();
+            stripe.lock.unlock();
         }
     }
-    
+
+    // Deve ser chamado com o lock da stripe adquirido
+    private static void addToStripe(Stripe stripe, int productId, String productName,
+                                    long quantity, double price, long timestamp) {
+        int localId = stripe.columns.internGlobal(productId, productName);
+        stripe.columns.add(localId, quantity, price, timestamp);
+        stripe.aggregates.add(localId, quantity, price);
+    }
+
     /**
-     * Calcula quantidade de vendas com caching lazy
+     * Adiciona um lote de eventos com uma única aquisição do lock da stripe
+     * O dicionário do lote é traduzido para o da stripe uma vez por produto,
+     * pelos ids globais se o lote os tiver
+     * Devolve false se o dia já tiver sido fechado
      */
-    public long calculateQuantity(String product, int daysLookback, int currentDay) {
-        if (!hasProduct(product)) return 0;
-        lock.readLock().lock();
+    public boolean addEvents(EventBatch batch, long timestamp) {
+        Stripe stripe = stripeForCurrentThread();
+        lockForIngest(stripe);
         try {
-            // Verificar cache
-            AggregationResult.QuantityResult cached = quantityCache.get(product);
-            if (cached != null && cached.computedAtDay == currentDay) {
-                return cached.totalQuantity;
-            }
+            if (closed) return false;
+            addToStripe(stripe, batch, timestamp);
+            return true;
         } finally {
-            lock.readLock().unlock();
+            stripe.lock.unlock();
         }
-        
-        // Calcular e cachear
-        lock.writeLock().lock();
+    }
+
+    /**
+     * Como addEvents, mas regista o lote no log antes de o juntar ao dia
+     * Devolve a posição do registo, ou CLOSED se o dia já tiver sido fechado
+     */
+    public long addEvents(EventBatch batch, long timestamp, IngestLog log) throws IOException {
+        Stripe stripe = stripeForCurrentThread();
+        lockForIngest(stripe);
         try {
-            long total = 0;
-            for (Event event : events) {
-                if (event.getProductName().equals(product)) {
-                    total += event.getQuantity();
-                }
-            }
-            AggregationResult.QuantityResult result = new AggregationResult.QuantityResult(total, currentDay);
-            quantityCache.put(product, result);
-            return total;
+            if (closed) return CLOSED;
+            long position = log.append(day);
+            addToStripe(stripe, batch, timestamp);
+            return position;
         } finally {
-            lock.writeLock().unlock();
+            stripe.lock.unlock();
+        }
+    }
+
+    // Deve ser chamado com o lock da stripe adquirido
+    private static void addToStripe(Stripe stripe, EventBatch batch, long timestamp) {
+        String[] products = batch.getProducts();
+        int[] globalIds = batch.getProductIds();
+        int[] stripeIds = new int[products.length];
+        for (int k = 0; k < products.length; k++) {
+            stripeIds[k] = globalIds != null
+                ? stripe.columns.internGlobal(globalIds[k], products[k])
+                : stripe.columns.intern(products[k]);
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            int productId = stripeIds[batch.productIndexAt(i)];
+            long quantity = batch.quantityAt(i);
+            double price = batch.priceAt(i);
+            stripe.columns.add(productId, quantity, price, timestamp);
+            stripe.aggregates.add(productId, quantity, price);
+        }
+    }
+
+    // New method to check existence efficiently (O(1))
+    public boolean hasProduct(String product) {
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                if (stripe.columns.productId(product) >= 0) return true;
+            } finally {
+                stripe.lock.unlock();
+            }
         }
+        return false;
     }
-    
+
     /**
-     * Calcula volume de vendas com caching lazy
+     * Obtém lista de eventos para produtos específicos, por ordem temporal
      */
-    public double calculateVolume(String product, int daysLookback, int currentDay) {
-        if (!hasProduct(product)) return 0;
-        lock.readLock().lock();
+    public List<Event> getEventsForProducts(Set<String> productNames) {
+        lockAll();
         try {
-            AggregationResult.VolumeResult cached = volumeCache.get(product);
-            if (cached != null && cached.computedAtDay == currentDay) {
-                return cached.totalVolume;
+            boolean[][] masks = new boolean[stripes.length][];
+            for (int s = 0; s < stripes.length; s++) {
+                masks[s] = stripes[s].columns.productMask(productNames);
             }
+            List<Event> result = new ArrayList<>();
+            forEachInTimeOrder((s, row) -> {
+                EventColumns columns = stripes[s].columns;
+                if (masks[s] != null && masks[s][columns.productIdAt(row)]) {
+                    result.add(columns.eventAt(row));
+                }
+            });
+            return result;
         } finally {
-            lock.readLock().unlock();
+            unlockAll();
         }
-        
-        lock.writeLock().lock();
-        try {
-            double total = 0;
-            for (Event event : events) {
-                if (event.getProductName().equals(product)) {
-                    total += event.getPrice() * event.getQuantity();
-                }
+    }
+
+    /**
+     * Quantidade vendida do produto no dia
+     * Soma dos acumuladores de cada stripe, sem percorrer os eventos
+     */
+    public long calculateQuantity(String product, int daysLookback, int currentDay) {
+        long total = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                total += stripe.aggregates.quantity(stripe.columns.productId(product));
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Volume de vendas do produto no dia
+     */
+    public double calculateVolume(String product, int daysLookback, int currentDay) {
+        double total = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                total += stripe.aggregates.volume(stripe.columns.productId(product));
+            } finally {
+                stripe.lock.unlock();
             }
-            AggregationResult.VolumeResult result = new AggregationResult.VolumeResult(total, currentDay);
-            volumeCache.put(product, result);
-            return total;
-        } finally {
-            lock.writeLock().unlock();
         }
+        return total;
     }
-    
+
     /**
-     * Calcula estatísticas de preço (média e máximo)
+     * Estatísticas de preço (média e máximo) do produto no dia
      */
     public AggregationResult.PriceStats calculatePriceStats(String product, int daysLookback, int currentDay) {
-        if (!hasProduct(product)) return new AggregationResult.PriceStats(0, 0, currentDay);
-        lock.readLock().lock();
-        try {
-            AggregationResult.PriceStats cached = priceStatsCache.get(product);
-            if (cached != null && cached.computedAtDay == currentDay) {
-                return cached;
+        double priceSum = 0;
+        double priceMax = 0;
+        long count = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                int productId = stripe.columns.productId(product);
+                priceSum += stripe.aggregates.priceSum(productId);
+                priceMax = Math.max(priceMax, stripe.aggregates.priceMax(productId));
+                count += stripe.aggregates.count(productId);
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return new AggregationResult.PriceStats(count > 0 ? priceSum / count : 0, priceMax, currentDay);
+    }
+
+    /**
+     * Quantidade vendida no dia do produto com o id global dado
+     * Os dias do servidor são escritos pelos ids globais; consultas por id
+     * não comparam nomes
+     */
+    public long calculateQuantity(int productId) {
+        long total = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                total += stripe.aggregates.quantity(stripe.columns.localId(productId));
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return total;
+    }
+
+    public double calculateVolume(int productId) {
+        double total = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                total += stripe.aggregates.volume(stripe.columns.localId(productId));
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return total;
+    }
+
+    public AggregationResult.PriceStats calculatePriceStats(int productId, int currentDay) {
+        double priceSum = 0;
+        double priceMax = 0;
+        long count = 0;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                int localId = stripe.columns.localId(productId);
+                priceSum += stripe.aggregates.priceSum(localId);
+                priceMax = Math.max(priceMax, stripe.aggregates.priceMax(localId));
+                count += stripe.aggregates.count(localId);
+            } finally {
+                stripe.lock.unlock();
             }
+        }
+        return new AggregationResult.PriceStats(count > 0 ? priceSum / count : 0, priceMax, currentDay);
+    }
+
+    /**
+     * Retorna cópia da lista de eventos, por ordem temporal
+     */
+    public List<Event> getAllEvents() {
+        lockAll();
+        try {
+            List<Event> result = new ArrayList<>();
+            forEachInTimeOrder((s, row) -> result.add(stripes[s].columns.eventAt(row)));
+            return result;
         } finally {
-            lock.readLock().unlock();
+            unlockAll();
         }
-        
-        lock.writeLock().lock();
+    }
+
+    /**
+     * Cursor sobre os eventos já registados dos produtos pedidos
+     * Cada parte é lida com os locks das stripes adquiridos, mas só durante
+     * essa parte e percorrendo no máximo CURSOR_ROWS_PER_PART linhas: a
+     * ingestão não fica parada enquanto o cliente lê o dia. Por isso uma
+     * parte pode vir vazia sem o cursor ter acabado.
+     */
+    public EventCursor openCursor(Set<String> productNames) {
+        lockAll();
         try {
-            double sum = 0;
-            double max = 0;
-            long count = 0;
-            
-            for (Event event : events) {
-                if (event.getProductName().equals(product)) {
-                    sum += event.getPrice();
-                    max = Math.max(max, event.getPrice());
-                    count++;
+            List<String> found = new ArrayList<>();
+            Map<String, Integer> foundIndex = new HashMap<>();
+            int[][] requested = new int[stripes.length][];
+            int[] limits = new int[stripes.length];
+            for (int s = 0; s < stripes.length; s++) {
+                EventColumns columns = stripes[s].columns;
+                requested[s] = new int[columns.productCount()];
+                Arrays.fill(requested[s], -1);
+                for (String name : productNames) {
+                    int id = columns.productId(name);
+                    if (id < 0) continue;
+                    requested[s][id] = foundIndex.computeIfAbsent(name, n -> {
+                        found.add(n);
+                        return found.size() - 1;
+                    });
                 }
+                // Linhas a partir daqui são posteriores à abertura do cursor
+                limits[s] = found.isEmpty() ? 0 : columns.size();
             }
-            
-            double average = count > 0 ? sum / count : 0;
-            AggregationResult.PriceStats result = new AggregationResult.PriceStats(average, max, currentDay);
-            priceStatsCache.put(product, result);
-            return result;
+            return new LiveCursor(found.toArray(new String[0]), requested, limits);
         } finally {
-            lock.writeLock().unlock();
+            unlockAll();
         }
     }
-    
+
     /**
-     * Retorna cópia da lista de eventos (para processamento lazy)
+     * Junção por timestamp das stripes, retomada onde a parte anterior parou
      */
-    public List<Event> getAllEvents() {
-        lock.readLock().lock();
+    private class LiveCursor implements EventCursor {
+        private final String[] products;
+        private final int[][] requested;
+        private final int[] limits;
+        private final int[] next = new int[stripes.length];
+
+        LiveCursor(String[] products, int[][] requested, int[] limits) {
+            this.products = products;
+            this.requested = requested;
+            this.limits = limits;
+        }
+
+        @Override
+        public EventBatch next(int max) {
+            EventBatchBuilder batch = new EventBatchBuilder(products, max);
+            int scanned = 0;
+            lockAll();
+            try {
+                while (!batch.isFull() && scanned++ < CURSOR_ROWS_PER_PART) {
+                    int best = -1;
+                    long bestTimestamp = Long.MAX_VALUE;
+                    for (int s = 0; s < stripes.length; s++) {
+                        if (next[s] == limits[s]) continue;
+                        long timestamp = stripes[s].columns.timestampAt(next[s]);
+                        if (best < 0 || timestamp < bestTimestamp) {
+                            best = s;
+                            bestTimestamp = timestamp;
+                        }
+                    }
+                    if (best < 0) break;
+                    EventColumns columns = stripes[best].columns;
+                    int row = next[best]++;
+                    int index = requested[best][columns.productIdAt(row)];
+                    if (index >= 0) batch.add(index, columns.quantityAt(row), columns.priceAt(row));
+                }
+            } finally {
+                unlockAll();
+            }
+            return batch.build();
+        }
+
+        @Override
+        public boolean hasMore() {
+            for (int s = 0; s < stripes.length; s++) {
+                if (next[s] < limits[s]) return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Fecha o dia: a partir daqui addEvent é rejeitado e o conteúdo não muda
+     * Custo constante, independente do tamanho do dia
+     */
+    public void close() {
+        lockAll();
         try {
-            return new ArrayList<>(events);
+            closed = true;
         } finally {
-            lock.readLock().unlock();
+            unlockAll();
         }
     }
-    
-    public int getDay() { return day; }
-    
-    public void clearCache() {
-        lock.writeLock().lock();
+
+    /**
+     * Fecha o dia e devolve uma fotografia imutável e compactada
+     * As stripes são juntadas por ordem temporal num só dicionário
+     */
+    public SealedTimeSeries seal() {
+        lockAll();
         try {
-            quantityCache.clear();
-            volumeCache.clear();
-            priceStatsCache.clear();
+            closed = true;
+            EventColumns merged = null;
+            for (Stripe stripe : stripes) {
+                if (stripe.columns.size() == 0) continue;
+                if (merged != null) {
+                    merged = mergeColumns();
+                    break;
+                }
+                merged = stripe.columns;
+            }
+            return SealedTimeSeries.of(day, merged != null ? merged : new EventColumns());
         } finally {
-            lock.writeLock().unlock();
+            unlockAll();
+        }
+    }
+
+    // Deve ser chamado com todos os locks adquiridos
+    private EventColumns mergeColumns() {
+        EventColumns merged = new EventColumns();
+        int[][] remap = new int[stripes.length][];
+        for (int s = 0; s < stripes.length; s++) {
+            EventColumns columns = stripes[s].columns;
+            remap[s] = new int[columns.productCount()];
+            for (int id = 0; id < remap[s].length; id++) {
+                remap[s][id] = merged.intern(columns.productName(id));
+            }
+        }
+        forEachInTimeOrder((s, row) -> {
+            EventColumns columns = stripes[s].columns;
+            merged.add(remap[s][columns.productIdAt(row)], columns.quantityAt(row),
+                columns.priceAt(row), columns.timestampAt(row));
+        });
+        return merged;
+    }
+
+    /**
+     * Percorre o resumo diário de cada produto com vendas
+     */
+    public void forEachProduct(ProductAggregates.Visitor visitor) {
+        EventColumns dictionary = new EventColumns();
+        ProductAggregates merged = new ProductAggregates();
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                EventColumns columns = stripe.columns;
+                for (int id = 0; id < columns.productCount(); id++) {
+                    merged.merge(dictionary.intern(columns.productName(id)), stripe.aggregates, id);
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        merged.forEach(dictionary, visitor);
+    }
+
+    /**
+     * Recebe uma linha de uma stripe
+     */
+    private interface RowVisitor {
+        void visit(int stripe, int row);
+    }
+
+    // Junção por timestamp das stripes; deve ser chamado com todos os locks adquiridos
+    private void forEachInTimeOrder(RowVisitor visitor) {
+        int[] active = new int[stripes.length];
+        int activeCount = 0;
+        for (int s = 0; s < stripes.length; s++) {
+            if (stripes[s].columns.size() > 0) active[activeCount++] = s;
+        }
+        int[] next = new int[stripes.length];
+        while (activeCount > 0) {
+            int best = 0;
+            long bestTimestamp = stripes[active[0]].columns.timestampAt(next[active[0]]);
+            for (int a = 1; a < activeCount; a++) {
+                long timestamp = stripes[active[a]].columns.timestampAt(next[active[a]]);
+                if (timestamp < bestTimestamp) {
+                    best = a;
+                    bestTimestamp = timestamp;
+                }
+            }
+            int s = active[best];
+            visitor.visit(s, next[s]++);
+            if (next[s] == stripes[s].columns.size()) {
+                active[best] = active[--activeCount];
+            }
+        }
+    }
+
+    private void lockAll() {
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
         }
     }
+
+    private void unlockAll() {
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            stripes[i].lock.unlock();
+        }
+    }
+
+    public int getDay() { return day; }
 }
@@ -0,0 +1,22 @@
+package org.example.logging;
+
+/**
+ * Níveis de log, do mais detalhado ao mais grave
+ */
+public enum Level {
+    TRACE,
+    DEBUG,
+    INFO,
+    WARN,
+    ERROR,
+    OFF;
+
+    public static Level parse(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Nível de log inválido: " + name
+                + " (use trace, debug, info, warn, error ou off)");
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package org.example.logging;
+
+import java.io.PrintStream;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Buffer circular de registos de log, sem locks, esvaziado por uma thread
+ *
+ * Fila limitada multi-produtor / consumidor único com slots pré-alocados
+ * (cada slot tem um número de sequência que diz se está livre ou publicado).
+ * Quem regista só reserva um slot com um CAS e copia referências: a
+ * formatação da mensagem e a escrita na consola são feitas pela thread de
+ * escrita. Com o buffer cheio o registo é descartado e contado, nunca bloqueia.
+ * Com o buffer vazio a thread de escrita estaciona sem prazo; a primeira
+ * publicação seguinte acorda-a.
+ */
+final class LogBuffer {
+    static final int MAX_ARGS = 3;
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private long head = 0; // só usado pela thread de escrita
+
+    // Conteúdo dos slots, visível ao consumidor pela escrita da sequência
+    private final Level[] levels;
+    private final long[] times;
+    private final String[] loggers;
+    private final String[] threads;
+    private final String[] formats;
+    private final Object[][] args;
+    private final Throwable[] errors;
+
+    private final LongAdder dropped = new LongAdder();
+    private final PrintStream out;
+    private final PrintStream err;
+    private final Thread drainer;
+    // true enquanto a thread de escrita está (ou vai ficar) estacionada
+    private final AtomicBoolean parked = new AtomicBoolean();
+    private final ReentrantLock drainLock = new ReentrantLock();
+    private final StringBuilder line = new StringBuilder(256);
+
+    LogBuffer(int requestedCapacity, PrintStream out, PrintStream err) {
+        this.capacity = Integer.highestOneBit(Math.max(16, requestedCapacity) * 2 - 1);
+        this.mask = capacity - 1;
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+        this.levels = new Level[capacity];
+        this.times = new long[capacity];
+        this.loggers = new String[capacity];
+        this.threads = new String[capacity];
+        this.formats = new String[capacity];
+        this.args = new Object[capacity][MAX_ARGS];
+        this.errors = new Throwable[capacity];
+        this.out = out;
+        this.err = err;
+
+        this.drainer = new Thread(this::drainLoop, "log-drainer");
+        this.drainer.setDaemon(true);
+        this.drainer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::drainAll, "log-flush"));
+    }
+
+    /**
+     * Reserva um slot; devolve -1 (e conta o descarte) se o buffer estiver cheio
+     */
+    long claim() {
+        while (true) {
+            long position = tail.get();
+            long sequence = sequences.get((int) position & mask);
+            long diff = sequence - position;
+            if (diff == 0) {
+                if (tail.compareAndSet(position, position + 1)) return position;
+            } else if (diff < 0) {
+                dropped.increment();
+                return -1;
+            }
+        }
+    }
+
+    void write(long position, Level level, String logger, String format, Throwable error) {
+        int slot = (int) position & mask;
+        levels[slot] = level;
+        times[slot] = System.currentTimeMillis();
+        loggers[slot] = logger;
+        threads[slot] = Thread.currentThread().getName();
+        formats[slot] = format;
+        errors[slot] = error;
+    }
+
+    void arg(long position, int index, Object value) {
+        args[(int) position & mask][index] = value;
+    }
+
+    /**
+     * Torna o slot visível à thread de escrita
+     */
+    void publish(long position) {
+        sequences.set((int) position & mask, position + 1);
+        // Só quem encontra a thread estacionada a acorda
+        if (parked.get() && parked.compareAndSet(true, false)) LockSupport.unpark(drainer);
+    }
+
+    long getDropped() {
+        return dropped.sum();
+    }
+
+    private void drainLoop() {
+        while (true) {
+            if (drainAvailable() > 0) continue;
+            out.flush();
+            err.flush();
+            parked.set(true);
+            // Volta a ver depois de se anunciar: uma publicação entre o
+            // esvaziamento e o anúncio não vê parked e não acorda ninguém
+            if (!hasPublished()) LockSupport.park(this);
+            parked.set(false);
+        }
+    }
+
+    // Só usado pela thread de escrita
+    private boolean hasPublished() {
+        return sequences.get((int) head & mask) == head + 1;
+    }
+
+    // O lock só serve para o hook de terminação não competir com a thread de escrita
+    private int drainAvailable() {
+        drainLock.lock();
+        try {
+            return drainPublished();
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    private int drainPublished() {
+        int drained = 0;
+        while (true) {
+            int slot = (int) head & mask;
+            if (sequences.get(slot) != head + 1) return drained;
+            print(slot);
+            Object[] slotArgs = args[slot];
+            for (int i = 0; i < MAX_ARGS; i++) {
+                slotArgs[i] = null;
+            }
+            errors[slot] = null;
+            sequences.set(slot, head + capacity);
+            head++;
+            drained++;
+        }
+    }
+
+    private void drainAll() {
+        drainAvailable();
+        long lost = dropped.sum();
+        if (lost > 0) err.println("[log] " + lost + " registos descartados (buffer cheio)");
+        out.flush();
+        err.flush();
+    }
+
+    private void print(int slot) {
+        line.setLength(0);
+        line.append(LocalTime.ofInstant(Instant.ofEpochMilli(times[slot]), ZoneId.systemDefault()))
+            .append(' ').append(levels[slot])
+            .append(" [").append(threads[slot]).append("] ")
+            .append(loggers[slot]).append(" - ");
+
+        String format = formats[slot];
+        int argIndex = 0;
+        int from = 0;
+        int at;
+        while ((at = format.indexOf("{}", from)) >= 0 && argIndex < MAX_ARGS) {
+            line.append(format, from, at);
+            line.append(args[slot][argIndex++]);
+            from = at + 2;
+        }
+        line.append(format, from, format.length());
+
+        PrintStream target = levels[slot].compareTo(Level.WARN) >= 0 ? err : out;
+        target.println(line);
+        Throwable error = errors[slot];
+        if (error != null) error.printStackTrace(target);
+    }
+}
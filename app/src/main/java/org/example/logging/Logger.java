@@ -0,0 +1,102 @@
+package org.example.logging;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Logger com níveis e escrita assíncrona
+ *
+ * Um registo é copiado para um buffer circular sem locks e formatado mais
+ * tarde pela thread de escrita; quem regista nunca espera pela consola.
+ * Com o nível desligado as chamadas não alocam nada (não há varargs), desde
+ * que os argumentos já sejam objetos: argumentos primitivos são convertidos
+ * antes da chamada, pelo que em caminhos quentes a chamada deve ser guardada
+ * com isEnabled / traceSampled.
+ *
+ * Configuração por propriedades de sistema:
+ *   timeseries.log.level        trace, debug, info (omissão), warn, error, off
+ *   timeseries.log.traceSample  regista 1 em cada N linhas de trace por comando
+ *   timeseries.log.bufferSize   registos em espera antes de começar a descartar
+ */
+public final class Logger {
+    private static final Level LEVEL = Level.parse(System.getProperty("timeseries.log.level", "info"));
+    private static final int TRACE_SAMPLE = Math.max(1, Integer.getInteger("timeseries.log.traceSample", 1));
+
+    // Buffer criado só no primeiro registo: com o log desligado não há thread de escrita
+    private static final class Holder {
+        static final LogBuffer BUFFER = new LogBuffer(
+            Integer.getInteger("timeseries.log.bufferSize", 8192), System.out, System.err);
+    }
+
+    private final String name;
+
+    private Logger(String name) {
+        this.name = name;
+    }
+
+    public static Logger get(Class<?> type) {
+        return new Logger(type.getSimpleName());
+    }
+
+    public static Logger get(String name) {
+        return new Logger(name);
+    }
+
+    public boolean isEnabled(Level level) {
+        return level != Level.OFF && level.compareTo(LEVEL) >= 0;
+    }
+
+    public boolean isTraceEnabled() {
+        return isEnabled(Level.TRACE);
+    }
+
+    /**
+     * Decide se uma linha de trace por comando deve ser registada
+     * Com trace desligado é só uma comparação; ligado, regista 1 em cada N
+     */
+    public boolean traceSampled() {
+        if (!isTraceEnabled()) return false;
+        return TRACE_SAMPLE == 1 || ThreadLocalRandom.current().nextInt(TRACE_SAMPLE) == 0;
+    }
+
+    /**
+     * Registos descartados por o buffer estar cheio
+     */
+    public static long getDropped() {
+        return LEVEL == Level.OFF ? 0 : Holder.BUFFER.getDropped();
+    }
+
+    public void trace(String message) { log(Level.TRACE, message, null, null, null, null); }
+    public void trace(String format, Object a) { log(Level.TRACE, format, a, null, null, null); }
+    public void trace(String format, Object a, Object b) { log(Level.TRACE, format, a, b, null, null); }
+    public void trace(String format, Object a, Object b, Object c) { log(Level.TRACE, format, a, b, c, null); }
+
+    public void debug(String message) { log(Level.DEBUG, message, null, null, null, null); }
+    public void debug(String format, Object a) { log(Level.DEBUG, format, a, null, null, null); }
+    public void debug(String format, Object a, Object b) { log(Level.DEBUG, format, a, b, null, null); }
+
+    public void info(String message) { log(Level.INFO, message, null, null, null, null); }
+    public void info(String format, Object a) { log(Level.INFO, format, a, null, null, null); }
+    public void info(String format, Object a, Object b) { log(Level.INFO, format, a, b, null, null); }
+    public void info(String format, Object a, Object b, Object c) { log(Level.INFO, format, a, b, c, null); }
+
+    public void warn(String message) { log(Level.WARN, message, null, null, null, null); }
+    public void warn(String format, Object a) { log(Level.WARN, format, a, null, null, null); }
+    public void warn(String format, Object a, Object b) { log(Level.WARN, format, a, b, null, null); }
+
+    public void error(String message) { log(Level.ERROR, message, null, null, null, null); }
+    public void error(String format, Object a) { log(Level.ERROR, format, a, null, null, null); }
+    public void error(String format, Object a, Object b) { log(Level.ERROR, format, a, b, null, null); }
+    public void error(String message, Throwable error) { log(Level.ERROR, message, null, null, null, error); }
+
+    private void log(Level level, String format, Object a, Object b, Object c, Throwable error) {
+        if (!isEnabled(level)) return;
+        LogBuffer buffer = Holder.BUFFER;
+        long position = buffer.claim();
+        if (position < 0) return;
+        buffer.write(position, level, name, format, error);
+        buffer.arg(position, 0, a);
+        buffer.arg(position, 1, b);
+        buffer.arg(position, 2, c);
+        buffer.publish(position);
+    }
+}
@@ -0,0 +1,116 @@
+package org.example.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Histograma de latências com buckets log-lineares (estilo HDR)
+ *
+ * Cada potência de 2 é dividida em 32 sub-buckets, o que dá um erro relativo
+ * abaixo de ~3% em toda a gama de um long. Registar um valor é um incremento
+ * atómico num array de tamanho fixo, sem locks nem alocação; os percentis só
+ * são calculados ao tirar uma fotografia.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+    // Aquisições sem espera de lock(); contadas no bucket zero só na fotografia,
+    // para não pôr um contador partilhado no caminho sem contenção
+    private final LongAdder uncontended = new LongAdder();
+
+    /**
+     * Regista um valor (em nanossegundos, por convenção)
+     */
+    public void record(long value) {
+        if (value < 0) value = 0;
+        counts.incrementAndGet(indexOf(value));
+        sum.add(value);
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            // outro registo atualizou o máximo; voltar a comparar
+        }
+    }
+
+    /**
+     * Adquire o lock registando quanto tempo se esperou por ele
+     * Sem contenção custa um tryLock e um LongAdder; só as esperas vão ao histograma
+     */
+    public void lock(Lock lock) {
+        if (lock.tryLock()) {
+            uncontended.increment();
+            return;
+        }
+        long start = System.nanoTime();
+        lock.lock();
+        record(System.nanoTime() - start);
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    // Maior valor que cai no bucket dado
+    static long highestValueAt(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        long subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Fotografia com contagem, média, máximo e percentis
+     * Os registos concorrentes podem ficar ou não incluídos
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            total += copy[i];
+        }
+        long zeros = uncontended.sum();
+        copy[0] += zeros;
+        total += zeros;
+        return new Snapshot(copy, total, sum.sum(), max.get());
+    }
+
+    public static class Snapshot {
+        public final long count;
+        public final double mean;
+        public final long max;
+        public final long p50;
+        public final long p90;
+        public final long p99;
+        public final long p999;
+
+        Snapshot(long[] counts, long total, long sum, long max) {
+            this.count = total;
+            this.mean = total > 0 ? (double) sum / total : 0;
+            this.max = max;
+            this.p50 = Math.min(max, valueAt(counts, total, 0.50));
+            this.p90 = Math.min(max, valueAt(counts, total, 0.90));
+            this.p99 = Math.min(max, valueAt(counts, total, 0.99));
+            this.p999 = Math.min(max, valueAt(counts, total, 0.999));
+        }
+
+        private static long valueAt(long[] counts, long total, double quantile) {
+            if (total == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(quantile * total));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return highestValueAt(i);
+            }
+            return highestValueAt(counts.length - 1);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package org.example.metrics;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+import java.util.function.LongSupplier;
+
+/**
+ * Métricas do servidor: histogramas por comando, esperas por locks e contadores
+ *
+ * Por comando há dois histogramas, em nanossegundos: o tempo em fila (desde
+ * a leitura da frame até uma thread a começar a tratar) e o tempo de serviço
+ * (até a resposta ser entregue à ligação). Os contadores de outros
+ * componentes (cache, WAL, ...) são registados como gauges e só lidos na
+ * fotografia.
+ */
+public class ServerMetrics {
+    private static final int MAX_COMMAND = 256;
+
+    private final AtomicReferenceArray<LatencyHistogram> queueWait = new AtomicReferenceArray<>(MAX_COMMAND);
+    private final AtomicReferenceArray<LatencyHistogram> service = new AtomicReferenceArray<>(MAX_COMMAND);
+    private final IntFunction<String> commandNames;
+
+    public final LatencyHistogram seriesReadLockWait = new LatencyHistogram();
+    public final LatencyHistogram seriesWriteLockWait = new LatencyHistogram();
+    public final LatencyHistogram stripeLockWait = new LatencyHistogram();
+
+    public final LongAdder persistedBytes = new LongAdder();
+    public final LongAdder persistedDays = new LongAdder();
+
+    // Ordenados pelo nome, para a fotografia sair sempre igual
+    private final Map<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+
+    public ServerMetrics(IntFunction<String> commandNames) {
+        this.commandNames = commandNames;
+        gauges.put("persist.bytes", persistedBytes::sum);
+        gauges.put("persist.days", persistedDays::sum);
+    }
+
+    public void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * Regista a execução de um comando
+     */
+    public void recordCommand(int command, long queueNanos, long serviceNanos) {
+        if (command < 0 || command >= MAX_COMMAND) return;
+        // O de serviço é criado primeiro: quem vê o de fila vê também o de serviço
+        histogram(service, command).record(serviceNanos);
+        histogram(queueWait, command).record(queueNanos);
+    }
+
+    private static LatencyHistogram histogram(AtomicReferenceArray<LatencyHistogram> histograms, int command) {
+        LatencyHistogram histogram = histograms.get(command);
+        if (histogram != null) return histogram;
+        histograms.compareAndSet(command, null, new LatencyHistogram());
+        return histograms.get(command);
+    }
+
+    /**
+     * Escreve a fotografia na resposta do comando STATS
+     * Formato: nº de contadores, (nome, valor)*; nº de histogramas,
+     * (nome, contagem, média, máximo, p50, p90, p99, p99.9)*, tempos em ns
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        Map<String, LongSupplier> gaugeCopy = new LinkedHashMap<>(gauges);
+        out.writeInt(gaugeCopy.size());
+        for (Map.Entry<String, LongSupplier> gauge : gaugeCopy.entrySet()) {
+            out.writeUTF(gauge.getKey());
+            out.writeLong(gauge.getValue().getAsLong());
+        }
+
+        Map<String, LatencyHistogram.Snapshot> histograms = new LinkedHashMap<>();
+        for (int command = 0; command < MAX_COMMAND; command++) {
+            LatencyHistogram queue = queueWait.get(command);
+            if (queue == null) continue;
+            String name = commandNames.apply(command);
+            histograms.put("cmd." + name + ".queue", queue.snapshot());
+            histograms.put("cmd." + name + ".service", service.get(command).snapshot());
+        }
+        histograms.put("lock.series.read", seriesReadLockWait.snapshot());
+        histograms.put("lock.series.write", seriesWriteLockWait.snapshot());
+        histograms.put("lock.stripe", stripeLockWait.snapshot());
+
+        out.writeInt(histograms.size());
+        for (Map.Entry<String, LatencyHistogram.Snapshot> entry : histograms.entrySet()) {
+            LatencyHistogram.Snapshot s = entry.getValue();
+            out.writeUTF(entry.getKey());
+            out.writeLong(s.count);
+            out.writeDouble(s.mean);
+            out.writeLong(s.max);
+            out.writeLong(s.p50);
+            out.writeLong(s.p90);
+            out.writeLong(s.p99);
+            out.writeLong(s.p999);
+        }
+    }
+}
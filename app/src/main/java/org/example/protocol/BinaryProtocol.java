@@ -2,12 +2,77 @@ package org.example.protocol;
 
 import java.io.*;
 import java.util.*;
+import java.util.function.IntSupplier;
+import org.example.domain.EventBatch;
 
 /**
  * Protocolo binário eficiente com compressão de nomes de produtos
  * Implementa serialização compacta para minimizar tráfego de rede
  */
 public class BinaryProtocol {
+    // Tamanho máximo de uma frame (pedido ou resposta)
+    public static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+    // Tamanho mínimo em bytes de cada entrada do formato de serializeEvents
+    public static final int NAME_MIN_BYTES = 2;            // UTF vazio (só o comprimento)
+    public static final int DICT_ENTRY_MIN_BYTES = 4 + NAME_MIN_BYTES;  // índice, nome
+    public static final int EVENT_BYTES = 4 + 8 + 8;       // índice, quantidade, preço
+    
+    /**
+     * Escreve uma frame: comprimento (int) seguido do conteúdo
+     */
+    public static void writeFrame(DataOutputStream dos, byte[] payload) throws IOException {
+        writeFrame(dos, payload, payload.length);
+    }
+    
+    public static void writeFrame(DataOutputStream dos, byte[] payload, int length) throws IOException {
+        dos.writeInt(length);
+        dos.write(payload, 0, length);
+        dos.flush();
+    }
+
+    /**
+     * Como writeFrame, sem DataOutputStream (cujo write é synchronized e
+     * prende a carrier de uma virtual thread bloqueada na escrita)
+     */
+    public static void writeFrame(OutputStream out, byte[] payload) throws IOException {
+        int length = payload.length;
+        out.write(new byte[] {(byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length});
+        out.write(payload);
+        out.flush();
+    }
+    
+    /**
+     * Lê uma frame completa
+     */
+    public static byte[] readFrame(DataInputStream dis) throws IOException {
+        return readFrame(dis, () -> MAX_FRAME_SIZE);
+    }
+
+    /**
+     * Lê uma frame completa, recusando-a antes de alocar se passar do máximo
+     * O máximo só é consultado depois de chegar o comprimento
+     */
+    public static byte[] readFrame(DataInputStream dis, IntSupplier maxLength) throws IOException {
+        int length = dis.readInt();
+        if (length < 0 || length > maxLength.getAsInt()) {
+            throw new IOException("Tamanho de frame inválido: " + length);
+        }
+        byte[] payload = new byte[length];
+        dis.readFully(payload);
+        return payload;
+    }
+    
+    /**
+     * Valida um número de entradas lido da rede antes de alocar arrays com ele
+     * Rejeita números que não cabem nos bytes que faltam ler da frame
+     */
+    public static void checkCount(DataInputStream dis, int count, int minBytesEach, String what)
+        throws IOException {
+        if (count < 0 || count > dis.available() / minBytesEach) {
+            throw new IOException(what + " inválido: " + count);
+        }
+    }
+    
     /**
      * Serializa lista de eventos de forma compacta
      * Usa dicionário de nomes de produtos para evitar repetição
@@ -71,4 +136,66 @@ public class BinaryProtocol {
         
         return events;
     }
+    
+    /**
+     * Serializa um lote no formato de serializeEvents sem passar por objetos
+     * O dicionário escrito só tem os produtos que aparecem no lote
+     */
+    public static void serializeEventBatch(DataOutputStream dos, EventBatch batch) throws IOException {
+        String[] products = batch.getProducts();
+        int[] remap = new int[products.length];
+        Arrays.fill(remap, -1);
+        int[] used = new int[products.length];
+        int dictSize = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            int index = batch.productIndexAt(i);
+            if (remap[index] < 0) {
+                remap[index] = dictSize;
+                used[dictSize++] = index;
+            }
+        }
+        
+        dos.writeInt(dictSize);
+        for (int i = 0; i < dictSize; i++) {
+            dos.writeInt(i);
+            dos.writeUTF(products[used[i]]);
+        }
+        dos.writeInt(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            dos.writeInt(remap[batch.productIndexAt(i)]);
+            dos.writeLong(batch.quantityAt(i));
+            dos.writeDouble(batch.priceAt(i));
+        }
+    }
+    
+    /**
+     * Desserializa um lote no mesmo formato de serializeEvents diretamente
+     * para arrays primitivos, sem criar um objeto por evento
+     */
+    public static EventBatch deserializeEventBatch(DataInputStream dis) throws IOException {
+        int dictSize = dis.readInt();
+        checkCount(dis, dictSize, DICT_ENTRY_MIN_BYTES, "Dicionário");
+        String[] products = new String[dictSize];
+        for (int i = 0; i < dictSize; i++) {
+            int index = dis.readInt();
+            if (index < 0 || index >= dictSize) throw new IOException("Índice de produto inválido: " + index);
+            products[index] = dis.readUTF();
+        }
+        
+        int eventCount = dis.readInt();
+        checkCount(dis, eventCount, EVENT_BYTES, "Número de eventos");
+        int[] productIndex = new int[eventCount];
+        long[] quantities = new long[eventCount];
+        double[] prices = new double[eventCount];
+        for (int i = 0; i < eventCount; i++) {
+            int index = dis.readInt();
+            if (index < 0 || index >= dictSize || products[index] == null) {
+                throw new IOException("Índice de produto inválido: " + index);
+            }
+            productIndex[i] = index;
+            quantities[i] = dis.readLong();
+            prices[i] = dis.readDouble();
+        }
+        return new EventBatch(products, productIndex, quantities, prices);
+    }
 }
@@ -7,19 +7,86 @@ package org.example.protocol;
 public class ProtocolCommands {
     // Autenticação
     public static final int REGISTER = 1;
-    public static final int LOGIN = 2;
+    public static final int LOGIN = 2;           // resposta: mensagem, token de sessão
+    public static final int RESUME_SESSION = 3;  // token -> utilizador (sem password)
     
     // Operações
     public static final int ADD_EVENT = 10;
     public static final int NEXT_DAY = 11;
+    public static final int ADD_EVENTS = 12;  // Lote codificado com BinaryProtocol.serializeEvents
     public static final int GET_QUANTITY = 20;
     public static final int GET_VOLUME = 21;
     public static final int GET_PRICE_STATS = 22;
     public static final int GET_EVENTS = 23;
-    public static final int WAIT_SIMULTANEOUS = 30;
-    public static final int WAIT_CONSECUTIVE = 31;
+    // Leitura de eventos por partes; cada parte vem no formato de serializeEvents
+    // seguida de um boolean "há mais" (id 0: não há mais partes)
+    public static final int STREAM_OPEN = 24;   // dayOffset, nº produtos, produtos, tamanho da parte -> id, parte
+    public static final int STREAM_NEXT = 25;   // id, tamanho da parte -> parte
+    public static final int STREAM_CLOSE = 26;  // id
+    // Agregados dia a dia desde fromDay (nº absoluto do dia) até ao dia corrente:
+    // dia corrente, primeiro dia, n, (quantidade, volume, média, máximo, com vendas)*
+    public static final int GET_DAY_AGGREGATES = 27;  // produto, fromDay
+    // Esperas: o último campo é o timeout em ms (long, <= 0 sem limite);
+    // a resposta só é enviada quando a espera termina
+    public static final int WAIT_SIMULTANEOUS = 30;  // produto1, produto2, timeout
+    public static final int WAIT_CONSECUTIVE = 31;   // n, timeout
+    // Subscreve as mudanças de dia; responde com o dia corrente e, a cada
+    // mudança, o servidor envia uma frame com id de pedido PUSH_REQUEST_ID:
+    // DAY_CHANGED, novo dia
+    public static final int SUBSCRIBE_DAY_CHANGES = 32;
+    public static final int DAY_CHANGED = 33;
+    public static final int PUSH_REQUEST_ID = 0;
+    
+    // Variante por id de produto: os nomes são resolvidos uma vez com
+    // RESOLVE_PRODUCTS e os ids (estáveis entre reinícios) substituem o nome
+    public static final int RESOLVE_PRODUCTS = 50;     // n, nomes -> n ids (regista os novos)
+    public static final int ADD_EVENT_ID = 51;         // id, quantidade, preço
+    public static final int ADD_EVENTS_ID = 52;        // n, (id, quantidade, preço)*
+    public static final int GET_QUANTITY_ID = 53;      // id, dias
+    public static final int GET_VOLUME_ID = 54;        // id, dias
+    public static final int GET_PRICE_STATS_ID = 55;   // id, dias
+    public static final int WAIT_SIMULTANEOUS_ID = 56; // id1, id2, timeout
+    
+    // Monitorização
+    public static final int STATS = 40;  // contadores e histogramas de latência do servidor
+    public static final int PING = 41;   // sem corpo; verificação de saúde da ligação
     
     // Respostas
     public static final int RESPONSE_SUCCESS = 100;
     public static final int RESPONSE_ERROR = 101;
+    
+    /**
+     * Nome do comando, usado nas métricas
+     */
+    public static String name(int command) {
+        switch (command) {
+            case REGISTER: return "REGISTER";
+            case LOGIN: return "LOGIN";
+            case RESUME_SESSION: return "RESUME_SESSION";
+            case ADD_EVENT: return "ADD_EVENT";
+            case NEXT_DAY: return "NEXT_DAY";
+            case ADD_EVENTS: return "ADD_EVENTS";
+            case GET_QUANTITY: return "GET_QUANTITY";
+            case GET_VOLUME: return "GET_VOLUME";
+            case GET_PRICE_STATS: return "GET_PRICE_STATS";
+            case GET_EVENTS: return "GET_EVENTS";
+            case STREAM_OPEN: return "STREAM_OPEN";
+            case STREAM_NEXT: return "STREAM_NEXT";
+            case STREAM_CLOSE: return "STREAM_CLOSE";
+            case GET_DAY_AGGREGATES: return "GET_DAY_AGGREGATES";
+            case WAIT_SIMULTANEOUS: return "WAIT_SIMULTANEOUS";
+            case WAIT_CONSECUTIVE: return "WAIT_CONSECUTIVE";
+            case SUBSCRIBE_DAY_CHANGES: return "SUBSCRIBE_DAY_CHANGES";
+            case RESOLVE_PRODUCTS: return "RESOLVE_PRODUCTS";
+            case ADD_EVENT_ID: return "ADD_EVENT_ID";
+            case ADD_EVENTS_ID: return "ADD_EVENTS_ID";
+            case GET_QUANTITY_ID: return "GET_QUANTITY_ID";
+            case GET_VOLUME_ID: return "GET_VOLUME_ID";
+            case GET_PRICE_STATS_ID: return "GET_PRICE_STATS_ID";
+            case WAIT_SIMULTANEOUS_ID: return "WAIT_SIMULTANEOUS_ID";
+            case STATS: return "STATS";
+            case PING: return "PING";
+            default: return "CMD_" + command;
+        }
+    }
 }
@@ -1,120 +1,229 @@
 package org.example.server;
 
 import java.io.*;
-import java.net.Socket;
 import java.util.*;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntConsumer;
 import org.example.domain.*;
+import org.example.logging.Level;
+import org.example.logging.Logger;
 import org.example.protocol.*;
 
 /**
  * Handler para cada cliente conectado
  * Gerencia autenticação e processamento de comandos
+ * Recebe pedidos já enquadrados (frames) e devolve a resposta,
+ * independentemente de como a ligação é servida
  */
-public class ClientHandler implements Runnable {
+public class ClientHandler {
+    private static final Logger LOG = Logger.get(ClientHandler.class);
+
+    // Respostas das esperas: cada uma numa virtual thread, para que quem
+    // completa a espera (ingestão, mudança de dia) não faça I/O de socket
+    private static final Executor WAIT_COMPLETIONS = Executors.newVirtualThreadPerTaskExecutor();
+
+    // Pedidos de uma ligação a executar ao mesmo tempo; ao atingir o limite
+    // os front ends deixam de ler dessa ligação até algum terminar
+    static final int MAX_IN_FLIGHT = Math.max(1, Integer.getInteger("timeseries.conn.maxInFlight", 64));
+
+    // Antes do login só chegam frames pequenas (REGISTER, LOGIN, RESUME_SESSION,
+    // PING); os front ends não aceitam maiores sem autenticação
+    static final int MAX_UNAUTHENTICATED_FRAME = 4096;
 
     private final TimeSeriesServer server;
-    private final Socket socket;
-    private boolean authenticated = false;
-    private String currentUsername = null;
-    private final ReentrantLock connectionLock = new ReentrantLock();
+    private final ResponseWriter writer;
+    private volatile boolean authenticated = false;
+    private volatile String currentUsername = null;
+    // Esperas desta ligação ainda por responder
+    private final Set<CompletableFuture<?>> pendingWaits = ConcurrentHashMap.newKeySet();
+    // Os pedidos da ligação correm em paralelo e podem registar algo depois
+    // de close(); quem regista volta a verificar e desfaz o registo
+    private volatile boolean closed = false;
+
+    // Leituras de eventos por partes abertas nesta ligação
+    private static final int MAX_STREAMS = 16;
+    private static final int MAX_STREAM_CHUNK = 8192;
+    private final Map<Integer, EventCursor> streams = new ConcurrentHashMap<>();
+    private final AtomicInteger nextStreamId = new AtomicInteger(1);
+
+    // Aviso das mudanças de dia, se a ligação as subscreveu
+    private final AtomicReference<IntConsumer> dayChangeListener = new AtomicReference<>();
+
+    /**
+     * Envia uma frame de resposta pela ligação do cliente
+     * Tem de ser thread-safe: pedidos da mesma ligação terminam em paralelo
+     */
+    @FunctionalInterface
+    public interface ResponseWriter {
+        void send(byte[] payload) throws IOException;
+    }
 
-    public ClientHandler(TimeSeriesServer server, Socket socket) {
+    public ClientHandler(TimeSeriesServer server, ResponseWriter writer) {
         this.server = server;
-        this.socket = socket;
+        this.writer = writer;
     }
 
-    @Override
-    public void run() {
-        try {
-            DataInputStream dis = new DataInputStream(socket.getInputStream());
-            DataOutputStream dos = new DataOutputStream(
-                socket.getOutputStream()
-            );
-
-            while (true) {
-                connectionLock.lock();
-                try {
-                    int commandId = dis.readInt();
-                    System.out.println(
-                        "[SERVER] Received command ID: " + commandId
-                    );
-
-                    if (
-                        !authenticated &&
-                        commandId != ProtocolCommands.REGISTER &&
-                        commandId != ProtocolCommands.LOGIN
-                    ) {
-                        System.out.println(
-                            "[SERVER] Unauthenticated attempt to execute command: " +
-                                commandId
-                        );
-                        dos.writeInt(ProtocolCommands.RESPONSE_ERROR);
-                        dos.writeUTF("Não autenticado");
-                        dos.flush();
-                        continue;
-                    }
-
-                    switch (commandId) {
-                        case ProtocolCommands.REGISTER:
-                            handleRegister(dis, dos);
-                            break;
-                        case ProtocolCommands.LOGIN:
-                            handleLogin(dis, dos);
-                            break;
-                        case ProtocolCommands.ADD_EVENT:
-                            handleAddEvent(dis, dos);
-                            break;
-                        case ProtocolCommands.NEXT_DAY:
-                            handleNextDay(dis, dos);
-                            break;
-                        case ProtocolCommands.GET_QUANTITY:
-                            handleGetQuantity(dis, dos);
-                            break;
-                        case ProtocolCommands.GET_VOLUME:
-                            handleGetVolume(dis, dos);
-                            break;
-                        case ProtocolCommands.GET_PRICE_STATS:
-                            handleGetPriceStats(dis, dos);
-                            break;
-                        case ProtocolCommands.GET_EVENTS:
-                            handleGetEvents(dis, dos);
-                            break;
-                        case ProtocolCommands.WAIT_SIMULTANEOUS:
-                            handleWaitSimultaneous(dis, dos);
-                            break;
-                        case ProtocolCommands.WAIT_CONSECUTIVE:
-                            handleWaitConsecutive(dis, dos);
-                            break;
-                        default:
-                            dos.writeInt(ProtocolCommands.RESPONSE_ERROR);
-                            dos.writeUTF("Comando desconhecido");
-                            dos.flush();
-                    }
-                } finally {
-                    connectionLock.unlock();
-                }
-            }
-        } catch (EOFException e) {
-            // Cliente desconectado normalmente
-        } catch (IOException e) {
-            System.err.println("Erro ao processar cliente: " + e.getMessage());
-        } finally {
-            try {
-                socket.close();
-            } catch (IOException e) {
-                System.err.println("Erro ao fechar socket: " + e.getMessage());
+    /**
+     * Maior frame que a ligação pode enviar no estado atual
+     */
+    public int maxFrameSize() {
+        return authenticated ? BinaryProtocol.MAX_FRAME_SIZE : MAX_UNAUTHENTICATED_FRAME;
+    }
+
+    /**
+     * Processa uma frame de pedido e envia a resposta
+     * Cada frame começa com o id do pedido, repetido na resposta, para que
+     * pedidos da mesma ligação possam ser executados em paralelo e
+     * responder por qualquer ordem.
+     * Chamado por uma thread de trabalho, nunca pelo ciclo do selector
+     */
+    public void handleFrame(byte[] frame) throws IOException {
+        handleFrame(frame, System.nanoTime());
+    }
+
+    /**
+     * Como handleFrame(frame), com o instante (System.nanoTime) em que a
+     * frame foi lida da ligação, para medir o tempo em fila até aqui
+     */
+    public void handleFrame(byte[] frame, long receivedNanos) throws IOException {
+        long startNanos = System.nanoTime();
+        DataInputStream dis = new DataInputStream(
+            new ByteArrayInputStream(frame)
+        );
+        ByteArrayOutputStream response = new ByteArrayOutputStream(64);
+        DataOutputStream dos = new DataOutputStream(response);
+
+        int requestId = dis.readInt();
+        dos.writeInt(requestId);
+        int commandId = dis.readInt();
+
+        if (
+            !authenticated &&
+            commandId != ProtocolCommands.REGISTER &&
+            commandId != ProtocolCommands.LOGIN &&
+            commandId != ProtocolCommands.RESUME_SESSION &&
+            commandId != ProtocolCommands.PING
+        ) {
+            if (LOG.isEnabled(Level.DEBUG)) {
+                LOG.debug("Unauthenticated attempt to execute command: {}", commandId);
             }
+            dos.writeInt(ProtocolCommands.RESPONSE_ERROR);
+            dos.writeUTF("Não autenticado");
+            writer.send(response.toByteArray());
+            recordCommand(commandId, receivedNanos, startNanos);
+            return;
         }
+
+        switch (commandId) {
+            case ProtocolCommands.REGISTER:
+                handleRegister(dis, dos);
+                break;
+            case ProtocolCommands.LOGIN:
+                handleLogin(dis, dos);
+                break;
+            case ProtocolCommands.RESUME_SESSION:
+                handleResumeSession(dis, dos);
+                break;
+            case ProtocolCommands.ADD_EVENT:
+                handleAddEvent(dis, dos);
+                break;
+            case ProtocolCommands.ADD_EVENTS:
+                handleAddEvents(dis, dos);
+                break;
+            case ProtocolCommands.NEXT_DAY:
+                handleNextDay(dis, dos);
+                break;
+            case ProtocolCommands.GET_QUANTITY:
+                handleGetQuantity(dis, dos);
+                break;
+            case ProtocolCommands.GET_VOLUME:
+                handleGetVolume(dis, dos);
+                break;
+            case ProtocolCommands.GET_PRICE_STATS:
+                handleGetPriceStats(dis, dos);
+                break;
+            case ProtocolCommands.GET_EVENTS:
+                handleGetEvents(dis, dos);
+                break;
+            case ProtocolCommands.STREAM_OPEN:
+                handleStreamOpen(dis, dos);
+                break;
+            case ProtocolCommands.STREAM_NEXT:
+                handleStreamNext(dis, dos);
+                break;
+            case ProtocolCommands.STREAM_CLOSE:
+                handleStreamClose(dis, dos);
+                break;
+            case ProtocolCommands.GET_DAY_AGGREGATES:
+                handleGetDayAggregates(dis, dos);
+                break;
+            case ProtocolCommands.SUBSCRIBE_DAY_CHANGES:
+                handleSubscribeDayChanges(dos);
+                break;
+            case ProtocolCommands.WAIT_SIMULTANEOUS:
+                handleWaitSimultaneous(dis, requestId, receivedNanos, startNanos);
+                return; // responde quando a espera terminar
+            case ProtocolCommands.WAIT_CONSECUTIVE:
+                handleWaitConsecutive(dis, requestId, receivedNanos, startNanos);
+                return;
+            case ProtocolCommands.RESOLVE_PRODUCTS:
+                handleResolveProducts(dis, dos);
+                break;
+            case ProtocolCommands.ADD_EVENT_ID:
+                handleAddEventById(dis, dos);
+                break;
+            case ProtocolCommands.ADD_EVENTS_ID:
+                handleAddEventsById(dis, dos);
+                break;
+            case ProtocolCommands.GET_QUANTITY_ID:
+                handleGetQuantityById(dis, dos);
+                break;
+            case ProtocolCommands.GET_VOLUME_ID:
+                handleGetVolumeById(dis, dos);
+                break;
+            case ProtocolCommands.GET_PRICE_STATS_ID:
+                handleGetPriceStatsById(dis, dos);
+                break;
+            case ProtocolCommands.WAIT_SIMULTANEOUS_ID:
+                handleWaitSimultaneousById(dis, requestId, receivedNanos, startNanos);
+                return;
+            case ProtocolCommands.STATS:
+                handleStats(dos);
+                break;
+            case ProtocolCommands.PING:
+                dos.writeInt(ProtocolCommands.RESPONSE_SUCCESS);
+                break;
+            default:
+                dos.writeInt(ProtocolCommands.RESPONSE_ERROR);
+                dos.writeUTF("Comando desconhecido");
+        }
+        dos.flush();
+        writer.send(response.toByteArray());
+        recordCommand(commandId, receivedNanos, startNanos);
+    }
+
+    // Tempo em fila até startNanos e de serviço até agora
+    private void recordCommand(int commandId, long receivedNanos, long startNanos) {
+        server.getMetrics().recordCommand(commandId, startNanos - receivedNanos, System.nanoTime() - startNanos);
     }
 
     private void handleRegister(DataInputStream dis, DataOutputStream dos)
         throws IOException {
         String username = dis.readUTF();
         String password = dis.readUTF();
-        System.out.println("[SERVER] REGISTER - Username: " + username);
+        LOG.debug("REGISTER - Username: {}", username);
 
-        if (server.registerUser(username, password)) {
+        boolean registered;
+        try {
+            registered = server.registerUser(username, password);
+        } catch (IOException e) {
+            dos.writeInt(ProtocolCommands.RESPONSE_ERROR);
+            dos.writeUTF("Registo falhou: " + e.getMessage());
+            return;
+        }
+        if (registered) {
             dos.writeInt(ProtocolCommands.RESPONSE_SUCCESS);
             dos.writeUTF("Registo bem-sucedido");
         } else {
@@ -128,13 +237,14 @@ public class ClientHandler implements Runnable {
         throws IOException {
         String username = dis.readUTF();
         String password = dis.readUTF();
-        System.out.println("[SERVER] LOGIN - Username: " + username);
+        LOG.debug("LOGIN - Username: {}", username);
 
         if (server.authenticateUser(username, password)) {
             authenticated = true;
             currentUsername = username;
             dos.writeInt(ProtocolCommands.RESPONSE_SUCCESS);
             dos.writeUTF("Login bem-sucedido");
+            dos.writeUTF(server.createSession(username));
         } else {
             dos.writeInt(ProtocolCommands.RESPONSE_ERROR);
             dos.writeUTF("Utilizador ou password inválidos");
@@ -142,31 +252,72 @@ public class ClientHandler implements Runnable {
         dos.flush();
     }
 
+    /**
+     * Autentica a ligação com um token de sessão, sem verificar a password
+     */
+    private void handleResumeSession(DataInputStream dis, DataOutputStream dos)
+        throws IOException {
+        String token = dis.readUTF();
+        String username = server.resumeSession(token);
+        LOG.debug("RESUME_SESSION - Username: {}", username);
+
+        if (username != null) {
+            authenticated = true;
+            currentUsername = username;
+            dos.writeInt(ProtocolCommands.RESPONSE_SUCCESS);
+            dos.writeUTF(username);
+        } else {
+            dos.writeInt(ProtocolCommands.RESPONSE_ERROR);
+            dos.writeUTF("Sessão inválida ou expirada");
+        }
+    }
+
     private void handleAddEvent(DataInputStream dis, DataOutputStream dos)
         throws IOException {
         String productName = dis.readUTF();
         long quantity = dis.readLong();
         double price = dis.readDouble();
-        System.out.println(
-            "[SERVER] ADD_EVENT - Product: " +
-                productName +
-                ", Quantity: " +
-                quantity +
-                ", Price: " +
-                price
-        );
+        if (LOG.traceSampled()) {
+            LOG.trace("ADD_EVENT - Product: {}, Quantity: {}, Price: {}", productName, quantity, price);
+        }
 
-        server.addEvent(productName, quantity, price);
+        try {
+            server.addEvent(productName, quantity, price);
+        } catch (IOException e) {
+            dos.writeInt(ProtocolCommands.RESPONSE_ERROR);
+            dos.writeUTF("Evento não registado: " + e.getMessage());
+            dos.flush();
+            return;
+        }
 
         dos.writeInt(ProtocolCommands.RESPONSE_SUCCESS);
         dos.writeUTF("Evento adicionado");
         dos.flush();
     }
 
+    private void handleAddEvents(DataInputStream dis, DataOutputStream dos)
+        throws IOException {
+        EventBatch batch = BinaryProtocol.deserializeEventBatch(dis);
+        if (LOG.traceSampled()) LOG.trace("ADD_EVENTS - Events: {}", batch.size());
+
+        try {
+            server.addEvents(batch);
+        } catch (IOException e) {
+            dos.writeInt(ProtocolCommands.RESPONSE_ERROR);
+            dos.writeUTF("Eventos não registados: " + e.getMessage());
+            dos.flush();
+            return;
+        }
+
+        dos.writeInt(ProtocolCommands.RESPONSE_SUCCESS);
+        dos.writeInt(batch.size());
+        dos.flush();
+    }
+
     private void handleNextDay(DataInputStream dis, DataOutputStream dos)
         throws IOException {
-        System.out.println("[SERVER] NEXT_DAY");
         server.nextDay();
+        LOG.debug("NEXT_DAY - Day: {}", server.getCurrentDay());
 
         dos.writeInt(ProtocolCommands.RESPONSE_SUCCESS);
         dos.writeInt(server.getCurrentDay());
@@ -177,26 +328,9 @@ public class ClientHandler implements Runnable {
         throws IOException {
         String product = dis.readUTF();
         int daysLookback = dis.readInt();
-        System.out.println(
-            "[SERVER] GET_QUANTITY - Product: " +
-                product +
-                ", Days Lookback: " +
-                daysLookback
-        );
-
-        long quantity = 0;
-        for (int i = 0; i <= daysLookback; i++) {
-            int day = server.getCurrentDay() - i;
-            if (day < 0) break;
-
-            TimeSeries series = server.getTimeSeries(day);
-            if (series != null) {
-                quantity += series.calculateQuantity(
-                    product,
-                    daysLookback,
-                    server.getCurrentDay()
-                );
-            }
+        long quantity = server.getQuantity(product, daysLookback);
+        if (LOG.traceSampled()) {
+            LOG.trace("GET_QUANTITY - Product: {}, Days Lookback: {}, Quantity: {}", product, daysLookback, quantity);
         }
 
         dos.writeInt(ProtocolCommands.RESPONSE_SUCCESS);
@@ -208,35 +342,11 @@ public class ClientHandler implements Runnable {
         throws IOException {
         String product = dis.readUTF();
         int daysLookback = dis.readInt();
-        System.out.println(
-            "[SERVER] GET_VOLUME - Product: " +
-                product +
-                ", Days Lookback: " +
-                daysLookback
-        );
-
-        double volume = 0;
-        for (int i = 0; i <= daysLookback; i++) {
-            int day = server.getCurrentDay() - i;
-            if (day < 0) break;
-
-            TimeSeries series = server.getTimeSeries(day);
-            if (series != null) {
-                double dayVolume = series.calculateVolume(
-                    product,
-                    daysLookback,
-                    server.getCurrentDay()
-                );
-                System.out.println(
-                    "[SERVER] Day " + day + " volume: " + dayVolume
-                );
-                volume += dayVolume;
-            } else {
-                System.out.println("[SERVER] Day " + day + " series is NULL");
-            }
+        double volume = server.getVolume(product, daysLookback);
+        if (LOG.traceSampled()) {
+            LOG.trace("GET_VOLUME - Product: {}, Days Lookback: {}, Volume: {}", product, daysLookback, volume);
         }
 
-        System.out.println("[SERVER] Total volume calculated: " + volume);
         dos.writeInt(ProtocolCommands.RESPONSE_SUCCESS);
         dos.writeDouble(volume);
         dos.flush();
@@ -246,41 +356,18 @@ public class ClientHandler implements Runnable {
         throws IOException {
         String product = dis.readUTF();
         int daysLookback = dis.readInt();
-        System.out.println(
-            "[SERVER] GET_PRICE_STATS - Product: " +
-                product +
-                ", Days Lookback: " +
-                daysLookback
-        );
-
-        double sumAvg = 0;
-        double maxPrice = 0;
-        int count = 0;
-
-        for (int i = 0; i <= daysLookback; i++) {
-            int day = server.getCurrentDay() - i;
-            if (day < 0) break;
-
-            TimeSeries series = server.getTimeSeries(day);
-            if (series != null) {
-                AggregationResult.PriceStats stats = series.calculatePriceStats(
-                    product,
-                    daysLookback,
-                    server.getCurrentDay()
-                );
-                
-                // Only include in statistics if there were sales (max > 0)
-                if (stats.maximum > 0) {
-                    sumAvg += stats.average;
-                    maxPrice = Math.max(maxPrice, stats.maximum);
-                    count++;
-                }
-            }
+        if (LOG.traceSampled()) {
+            LOG.trace("GET_PRICE_STATS - Product: {}, Days Lookback: {}", product, daysLookback);
         }
 
+        AggregationResult.PriceStats stats = server.getPriceStats(
+            product,
+            daysLookback
+        );
+
         dos.writeInt(ProtocolCommands.RESPONSE_SUCCESS);
-        dos.writeDouble(sumAvg / Math.max(count, 1));
-        dos.writeDouble(maxPrice);
+        dos.writeDouble(stats.average);
+        dos.writeDouble(stats.maximum);
         dos.flush();
     }
 
@@ -292,15 +379,12 @@ public class ClientHandler implements Runnable {
         for (int i = 0; i < productCount; i++) {
             products.add(dis.readUTF());
         }
-        System.out.println(
-            "[SERVER] GET_EVENTS - Day Offset: " +
-                dayOffset +
-                ", Products: " +
-                products
-        );
+        if (LOG.traceSampled()) {
+            LOG.trace("GET_EVENTS - Day Offset: {}, Products: {}", dayOffset, products);
+        }
 
         int day = server.getCurrentDay() - dayOffset;
-        TimeSeries series = server.getTimeSeries(day);
+        DaySeries series = server.getTimeSeries(day);
 
         List<Event> events = series != null
             ? series.getEventsForProducts(products)
@@ -316,52 +400,389 @@ public class ClientHandler implements Runnable {
         dos.flush();
     }
 
-    private void handleWaitSimultaneous(
-        DataInputStream dis,
-        DataOutputStream dos
-    ) throws IOException {
-        String product1 = dis.readUTF();
-        String product2 = dis.readUTF();
-        System.out.println(
-            "[SERVER] WAIT_SIMULTANEOUS - Product1: " +
-                product1 +
-                ", Product2: " +
-                product2
-        );
+    /**
+     * Abre um cursor sobre os eventos de um dia e envia a primeira parte
+     * O cursor só fica registado se houver mais partes
+     */
+    private void handleStreamOpen(DataInputStream dis, DataOutputStream dos)
+        throws IOException {
+        int dayOffset = dis.readInt();
+        Set<String> products = new HashSet<>();
+        int productCount = dis.readInt();
+        for (int i = 0; i < productCount; i++) {
+            products.add(dis.readUTF());
+        }
+        int chunkSize = Math.max(1, Math.min(dis.readInt(), MAX_STREAM_CHUNK));
+        if (LOG.traceSampled()) {
+            LOG.trace("STREAM_OPEN - Day Offset: {}, Products: {}, Chunk: {}", dayOffset, products, chunkSize);
+        }
 
-        boolean result = server
-            .getNotificationManager()
-            .waitForSimultaneousSales(
-                product1,
-                product2,
-                60000,
-                server.getCurrentDay()
-            );
+        if (streams.size() >= MAX_STREAMS) {
+            dos.writeInt(ProtocolCommands.RESPONSE_ERROR);
+            dos.writeUTF("Demasiadas leituras abertas");
+            return;
+        }
+        DaySeries series = server.getTimeSeries(server.getCurrentDay() - dayOffset);
+        EventCursor cursor = series != null ? series.openCursor(products) : null;
+        EventBatch chunk = cursor != null ? cursor.next(chunkSize) : null;
+        boolean more = cursor != null && cursor.hasMore();
+        int streamId = more ? nextStreamId.getAndIncrement() : 0;
+        if (more) streams.put(streamId, cursor);
 
         dos.writeInt(ProtocolCommands.RESPONSE_SUCCESS);
-        dos.writeBoolean(result);
-        dos.flush();
+        dos.writeInt(streamId);
+        writeChunk(dos, chunk, more);
     }
 
-    private void handleWaitConsecutive(
-        DataInputStream dis,
-        DataOutputStream dos
-    ) throws IOException {
+    /**
+     * Envia a parte seguinte; o cursor sai do mapa enquanto é lido, pelo que
+     * dois pedidos simultâneos sobre a mesma leitura não o partilham
+     */
+    private void handleStreamNext(DataInputStream dis, DataOutputStream dos)
+        throws IOException {
+        int streamId = dis.readInt();
+        int chunkSize = Math.max(1, Math.min(dis.readInt(), MAX_STREAM_CHUNK));
+        if (LOG.traceSampled()) LOG.trace("STREAM_NEXT - Stream: {}", streamId);
+
+        EventCursor cursor = streams.remove(streamId);
+        if (cursor == null) {
+            dos.writeInt(ProtocolCommands.RESPONSE_ERROR);
+            dos.writeUTF("Leitura desconhecida: " + streamId);
+            return;
+        }
+        EventBatch chunk = cursor.next(chunkSize);
+        boolean more = cursor.hasMore();
+        if (more) streams.put(streamId, cursor);
+
+        dos.writeInt(ProtocolCommands.RESPONSE_SUCCESS);
+        writeChunk(dos, chunk, more);
+    }
+
+    private void handleStreamClose(DataInputStream dis, DataOutputStream dos)
+        throws IOException {
+        int streamId = dis.readInt();
+        if (LOG.traceSampled()) LOG.trace("STREAM_CLOSE - Stream: {}", streamId);
+        streams.remove(streamId);
+        dos.writeInt(ProtocolCommands.RESPONSE_SUCCESS);
+    }
+
+    private static void writeChunk(DataOutputStream dos, EventBatch chunk, boolean more)
+        throws IOException {
+        if (chunk == null) chunk = new EventBatch(new String[0], new int[0], new long[0], new double[0]);
+        BinaryProtocol.serializeEventBatch(dos, chunk);
+        dos.writeBoolean(more);
+    }
+
+    private void handleGetDayAggregates(DataInputStream dis, DataOutputStream dos)
+        throws IOException {
         String product = dis.readUTF();
+        int fromDay = dis.readInt();
+        if (LOG.traceSampled()) LOG.trace("GET_DAY_AGGREGATES - Product: {}, From Day: {}", product, fromDay);
+
+        AggregationResult.DayAggregates aggregates =
+            server.getDayAggregates(server.getProducts().idOf(product), fromDay);
+        dos.writeInt(ProtocolCommands.RESPONSE_SUCCESS);
+        dos.writeInt(aggregates.currentDay);
+        dos.writeInt(aggregates.firstDay);
+        dos.writeInt(aggregates.size());
+        for (int i = 0; i < aggregates.size(); i++) {
+            dos.writeLong(aggregates.quantities[i]);
+            dos.writeDouble(aggregates.volumes[i]);
+            dos.writeDouble(aggregates.averagePrices[i]);
+            dos.writeDouble(aggregates.maxPrices[i]);
+            dos.writeBoolean(aggregates.hasSales[i]);
+        }
+    }
+
+    /**
+     * A partir daqui cada mudança de dia é enviada a esta ligação sem pedido
+     * O envio corre numa virtual thread, fora de quem mudou o dia
+     */
+    private void handleSubscribeDayChanges(DataOutputStream dos) throws IOException {
+        IntConsumer listener = day -> WAIT_COMPLETIONS.execute(() -> pushDayChange(day));
+        if (dayChangeListener.compareAndSet(null, listener)) {
+            server.addDayChangeListener(listener);
+            // close() pode já ter lido dayChangeListener
+            if (closed) server.removeDayChangeListener(listener);
+        }
+        dos.writeInt(ProtocolCommands.RESPONSE_SUCCESS);
+        dos.writeInt(server.getCurrentDay());
+    }
+
+    private void pushDayChange(int day) {
+        try {
+            ByteArrayOutputStream frame = new ByteArrayOutputStream(12);
+            DataOutputStream out = new DataOutputStream(frame);
+            out.writeInt(ProtocolCommands.PUSH_REQUEST_ID);
+            out.writeInt(ProtocolCommands.DAY_CHANGED);
+            out.writeInt(day);
+            out.flush();
+            writer.send(frame.toByteArray());
+        } catch (IOException e) {
+            LOG.debug("Aviso de mudança de dia não enviado: {}", e.getMessage());
+        }
+    }
+
+    private void handleResolveProducts(DataInputStream dis, DataOutputStream dos)
+        throws IOException {
         int count = dis.readInt();
-        System.out.println(
-            "[SERVER] WAIT_CONSECUTIVE - Product: " +
-                product +
-                ", Count: " +
-                count
-        );
+        BinaryProtocol.checkCount(dis, count, BinaryProtocol.NAME_MIN_BYTES, "Número de produtos");
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = dis.readUTF();
+        }
+        if (LOG.traceSampled()) LOG.trace("RESOLVE_PRODUCTS - Products: {}", count);
+
+        int[] ids;
+        try {
+            ids = server.getProducts().internAll(names);
+        } catch (IOException e) {
+            dos.writeInt(ProtocolCommands.RESPONSE_ERROR);
+            dos.writeUTF("Produtos não registados: " + e.getMessage());
+            return;
+        }
+        dos.writeInt(ProtocolCommands.RESPONSE_SUCCESS);
+        dos.writeInt(ids.length);
+        for (int id : ids) {
+            dos.writeInt(id);
+        }
+    }
+
+    // Escreve o erro e devolve false se o id não for de um produto registado
+    private boolean knownProduct(int productId, DataOutputStream dos) throws IOException {
+        if (server.getProducts().contains(productId)) return true;
+        dos.writeInt(ProtocolCommands.RESPONSE_ERROR);
+        dos.writeUTF("Produto desconhecido: " + productId);
+        return false;
+    }
 
-        String result = server
+    private void handleAddEventById(DataInputStream dis, DataOutputStream dos)
+        throws IOException {
+        int productId = dis.readInt();
+        long quantity = dis.readLong();
+        double price = dis.readDouble();
+        if (LOG.traceSampled()) {
+            LOG.trace("ADD_EVENT_ID - Product: {}, Quantity: {}, Price: {}", productId, quantity, price);
+        }
+        if (!knownProduct(productId, dos)) return;
+
+        try {
+            server.addEvent(productId, quantity, price);
+        } catch (IOException e) {
+            dos.writeInt(ProtocolCommands.RESPONSE_ERROR);
+            dos.writeUTF("Evento não registado: " + e.getMessage());
+            return;
+        }
+        dos.writeInt(ProtocolCommands.RESPONSE_SUCCESS);
+        dos.writeUTF("Evento adicionado");
+    }
+
+    /**
+     * Lote por ids: o dicionário do lote é construído aqui, um nome por
+     * produto distinto, sem nomes na rede
+     */
+    private void handleAddEventsById(DataInputStream dis, DataOutputStream dos)
+        throws IOException {
+        int count = dis.readInt();
+        BinaryProtocol.checkCount(dis, count, BinaryProtocol.EVENT_BYTES, "Número de eventos");
+        if (LOG.traceSampled()) LOG.trace("ADD_EVENTS_ID - Events: {}", count);
+
+        ProductDictionary products = server.getProducts();
+        Map<Integer, Integer> batchIndex = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        int[] ids = new int[Math.min(count, 16)];
+        int[] productIndex = new int[count];
+        long[] quantities = new long[count];
+        double[] prices = new double[count];
+        for (int i = 0; i < count; i++) {
+            int productId = dis.readInt();
+            quantities[i] = dis.readLong();
+            prices[i] = dis.readDouble();
+            Integer index = batchIndex.get(productId);
+            if (index == null) {
+                String name = products.nameOf(productId);
+                if (name == null) {
+                    // O resto da frame é descartado com ela; o lote não é aplicado
+                    dos.writeInt(ProtocolCommands.RESPONSE_ERROR);
+                    dos.writeUTF("Produto desconhecido: " + productId);
+                    return;
+                }
+                index = names.size();
+                batchIndex.put(productId, index);
+                names.add(name);
+                if (index == ids.length) ids = Arrays.copyOf(ids, ids.length * 2);
+                ids[index] = productId;
+            }
+            productIndex[i] = index;
+        }
+
+        EventBatch batch = new EventBatch(names.toArray(new String[0]), Arrays.copyOf(ids, names.size()),
+            productIndex, quantities, prices);
+        try {
+            server.addEvents(batch);
+        } catch (IOException e) {
+            dos.writeInt(ProtocolCommands.RESPONSE_ERROR);
+            dos.writeUTF("Eventos não registados: " + e.getMessage());
+            return;
+        }
+        dos.writeInt(ProtocolCommands.RESPONSE_SUCCESS);
+        dos.writeInt(batch.size());
+    }
+
+    private void handleGetQuantityById(DataInputStream dis, DataOutputStream dos)
+        throws IOException {
+        int productId = dis.readInt();
+        int daysLookback = dis.readInt();
+        if (LOG.traceSampled()) LOG.trace("GET_QUANTITY_ID - Product: {}, Days Lookback: {}", productId, daysLookback);
+        if (!knownProduct(productId, dos)) return;
+
+        dos.writeInt(ProtocolCommands.RESPONSE_SUCCESS);
+        dos.writeLong(server.getQuantity(productId, daysLookback));
+    }
+
+    private void handleGetVolumeById(DataInputStream dis, DataOutputStream dos)
+        throws IOException {
+        int productId = dis.readInt();
+        int daysLookback = dis.readInt();
+        if (LOG.traceSampled()) LOG.trace("GET_VOLUME_ID - Product: {}, Days Lookback: {}", productId, daysLookback);
+        if (!knownProduct(productId, dos)) return;
+
+        dos.writeInt(ProtocolCommands.RESPONSE_SUCCESS);
+        dos.writeDouble(server.getVolume(productId, daysLookback));
+    }
+
+    private void handleGetPriceStatsById(DataInputStream dis, DataOutputStream dos)
+        throws IOException {
+        int productId = dis.readInt();
+        int daysLookback = dis.readInt();
+        if (LOG.traceSampled()) LOG.trace("GET_PRICE_STATS_ID - Product: {}, Days Lookback: {}", productId, daysLookback);
+        if (!knownProduct(productId, dos)) return;
+
+        AggregationResult.PriceStats stats = server.getPriceStats(productId, daysLookback);
+        dos.writeInt(ProtocolCommands.RESPONSE_SUCCESS);
+        dos.writeDouble(stats.average);
+        dos.writeDouble(stats.maximum);
+    }
+
+    private void handleWaitSimultaneousById(DataInputStream dis, int requestId, long receivedNanos, long startNanos)
+        throws IOException {
+        int product1 = dis.readInt();
+        int product2 = dis.readInt();
+        long timeoutMs = dis.readLong();
+        if (LOG.traceSampled()) {
+            LOG.trace("WAIT_SIMULTANEOUS_ID - Product1: {}, Product2: {}, Timeout: {}", product1, product2, timeoutMs);
+        }
+
+        ProductDictionary products = server.getProducts();
+        if (!products.contains(product1) || !products.contains(product2)) {
+            ByteArrayOutputStream response = new ByteArrayOutputStream(32);
+            DataOutputStream dos = new DataOutputStream(response);
+            dos.writeInt(requestId);
+            knownProduct(products.contains(product1) ? product2 : product1, dos);
+            dos.flush();
+            writer.send(response.toByteArray());
+            recordCommand(ProtocolCommands.WAIT_SIMULTANEOUS_ID, receivedNanos, startNanos);
+            return;
+        }
+        CompletableFuture<Boolean> wait = server
             .getNotificationManager()
-            .waitForConsecutiveSales(count, 60000);
+            .onSimultaneousSales(product1, product2);
+        respondWhenDone(wait, timeoutMs, requestId, ProtocolCommands.WAIT_SIMULTANEOUS_ID, receivedNanos, startNanos,
+            (result, out) -> out.writeBoolean(result != null && result));
+    }
 
+    private void handleStats(DataOutputStream dos) throws IOException {
+        if (LOG.traceSampled()) LOG.trace("STATS");
         dos.writeInt(ProtocolCommands.RESPONSE_SUCCESS);
-        dos.writeUTF(result != null ? result : "");
-        dos.flush();
+        server.getMetrics().writeTo(dos);
+    }
+
+    private void handleWaitSimultaneous(DataInputStream dis, int requestId, long receivedNanos, long startNanos)
+        throws IOException {
+        String product1 = dis.readUTF();
+        String product2 = dis.readUTF();
+        long timeoutMs = dis.readLong();
+        if (LOG.traceSampled()) {
+            LOG.trace("WAIT_SIMULTANEOUS - Product1: {}, Product2: {}, Timeout: {}", product1, product2, timeoutMs);
+        }
+
+        // Por nome: um produto ainda sem id não é registado só por se esperar por ele
+        CompletableFuture<Boolean> wait = server
+            .getNotificationManager()
+            .onSimultaneousSales(product1, product2);
+        respondWhenDone(wait, timeoutMs, requestId, ProtocolCommands.WAIT_SIMULTANEOUS, receivedNanos, startNanos,
+            (result, dos) -> dos.writeBoolean(result != null && result));
+    }
+
+    private void handleWaitConsecutive(DataInputStream dis, int requestId, long receivedNanos, long startNanos)
+        throws IOException {
+        int count = dis.readInt();
+        long timeoutMs = dis.readLong();
+        if (LOG.traceSampled()) LOG.trace("WAIT_CONSECUTIVE - Count: {}, Timeout: {}", count, timeoutMs);
+
+        CompletableFuture<String> wait = server
+            .getNotificationManager()
+            .onConsecutiveSales(count);
+        respondWhenDone(wait, timeoutMs, requestId, ProtocolCommands.WAIT_CONSECUTIVE, receivedNanos, startNanos,
+            (result, dos) -> dos.writeUTF(result != null ? result : ""));
+    }
+
+    /**
+     * Escreve o resultado de uma espera na resposta
+     */
+    @FunctionalInterface
+    private interface WaitResult<T> {
+        void write(T result, DataOutputStream dos) throws IOException;
+    }
+
+    /**
+     * Responde ao pedido quando a espera completar, expirar (timeout <= 0:
+     * sem limite) ou o dia acabar; nenhuma thread fica bloqueada entretanto
+     * Uma espera que expira responde como se a condição não se tivesse dado.
+     * O tempo de serviço registado inclui a espera.
+     */
+    private <T> void respondWhenDone(
+        CompletableFuture<T> wait,
+        long timeoutMs,
+        int requestId,
+        int commandId,
+        long receivedNanos,
+        long startNanos,
+        WaitResult<T> writeResult
+    ) {
+        if (timeoutMs > 0) wait.orTimeout(timeoutMs, TimeUnit.MILLISECONDS);
+        pendingWaits.add(wait);
+        // close() pode já ter percorrido pendingWaits
+        if (closed) wait.cancel(false);
+        wait.whenCompleteAsync((result, error) -> {
+            pendingWaits.remove(wait);
+            if (error instanceof CancellationException) return; // ligação fechada
+            try {
+                ByteArrayOutputStream response = new ByteArrayOutputStream(32);
+                DataOutputStream dos = new DataOutputStream(response);
+                dos.writeInt(requestId);
+                dos.writeInt(ProtocolCommands.RESPONSE_SUCCESS);
+                writeResult.write(error == null ? result : null, dos);
+                dos.flush();
+                writer.send(response.toByteArray());
+                recordCommand(commandId, receivedNanos, startNanos);
+            } catch (IOException e) {
+                LOG.warn("Erro ao responder a espera: {}", e.getMessage());
+            }
+        }, WAIT_COMPLETIONS);
+    }
+
+    /**
+     * Cancela as esperas pendentes e larga os cursores quando a ligação fecha
+     */
+    public void close() {
+        closed = true;
+        IntConsumer listener = dayChangeListener.get();
+        if (listener != null) server.removeDayChangeListener(listener);
+        streams.clear();
+        for (CompletableFuture<?> wait : pendingWaits) {
+            wait.cancel(false);
+        }
+        pendingWaits.clear();
     }
 }
@@ -0,0 +1,125 @@
+package org.example.server;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import org.example.domain.SealedTimeSeries;
+
+/**
+ * Cache limitada, com despejo LRU, para dias que já saíram da janela em memória
+ * Falhas concorrentes para o mesmo dia partilham um único carregamento
+ * (single-flight); o carregamento corre fora do lock da cache.
+ */
+public class DayCache {
+    private final int capacity;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<Integer, SealedTimeSeries> entries;
+    private final ConcurrentHashMap<Integer, CompletableFuture<SealedTimeSeries>> loading = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+
+    /**
+     * Carrega um dia do disco; devolve null se não existir
+     */
+    @FunctionalInterface
+    public interface Loader {
+        SealedTimeSeries load(int day) throws IOException;
+    }
+
+    public DayCache(int capacity) {
+        this.capacity = Math.max(0, capacity);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, SealedTimeSeries> eldest) {
+                return size() > DayCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Obtém o dia da cache ou carrega-o com o loader dado
+     */
+    public SealedTimeSeries get(int day, Loader loader) throws IOException {
+        SealedTimeSeries cached = lookup(day);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+
+        CompletableFuture<SealedTimeSeries> mine = new CompletableFuture<>();
+        CompletableFuture<SealedTimeSeries> inFlight = loading.putIfAbsent(day, mine);
+        if (inFlight != null) return await(inFlight);
+
+        try {
+            // Um carregamento anterior pode ter terminado entre a falha e o putIfAbsent
+            cached = lookup(day);
+            if (cached != null) {
+                mine.complete(cached);
+                return cached;
+            }
+            loads.increment();
+            SealedTimeSeries series = loader.load(day);
+            if (series != null) put(day, series);
+            mine.complete(series);
+            return series;
+        } catch (IOException | RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(day, mine);
+        }
+    }
+
+    private SealedTimeSeries lookup(int day) {
+        lock.lock();
+        try {
+            return entries.get(day);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Coloca na cache um dia que já está em memória
+     */
+    public void put(int day, SealedTimeSeries series) {
+        lock.lock();
+        try {
+            entries.put(day, series);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static SealedTimeSeries await(CompletableFuture<SealedTimeSeries> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrompido à espera do carregamento do dia", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getCapacity() { return capacity; }
+    public long getHits() { return hits.sum(); }
+    public long getMisses() { return misses.sum(); }
+    public long getLoads() { return loads.sum(); }
+}
@@ -0,0 +1,241 @@
+package org.example.server;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import org.example.domain.Event;
+import org.example.domain.SealedTimeSeries;
+import org.example.domain.TimeSeries;
+
+/**
+ * Formato binário dos ficheiros de dia (day_N.tsd)
+ *
+ * Layout (big endian, blocos alinhados a 8 bytes):
+ *   cabeçalho  magic, versão, dia, nº eventos, nº produtos,
+ *              offsets do dicionário, agregações e colunas, tamanho total
+ *   dicionário por produto: comprimento (int) + nome em UTF-8
+ *   agregações quantidade (long[p]), volume, preço médio e máximo (double[p])
+ *   colunas    quantidades (long[n]), preços (double[n]),
+ *              timestamps (long[n]), ids de produto (int[n])
+ *
+ * A leitura mapeia o ficheiro com FileChannel.map e as colunas da
+ * SealedTimeSeries resultante são vistas diretas sobre o mapeamento:
+ * carregar um dia só lê o cabeçalho, o dicionário e as agregações.
+ */
+public final class DayFile {
+    private static final int MAGIC = 0x54534459; // "TSDY"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+
+    private DayFile() { }
+
+    /**
+     * Posições dos blocos de um ficheiro de dia, registadas no manifesto
+     */
+    public static final class Layout {
+        public final long aggregatesOffset;
+        public final long columnsOffset;
+        public final long fileSize;
+
+        public Layout(long aggregatesOffset, long columnsOffset, long fileSize) {
+            this.aggregatesOffset = aggregatesOffset;
+            this.columnsOffset = columnsOffset;
+            this.fileSize = fileSize;
+        }
+    }
+
+    public static File fileFor(File dataDir, int day) {
+        return new File(dataDir, "day_" + day + ".tsd");
+    }
+
+    /**
+     * Ficheiro no formato antigo, escrito com ObjectOutputStream
+     */
+    public static File legacyFileFor(File dataDir, int day) {
+        return new File(dataDir, "series_" + day + ".dat");
+    }
+
+    /**
+     * Dias com ficheiro no diretório de dados, em qualquer dos formatos
+     */
+    public static SortedSet<Integer> listDays(File dataDir) {
+        SortedSet<Integer> days = new TreeSet<>();
+        String[] names = dataDir.list();
+        if (names == null) return days;
+        for (String name : names) {
+            String number = null;
+            if (name.startsWith("day_") && name.endsWith(".tsd")) {
+                number = name.substring(4, name.length() - 4);
+            } else if (name.startsWith("series_") && name.endsWith(".dat")) {
+                number = name.substring(7, name.length() - 4);
+            }
+            if (number == null) continue;
+            try {
+                days.add(Integer.parseInt(number));
+            } catch (NumberFormatException e) {
+                // Ignorar ficheiros com nomes inesperados
+            }
+        }
+        return days;
+    }
+
+    /**
+     * Escreve o dia de forma durável: ficheiro temporário, force, rename
+     * atómico e force do diretório
+     * Devolve as posições dos blocos escritos
+     */
+    public static Layout write(File target, SealedTimeSeries series) throws IOException {
+        int products = series.productCount();
+        int events = series.size();
+
+        byte[][] names = new byte[products][];
+        for (int id = 0; id < products; id++) {
+            names[id] = series.productName(id).getBytes(StandardCharsets.UTF_8);
+        }
+        Layout layout = layoutOf(names, events);
+        long dictionaryOffset = HEADER_SIZE;
+        long aggregatesOffset = layout.aggregatesOffset;
+        long columnsOffset = layout.columnsOffset;
+        long fileSize = layout.fileSize;
+
+        Path tmp = new File(target.getPath() + ".tmp").toPath();
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(series.getDay())
+                  .putInt(events).putInt(products).putInt(0)
+                  .putLong(dictionaryOffset).putLong(aggregatesOffset)
+                  .putLong(columnsOffset).putLong(fileSize);
+
+            buffer.position((int) dictionaryOffset);
+            for (byte[] name : names) {
+                buffer.putInt(name.length).put(name);
+            }
+
+            buffer.position((int) aggregatesOffset);
+            for (int id = 0; id < products; id++) buffer.putLong(series.totalQuantity(id));
+            for (int id = 0; id < products; id++) buffer.putDouble(series.totalVolume(id));
+            for (int id = 0; id < products; id++) buffer.putDouble(series.averagePrice(id));
+            for (int id = 0; id < products; id++) buffer.putDouble(series.maxPrice(id));
+
+            buffer.position((int) columnsOffset);
+            for (int i = 0; i < events; i++) buffer.putLong(series.quantityAt(i));
+            for (int i = 0; i < events; i++) buffer.putDouble(series.priceAt(i));
+            for (int i = 0; i < events; i++) buffer.putLong(series.timestampAt(i));
+            for (int i = 0; i < events; i++) buffer.putInt(series.productIdAt(i));
+
+            buffer.force();
+            channel.force(true);
+        }
+        FileSync.replace(tmp, target);
+        return layout;
+    }
+
+    /**
+     * Posições dos blocos do ficheiro de um dia, sem o escrever
+     */
+    public static Layout layoutOf(SealedTimeSeries series) {
+        byte[][] names = new byte[series.productCount()][];
+        for (int id = 0; id < names.length; id++) {
+            names[id] = series.productName(id).getBytes(StandardCharsets.UTF_8);
+        }
+        return layoutOf(names, series.size());
+    }
+
+    private static Layout layoutOf(byte[][] names, int events) {
+        long dictionaryBytes = 0;
+        for (byte[] name : names) {
+            dictionaryBytes += 4 + name.length;
+        }
+        long aggregatesOffset = align(HEADER_SIZE + dictionaryBytes);
+        long columnsOffset = align(aggregatesOffset + 32L * names.length);
+        return new Layout(aggregatesOffset, columnsOffset, columnsOffset + 28L * events);
+    }
+
+    /**
+     * Mapeia um ficheiro de dia em memória sem copiar as colunas
+     */
+    public static SealedTimeSeries map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < HEADER_SIZE || length > Integer.MAX_VALUE) {
+                throw new IOException("Ficheiro de dia inválido: " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+
+            if (buffer.getInt() != MAGIC) throw new IOException("Ficheiro de dia inválido: " + file);
+            int version = buffer.getInt();
+            if (version != VERSION) throw new IOException("Versão de ficheiro não suportada: " + version);
+            int day = buffer.getInt();
+            int events = buffer.getInt();
+            int products = buffer.getInt();
+            buffer.getInt();
+            int dictionaryOffset = (int) buffer.getLong();
+            int aggregatesOffset = (int) buffer.getLong();
+            int columnsOffset = (int) buffer.getLong();
+            long fileSize = buffer.getLong();
+            if (fileSize != length || columnsOffset + 28L * events != fileSize) {
+                throw new IOException("Ficheiro de dia truncado: " + file);
+            }
+
+            buffer.position(dictionaryOffset);
+            String[] names = new String[products];
+            for (int id = 0; id < products; id++) {
+                byte[] name = new byte[buffer.getInt()];
+                buffer.get(name);
+                names[id] = new String(name, StandardCharsets.UTF_8);
+            }
+
+            buffer.position(aggregatesOffset);
+            long[] totalQuantity = new long[products];
+            double[] totalVolume = new double[products];
+            double[] averagePrice = new double[products];
+            double[] maxPrice = new double[products];
+            buffer.asLongBuffer().get(totalQuantity);
+            buffer.position(aggregatesOffset + 8 * products);
+            buffer.asDoubleBuffer().get(totalVolume);
+            buffer.position(aggregatesOffset + 16 * products);
+            buffer.asDoubleBuffer().get(averagePrice);
+            buffer.position(aggregatesOffset + 24 * products);
+            buffer.asDoubleBuffer().get(maxPrice);
+
+            LongBuffer quantities = slice(buffer, columnsOffset, 8 * events).asLongBuffer();
+            DoubleBuffer prices = slice(buffer, columnsOffset + 8 * events, 8 * events).asDoubleBuffer();
+            LongBuffer timestamps = slice(buffer, columnsOffset + 16 * events, 8 * events).asLongBuffer();
+            IntBuffer productIds = slice(buffer, columnsOffset + 24 * events, 4 * events).asIntBuffer();
+
+            return new SealedTimeSeries(day, names, productIds, quantities, prices, timestamps,
+                totalQuantity, totalVolume, averagePrice, maxPrice);
+        }
+    }
+
+    /**
+     * Lê um ficheiro no formato antigo (um Event por writeObject)
+     */
+    public static SealedTimeSeries readLegacy(File file) throws IOException {
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int loadedDay = ois.readInt();
+            TimeSeries series = new TimeSeries(loadedDay);
+            int eventCount = ois.readInt();
+            for (int i = 0; i < eventCount; i++) {
+                series.addEvent((Event) ois.readObject());
+            }
+            return series.seal();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Erro ao desserializar eventos", e);
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        return buffer.slice(offset, length);
+    }
+
+    private static long align(long offset) {
+        return (offset + 7) & ~7L;
+    }
+}
@@ -0,0 +1,412 @@
+package org.example.server;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import org.example.domain.ProductAggregates;
+import org.example.domain.SealedTimeSeries;
+import org.example.logging.Logger;
+
+/**
+ * Manifesto do diretório de dados (data/manifest.dat)
+ *
+ * Regista o dia corrente e, por cada dia escrito em disco, o ficheiro, as
+ * posições dos blocos e o resumo por produto (quantidade, volume, preço médio
+ * e máximo). No arranque basta ler o manifesto para repor o dia corrente e o
+ * índice de totais; os eventos só são lidos quando um dia é consultado.
+ *
+ * O manifesto é uma fotografia (manifest.dat) seguida de um log só de
+ * acréscimo (manifest.log). Cada mudança de dia e cada dia escrito em disco
+ * acrescentam ao log um registo pequeno com o seu CRC32, com um force; de
+ * COMPACT_EVERY em COMPACT_EVERY registos, e no arranque, a fotografia é
+ * reescrita por inteiro (temporário, force e rename atómico) e o log
+ * esvaziado. Ao ler, a fotografia é reposta e o log aplicado até ao primeiro
+ * registo incompleto ou inválido. Uma fotografia inválida é tratada como
+ * inexistente.
+ */
+public class DayManifest {
+    private static final Logger LOG = Logger.get(DayManifest.class);
+    private static final int MAGIC = 0x54534D46; // "TSMF"
+    private static final int VERSION = 1;
+    private static final String FILE_NAME = "manifest.dat";
+    private static final String LOG_FILE_NAME = "manifest.log";
+    private static final int COMPACT_EVERY = Math.max(1, Integer.getInteger("timeseries.manifest.compactEvery", 256));
+
+    // Tipos de registo do log
+    private static final byte CURRENT_DAY = 1;
+    private static final byte DAY = 2;
+
+    private final File file;
+    private final File logFile;
+    private final ReentrantLock lock = new ReentrantLock();
+    private int currentDay = 0;
+    private final TreeMap<Integer, Entry> days = new TreeMap<>();
+
+    // Protegidos por lock; o canal só é aberto na primeira escrita
+    private FileChannel log;
+    private long logSize = 0;
+    private int logRecords = 0;
+    private boolean logBroken = false;
+
+    /**
+     * Um dia escrito em disco e o seu resumo
+     */
+    public static class Entry {
+        public final int day;
+        public final String fileName;
+        public final DayFile.Layout layout;
+        public final int events;
+        private final String[] products;
+        private final long[] totalQuantity;
+        private final double[] totalVolume;
+        private final double[] averagePrice;
+        private final double[] maxPrice;
+
+        Entry(int day, String fileName, DayFile.Layout layout, int events, String[] products,
+              long[] totalQuantity, double[] totalVolume, double[] averagePrice, double[] maxPrice) {
+            this.day = day;
+            this.fileName = fileName;
+            this.layout = layout;
+            this.events = events;
+            this.products = products;
+            this.totalQuantity = totalQuantity;
+            this.totalVolume = totalVolume;
+            this.averagePrice = averagePrice;
+            this.maxPrice = maxPrice;
+        }
+
+        public static Entry of(File dayFile, DayFile.Layout layout, SealedTimeSeries series) {
+            int count = series.productCount();
+            String[] products = new String[count];
+            long[] quantity = new long[count];
+            double[] volume = new double[count];
+            double[] average = new double[count];
+            double[] max = new double[count];
+            for (int id = 0; id < count; id++) {
+                products[id] = series.productName(id);
+                quantity[id] = series.totalQuantity(id);
+                volume[id] = series.totalVolume(id);
+                average[id] = series.averagePrice(id);
+                max[id] = series.maxPrice(id);
+            }
+            return new Entry(series.getDay(), dayFile.getName(), layout, series.size(),
+                products, quantity, volume, average, max);
+        }
+
+        public void forEachProduct(ProductAggregates.Visitor visitor) {
+            for (int id = 0; id < products.length; id++) {
+                visitor.visit(products[id], totalQuantity[id], totalVolume[id], averagePrice[id], maxPrice[id]);
+            }
+        }
+    }
+
+    private DayManifest(File dataDir) {
+        this.file = new File(dataDir, FILE_NAME);
+        this.logFile = new File(dataDir, LOG_FILE_NAME);
+    }
+
+    /**
+     * Lê o manifesto do diretório; vazio se não existir ou estiver inválido
+     */
+    public static DayManifest load(File dataDir) {
+        DayManifest manifest = new DayManifest(dataDir);
+        if (manifest.file.exists()) {
+            try {
+                manifest.read();
+            } catch (IOException e) {
+                LOG.warn("Manifesto inválido, a reconstruir: {}", e.getMessage());
+                manifest.currentDay = 0;
+                manifest.days.clear();
+            }
+        }
+        if (manifest.logFile.exists()) {
+            try {
+                manifest.replayLog();
+            } catch (IOException e) {
+                LOG.warn("Erro ao ler {}: {}", LOG_FILE_NAME, e.getMessage());
+                manifest.logBroken = true;
+            }
+        }
+        return manifest;
+    }
+
+    private void read() throws IOException {
+        byte[] content = Files.readAllBytes(file.toPath());
+        if (content.length < 4) throw new IOException("manifesto truncado");
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length - 4);
+        int stored = ByteBuffer.wrap(content).getInt(content.length - 4);
+        if ((int) crc.getValue() != stored) throw new IOException("CRC inválido");
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(content, 0, content.length - 4))) {
+            if (in.readInt() != MAGIC) throw new IOException("magic inválido");
+            int version = in.readInt();
+            if (version != VERSION) throw new IOException("versão não suportada: " + version);
+            currentDay = in.readInt();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Entry entry = readEntry(in);
+                days.put(entry.day, entry);
+            }
+        } catch (EOFException e) {
+            throw new IOException("manifesto truncado", e);
+        }
+    }
+
+    /**
+     * Aplica os registos do log; o primeiro incompleto ou com CRC errado
+     * (escrita interrompida) e tudo o que vem depois são ignorados
+     */
+    private void replayLog() throws IOException {
+        byte[] content = Files.readAllBytes(logFile.toPath());
+        ByteBuffer buffer = ByteBuffer.wrap(content);
+        int applied = 0;
+        while (buffer.remaining() >= 4) {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            boolean valid = length >= 1 && length <= buffer.remaining() - 4;
+            if (valid) {
+                CRC32 crc = new CRC32();
+                crc.update(content, buffer.position(), length);
+                valid = (int) crc.getValue() == buffer.getInt(buffer.position() + length);
+            }
+            if (!valid) {
+                buffer.position(start);
+                break;
+            }
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(content, buffer.position(), length))) {
+                byte type = in.readByte();
+                if (type == CURRENT_DAY) {
+                    currentDay = in.readInt();
+                } else if (type == DAY) {
+                    Entry entry = readEntry(in);
+                    days.put(entry.day, entry);
+                } else {
+                    throw new IOException("tipo de registo desconhecido: " + type);
+                }
+            }
+            buffer.position(buffer.position() + length + 4);
+            applied++;
+        }
+        if (buffer.hasRemaining()) {
+            LOG.warn("{}: {} bytes finais ignorados", LOG_FILE_NAME, buffer.remaining());
+            // O próximo registo substitui o resto
+            logBroken = true;
+        }
+        logSize = buffer.position();
+        logRecords = applied;
+    }
+
+    private static Entry readEntry(DataInputStream in) throws IOException {
+        int day = in.readInt();
+        String fileName = in.readUTF();
+        DayFile.Layout layout = new DayFile.Layout(in.readLong(), in.readLong(), in.readLong());
+        int events = in.readInt();
+        int products = in.readInt();
+        String[] names = new String[products];
+        long[] quantity = new long[products];
+        double[] volume = new double[products];
+        double[] average = new double[products];
+        double[] max = new double[products];
+        for (int id = 0; id < products; id++) {
+            names[id] = in.readUTF();
+            quantity[id] = in.readLong();
+            volume[id] = in.readDouble();
+            average[id] = in.readDouble();
+            max[id] = in.readDouble();
+        }
+        return new Entry(day, fileName, layout, events, names, quantity, volume, average, max);
+    }
+
+    private static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+        out.writeInt(entry.day);
+        out.writeUTF(entry.fileName);
+        out.writeLong(entry.layout.aggregatesOffset);
+        out.writeLong(entry.layout.columnsOffset);
+        out.writeLong(entry.layout.fileSize);
+        out.writeInt(entry.events);
+        out.writeInt(entry.products.length);
+        for (int id = 0; id < entry.products.length; id++) {
+            out.writeUTF(entry.products[id]);
+            out.writeLong(entry.totalQuantity[id]);
+            out.writeDouble(entry.totalVolume[id]);
+            out.writeDouble(entry.averagePrice[id]);
+            out.writeDouble(entry.maxPrice[id]);
+        }
+    }
+
+    /**
+     * Reescreve a fotografia de forma durável e esvazia o log
+     */
+    public void save() throws IOException {
+        lock.lock();
+        try {
+            Path tmp = new File(file.getPath() + ".tmp").toPath();
+            CRC32 crc = new CRC32();
+            try (FileOutputStream fos = new FileOutputStream(tmp.toFile())) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(fos, crc)));
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(currentDay);
+                out.writeInt(days.size());
+                for (Entry entry : days.values()) {
+                    writeEntry(out, entry);
+                }
+                out.flush();
+                // O CRC em si não entra no checksum
+                new DataOutputStream(fos).writeInt((int) crc.getValue());
+                fos.getChannel().force(true);
+            }
+            FileSync.replace(tmp, file);
+            // A fotografia já inclui o log; se o arranque parar antes disto,
+            // voltar a aplicar o log sobre ela dá o mesmo estado
+            openLog();
+            log.truncate(0);
+            log.force(false);
+            logSize = 0;
+            logRecords = 0;
+            logBroken = false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Regista o novo dia corrente com um registo pequeno no log
+     * Um dia anterior ao já registado é ignorado: mudanças de dia seguidas
+     * podem chegar aqui por outra ordem
+     */
+    public void recordCurrentDay(int day) throws IOException {
+        lock.lock();
+        try {
+            if (day <= currentDay) return;
+            currentDay = day;
+            ByteArrayOutputStream record = new ByteArrayOutputStream(5);
+            DataOutputStream out = new DataOutputStream(record);
+            out.writeByte(CURRENT_DAY);
+            out.writeInt(day);
+            append(record.toByteArray());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Regista um dia escrito em disco e o seu resumo com um registo no log
+     */
+    public void recordDay(Entry entry) throws IOException {
+        lock.lock();
+        try {
+            days.put(entry.day, entry);
+            ByteArrayOutputStream record = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(record);
+            out.writeByte(DAY);
+            writeEntry(out, entry);
+            append(record.toByteArray());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Com lock: acrescenta o registo (comprimento, conteúdo, CRC) e faz force
+    private void append(byte[] record) throws IOException {
+        openLog();
+        if (logBroken) {
+            log.truncate(logSize);
+            logBroken = false;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        ByteBuffer buffer = ByteBuffer.allocate(4 + record.length + 4);
+        buffer.putInt(record.length).put(record).putInt((int) crc.getValue()).flip();
+        try {
+            long position = logSize;
+            while (buffer.hasRemaining()) {
+                position += log.write(buffer, position);
+            }
+            log.force(false);
+            logSize = position;
+        } catch (IOException e) {
+            logBroken = true;
+            throw e;
+        }
+        if (++logRecords < COMPACT_EVERY) return;
+        try {
+            save();
+        } catch (IOException e) {
+            // O registo já está em disco; a compactação volta a ser tentada
+            LOG.warn("Erro ao compactar manifesto: {}", e.getMessage());
+        }
+    }
+
+    // logSize vem da leitura do log (fim do último registo válido) ou é 0
+    private void openLog() throws IOException {
+        if (log != null) return;
+        boolean created = !logFile.exists();
+        log = FileChannel.open(logFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (created) FileSync.forceDirectory(logFile.getAbsoluteFile().getParentFile());
+    }
+
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (log != null) log.close();
+            log = null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void addDay(Entry entry) {
+        lock.lock();
+        try {
+            days.put(entry.day, entry);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Entry getDay(int day) {
+        lock.lock();
+        try {
+            return days.get(day);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Dias escritos em disco, por ordem crescente
+     */
+    public List<Entry> getDays() {
+        lock.lock();
+        try {
+            return new ArrayList<>(days.values());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getCurrentDay() {
+        lock.lock();
+        try {
+            return currentDay;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void setCurrentDay(int day) {
+        lock.lock();
+        try {
+            currentDay = day;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package org.example.server;
+
+/**
+ * Modelos de execução do servidor, escolhidos no arranque
+ * NIO: um selector não bloqueante e um pool de trabalho para os comandos
+ * VIRTUAL: uma virtual thread (Java 21) por ligação, com I/O bloqueante
+ */
+public enum ExecutionMode {
+    NIO,
+    VIRTUAL;
+
+    public static ExecutionMode parse(String name) {
+        try {
+            return valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Modo de execução inválido: " + name + " (use nio ou virtual)");
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package org.example.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Escrita durável de entradas de diretório
+ * O force de um ficheiro não cobre o seu nome: um ficheiro criado ou
+ * renomeado só sobrevive a uma falha de energia depois do force do diretório.
+ */
+final class FileSync {
+    private static final boolean WINDOWS = File.separatorChar == '\\';
+
+    private FileSync() {}
+
+    /**
+     * Força em disco as entradas do diretório dado
+     */
+    static void forceDirectory(File dir) throws IOException {
+        // Em Windows não se consegue abrir um diretório como canal
+        if (WINDOWS) return;
+        try (FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Substitui target por source com um rename atómico e força o diretório
+     * source já deve estar em disco
+     */
+    static void replace(Path source, File target) throws IOException {
+        Files.move(source, target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory(target.getAbsoluteFile().getParentFile());
+    }
+}
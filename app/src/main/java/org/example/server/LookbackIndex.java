@@ -0,0 +1,182 @@
+package org.example.server;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import org.example.domain.DaySeries;
+import org.example.domain.ProductAggregates;
+
+/**
+ * Índice por produto com totais acumulados dos dias fechados
+ * Atualizado uma vez por dia em nextDay; uma consulta sobre um intervalo de
+ * dias resolve-se com duas pesquisas binárias, sem carregar os dias do disco.
+ * Os históricos são indexados pelo id global do produto.
+ */
+public class LookbackIndex {
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ProductDictionary dictionary;
+    private ProductHistory[] histories = new ProductHistory[64];
+
+    public LookbackIndex(ProductDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Acrescenta ao índice o resumo de um dia fechado
+     * Os dias têm de ser indexados por ordem crescente
+     */
+    public void indexDay(DaySeries series) {
+        index(series.getDay(), series::forEachProduct);
+    }
+
+    /**
+     * Acrescenta ao índice um dia a partir do seu resumo no manifesto
+     */
+    public void indexDay(DayManifest.Entry entry) {
+        index(entry.day, entry::forEachProduct);
+    }
+
+    private void index(int day, Consumer<ProductAggregates.Visitor> products) {
+        lock.writeLock().lock();
+        try {
+            products.accept((product, quantity, volume, averagePrice, maxPrice) ->
+                history(productId(product)).append(day, quantity, volume, averagePrice, maxPrice));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Os produtos de um dia fechado já estão no dicionário, exceto em dados antigos
+    private int productId(String product) {
+        int id = dictionary.idOf(product);
+        if (id >= 0) return id;
+        try {
+            return dictionary.intern(product);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Deve ser chamado com o lock de escrita adquirido
+    private ProductHistory history(int productId) {
+        if (productId >= histories.length) {
+            histories = Arrays.copyOf(histories, Math.max(productId + 1, histories.length * 2));
+        }
+        ProductHistory history = histories[productId];
+        if (history == null) history = histories[productId] = new ProductHistory();
+        return history;
+    }
+
+    /**
+     * Totais do produto (id global) nos dias fechados do intervalo [fromDay, toDay]
+     */
+    public Totals query(int productId, int fromDay, int toDay) {
+        lock.readLock().lock();
+        try {
+            ProductHistory history = productId >= 0 && productId < histories.length ? histories[productId] : null;
+            if (history == null || fromDay > toDay) return Totals.EMPTY;
+            return history.range(fromDay, toDay);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Totais de um produto num intervalo de dias
+     * A média de preço é agregada como soma das médias diárias dos dias
+     * com vendas, tal como o cálculo dia a dia fazia.
+     */
+    public static class Totals {
+        static final Totals EMPTY = new Totals(0, 0, 0, 0, 0);
+
+        public final long quantity;
+        public final double volume;
+        public final double averagePriceSum;
+        public final int daysWithSales;
+        public final double maxPrice;
+
+        Totals(long quantity, double volume, double averagePriceSum, int daysWithSales, double maxPrice) {
+            this.quantity = quantity;
+            this.volume = volume;
+            this.averagePriceSum = averagePriceSum;
+            this.daysWithSales = daysWithSales;
+            this.maxPrice = maxPrice;
+        }
+    }
+
+    /**
+     * Histórico de um produto: uma entrada por dia com vendas, com somas
+     * prefixas e uma sparse table para máximos em O(1)
+     */
+    private static class ProductHistory {
+        private int size = 0;
+        private int[] days = new int[8];
+        private long[] cumQuantity = new long[8];
+        private double[] cumVolume = new double[8];
+        private double[] cumAveragePrice = new double[8];
+        private int[] cumDaysWithSales = new int[8];
+        // maxTable[k][i] = máximo das entradas [i - 2^k + 1, i]
+        private double[][] maxTable = new double[1][8];
+
+        void append(int day, long quantity, double volume, double averagePrice, double maxPrice) {
+            if (size == days.length) grow();
+            int i = size;
+            boolean counted = maxPrice > 0;
+            days[i] = day;
+            cumQuantity[i] = quantity + (i > 0 ? cumQuantity[i - 1] : 0);
+            cumVolume[i] = volume + (i > 0 ? cumVolume[i - 1] : 0);
+            cumAveragePrice[i] = (counted ? averagePrice : 0) + (i > 0 ? cumAveragePrice[i - 1] : 0);
+            cumDaysWithSales[i] = (counted ? 1 : 0) + (i > 0 ? cumDaysWithSales[i - 1] : 0);
+
+            int levels = 32 - Integer.numberOfLeadingZeros(i + 1);
+            if (levels > maxTable.length) {
+                maxTable = Arrays.copyOf(maxTable, levels);
+                maxTable[levels - 1] = new double[days.length];
+            }
+            maxTable[0][i] = maxPrice;
+            for (int k = 1; k < levels; k++) {
+                maxTable[k][i] = Math.max(maxTable[k - 1][i], maxTable[k - 1][i - (1 << (k - 1))]);
+            }
+            size++;
+        }
+
+        private void grow() {
+            int newLength = days.length * 2;
+            days = Arrays.copyOf(days, newLength);
+            cumQuantity = Arrays.copyOf(cumQuantity, newLength);
+            cumVolume = Arrays.copyOf(cumVolume, newLength);
+            cumAveragePrice = Arrays.copyOf(cumAveragePrice, newLength);
+            cumDaysWithSales = Arrays.copyOf(cumDaysWithSales, newLength);
+            for (int k = 0; k < maxTable.length; k++) {
+                maxTable[k] = Arrays.copyOf(maxTable[k], newLength);
+            }
+        }
+
+        Totals range(int fromDay, int toDay) {
+            int lo = lowerBound(fromDay);
+            int hi = lowerBound(toDay + 1) - 1;
+            if (lo > hi) return Totals.EMPTY;
+
+            int k = 31 - Integer.numberOfLeadingZeros(hi - lo + 1);
+            double max = Math.max(maxTable[k][hi], maxTable[k][lo + (1 << k) - 1]);
+            return new Totals(
+                cumQuantity[hi] - (lo > 0 ? cumQuantity[lo - 1] : 0),
+                cumVolume[hi] - (lo > 0 ? cumVolume[lo - 1] : 0),
+                cumAveragePrice[hi] - (lo > 0 ? cumAveragePrice[lo - 1] : 0),
+                cumDaysWithSales[hi] - (lo > 0 ? cumDaysWithSales[lo - 1] : 0),
+                max);
+        }
+
+        // Primeira entrada com dia >= day
+        private int lowerBound(int day) {
+            int lo = 0, hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (days[mid] < day) lo = mid + 1; else hi = mid;
+            }
+            return lo;
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package org.example.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.example.protocol.BinaryProtocol;
+import org.example.logging.Logger;
+
+/**
+ * Front end não bloqueante do servidor
+ * Um único ciclo de Selector aceita ligações e faz todas as leituras e
+ * escritas; os comandos são executados num pool de trabalho separado.
+ * Uma ligação inativa não ocupa nenhuma thread.
+ *
+ * Cada ligação tem no máximo ClientHandler.MAX_IN_FLIGHT pedidos no pool
+ * e MAX_OUTBOUND_BYTES de respostas por enviar; ao atingir um dos limites
+ * deixa de ser lida (OP_READ) até os pedidos terminarem ou as respostas
+ * saírem, e o TCP trava o cliente.
+ */
+public class NioFrontEnd {
+    private static final Logger LOG = Logger.get(NioFrontEnd.class);
+    private static final int READ_BUFFER_SIZE = 8192;
+    private static final long MAX_OUTBOUND_BYTES =
+        Math.max(1, Long.getLong("timeseries.conn.maxOutboundBytes", 4 * 1024 * 1024));
+
+    private final TimeSeriesServer server;
+    private final int port;
+    private final ExecutorService workers;
+    private final Selector selector;
+
+    // Ligações cujo interesse (OP_READ, OP_WRITE) tem de ser recalculado
+    // na thread do selector: respostas por enviar ou pedidos terminados
+    private final Queue<Connection> pendingUpdates = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = false;
+
+    public NioFrontEnd(TimeSeriesServer server, int port, ExecutorService workers) throws IOException {
+        this.server = server;
+        this.port = port;
+        this.workers = workers;
+        this.selector = Selector.open();
+    }
+
+    /**
+     * Ciclo de eventos; corre na thread que o chama até stop()
+     */
+    public void run() throws IOException {
+        running = true;
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress(port));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+            while (running) {
+                selector.select();
+                applyPendingUpdates();
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    try {
+                        if (!key.isValid()) continue;
+                        if (key.isAcceptable()) accept(serverChannel);
+                        if (key.isValid() && key.isReadable()) ((Connection) key.attachment()).onReadable();
+                        if (key.isValid() && key.isWritable()) ((Connection) key.attachment()).onWritable();
+                    } catch (IOException | CancelledKeyException e) {
+                        Object attachment = key.attachment();
+                        if (attachment instanceof Connection) ((Connection) attachment).close();
+                    }
+                }
+            }
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) ((Connection) key.attachment()).close();
+            }
+            selector.close();
+        }
+    }
+
+    public void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    private void accept(ServerSocketChannel serverChannel) throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Connection connection = new Connection(channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        }
+    }
+
+    private void applyPendingUpdates() {
+        Connection connection;
+        while ((connection = pendingUpdates.poll()) != null) {
+            try {
+                connection.refresh();
+            } catch (IOException | CancelledKeyException e) {
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * Estado de uma ligação: buffer de leitura e respostas por escrever
+     * Cada frame é executada de forma independente no pool de trabalho;
+     * as respostas levam o id do pedido e podem sair por qualquer ordem.
+     */
+    private class Connection {
+        private final SocketChannel channel;
+        private final ClientHandler handler;
+        private SelectionKey key;
+        private ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private long lastReadNanos;
+        private final Queue<ByteBuffer> outbound = new ConcurrentLinkedQueue<>();
+        // Pedidos no pool e bytes das respostas na fila outbound
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicLong outboundBytes = new AtomicLong();
+        // Escrito só na thread do selector
+        private volatile boolean readPaused = false;
+        private volatile boolean closed = false;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+            this.handler = new ClientHandler(server, this::send);
+        }
+
+        void onReadable() throws IOException {
+            int read = channel.read(readBuffer);
+            lastReadNanos = System.nanoTime();
+            if (read < 0) {
+                close();
+                return;
+            }
+            processFrames();
+        }
+
+        // Despacha as frames completas do buffer enquanto a ligação não
+        // estiver no limite; as restantes ficam para quando houver folga
+        private void processFrames() throws IOException {
+            int needed = 0;
+            readBuffer.flip();
+            while (!saturated() && readBuffer.remaining() >= 4) {
+                int length = readBuffer.getInt(readBuffer.position());
+                int maxLength = handler.maxFrameSize();
+                if (length < 0 || length > maxLength) {
+                    throw new IOException("Tamanho de frame inválido: " + length);
+                }
+                if (readBuffer.remaining() < 4 + length) {
+                    needed = 4 + length;
+                    break;
+                }
+                readBuffer.getInt();
+                byte[] frame = new byte[length];
+                readBuffer.get(frame);
+                dispatch(frame, lastReadNanos);
+            }
+            readBuffer.compact();
+            resize(needed);
+            updateInterest();
+        }
+
+        // O buffer só cresce quando está cheio com uma frame incompleta, no
+        // máximo para o dobro, e volta ao tamanho normal depois dela
+        private void resize(int needed) {
+            int capacity = readBuffer.capacity();
+            int target;
+            if (needed > capacity && !readBuffer.hasRemaining()) {
+                target = (int) Math.min(needed, 2L * capacity);
+            } else if (capacity > READ_BUFFER_SIZE && needed <= READ_BUFFER_SIZE
+                && readBuffer.position() <= READ_BUFFER_SIZE) {
+                target = READ_BUFFER_SIZE;
+            } else {
+                return;
+            }
+            ByteBuffer resized = ByteBuffer.allocate(target);
+            readBuffer.flip();
+            resized.put(readBuffer);
+            readBuffer = resized;
+        }
+
+        void onWritable() throws IOException {
+            ByteBuffer buffer;
+            while ((buffer = outbound.peek()) != null) {
+                channel.write(buffer);
+                if (buffer.hasRemaining()) break;
+                outbound.poll();
+                outboundBytes.addAndGet(-buffer.capacity());
+            }
+            refresh();
+        }
+
+        /**
+         * Retoma as frames já lidas se houver folga e recalcula o interesse
+         * Só na thread do selector
+         */
+        void refresh() throws IOException {
+            if (!key.isValid()) return;
+            if (readPaused && !saturated() && readBuffer.position() > 0) {
+                processFrames();
+            } else {
+                updateInterest();
+            }
+        }
+
+        // Lê só com folga e escreve só com respostas pendentes; uma resposta
+        // que chegue depois volta a pedir a atualização (send)
+        private void updateInterest() {
+            readPaused = saturated();
+            // Um pedido pode ter terminado sem ver readPaused; volta a tentar
+            if (readPaused && !saturated()) requestUpdate();
+            int ops = readPaused ? 0 : SelectionKey.OP_READ;
+            if (!outbound.isEmpty()) ops |= SelectionKey.OP_WRITE;
+            key.interestOps(ops);
+        }
+
+        private boolean saturated() {
+            return inFlight.get() >= ClientHandler.MAX_IN_FLIGHT || outboundBytes.get() >= MAX_OUTBOUND_BYTES;
+        }
+
+        private void dispatch(byte[] frame, long receivedNanos) {
+            inFlight.incrementAndGet();
+            workers.execute(() -> {
+                try {
+                    if (closed) return;
+                    handler.handleFrame(frame, receivedNanos);
+                } catch (IOException | RuntimeException e) {
+                    LOG.warn("Erro ao processar cliente: {}", e.getMessage());
+                    close();
+                } finally {
+                    inFlight.decrementAndGet();
+                    if (readPaused) requestUpdate();
+                }
+            });
+        }
+
+        private void send(byte[] payload) {
+            if (closed) return;
+            ByteBuffer buffer = ByteBuffer.allocate(4 + payload.length);
+            buffer.putInt(payload.length).put(payload).flip();
+            outboundBytes.addAndGet(buffer.capacity());
+            outbound.add(buffer);
+            requestUpdate();
+        }
+
+        private void requestUpdate() {
+            if (closed) return;
+            pendingUpdates.add(this);
+            selector.wakeup();
+        }
+
+        void close() {
+            closed = true;
+            handler.close();
+            if (key != null) key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOG.warn("Erro ao fechar socket: {}", e.getMessage());
+            }
+        }
+    }
+}
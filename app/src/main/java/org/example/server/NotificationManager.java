@@ -1,118 +1,422 @@
 package org.example.server;
 
 import java.util.*;
-import java.util.concurrent.locks.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+import org.example.domain.EventBatch;
 
 /**
  * Gerencia notificações de vendas simultâneas e consecutivas
- * Usa Condition Variables para eficiência (threads acordadas apenas quando necessário)
+ *
+ * Cada espera é um CompletableFuture registado só onde a sua condição pode
+ * mudar: as esperas por vendas simultâneas ficam nos produtos de que
+ * dependem e só são tocadas pela primeira venda de cada um; as esperas por
+ * vendas consecutivas ficam num mapa ordenado por limiar e só são tocadas
+ * quando a maior sequência do dia chega a esse limiar. Uma venda comum não
+ * acorda ninguém nem adquire nenhum lock global.
+ *
+ * O estado é por dia; reset() troca-o e termina as esperas do dia anterior
+ * com false / null.
+ *
+ * Os produtos são identificados pelo id global (ProductDictionary): o estado
+ * de cada produto é uma posição num array e as sequências comparam inteiros.
+ * Uma espera por um nome que ainda não tem id fica pendente pelo nome, só em
+ * memória, até à primeira venda do produto: esperar não regista produtos.
  */
 public class NotificationManager {
-    private final ReentrantLock lock = new ReentrantLock();
-    private final Condition eventOccurred = lock.newCondition();
-    
-    // Rastreamento de eventos do dia corrente
-    private final Set<String> productsWithSales = new HashSet<>();
-    private final Map<String, Integer> consecutiveCount = new HashMap<>();
-    private String lastProduct = null;
-    
+    private volatile DayState state = new DayState();
+    private final IntFunction<String> productNames;
+    private final ToIntFunction<String> productIds;
+
+    /**
+     * productNames: nome de um id; productIds: id de um nome, ou -1 se não existir
+     */
+    public NotificationManager(IntFunction<String> productNames, ToIntFunction<String> productIds) {
+        this.productNames = productNames;
+        this.productIds = productIds;
+    }
+
+    /**
+     * Sequência de vendas do mesmo produto (imutável)
+     */
+    private static final class Run {
+        final int product;
+        final int length;
+
+        Run(int product, int length) {
+            this.product = product;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Estado de um produto no dia: se já vendeu e quem espera pela primeira venda
+     */
+    private static final class ProductState {
+        final ReentrantLock lock = new ReentrantLock();
+        volatile boolean sold = false;
+        List<SimultaneousWaiter> waiters; // protegido por lock; null depois da primeira venda
+    }
+
+    /**
+     * Espera por vendas de dois produtos; completa quando não falta nenhum
+     */
+    private static final class SimultaneousWaiter {
+        final CompletableFuture<Boolean> future = new CompletableFuture<>();
+        final AtomicInteger missing;
+
+        SimultaneousWaiter(int products) {
+            this.missing = new AtomicInteger(products);
+        }
+
+        void productSold() {
+            if (missing.decrementAndGet() == 0) future.complete(true);
+        }
+    }
+
+    private static final class DayState {
+        // Indexado pelo id do produto; cresce e ganha entradas só com productsLock
+        private volatile ProductState[] products = new ProductState[64];
+        private final ReentrantLock productsLock = new ReentrantLock();
+        final AtomicReference<Run> currentRun = new AtomicReference<>();
+        final AtomicReference<Run> longestRun = new AtomicReference<>();
+        // Esperas por vendas consecutivas, indexadas pelo limiar
+        final ConcurrentSkipListMap<Integer, Queue<CompletableFuture<String>>> consecutiveWaiters =
+            new ConcurrentSkipListMap<>();
+        volatile boolean ended = false;
+        // Esperas por produtos ainda sem id, pelo nome; alteradas só com pendingLock
+        final Map<String, List<SimultaneousWaiter>> pendingByName = new ConcurrentHashMap<>();
+        final ReentrantLock pendingLock = new ReentrantLock();
+
+        /**
+         * Tira a espera da lista pendente do nome; false se já lá não estava
+         */
+        boolean removePending(String name, SimultaneousWaiter waiter) {
+            pendingLock.lock();
+            try {
+                List<SimultaneousWaiter> waiters = pendingByName.get(name);
+                if (waiters == null || !waiters.remove(waiter)) return false;
+                if (waiters.isEmpty()) pendingByName.remove(name);
+                return true;
+            } finally {
+                pendingLock.unlock();
+            }
+        }
+
+        ProductState get(int productId) {
+            ProductState[] current = products;
+            return productId < current.length ? current[productId] : null;
+        }
+
+        ProductState product(int productId) {
+            ProductState product = get(productId);
+            if (product != null) return product;
+            productsLock.lock();
+            try {
+                ProductState[] current = products;
+                if (productId >= current.length) {
+                    current = Arrays.copyOf(current, Math.max(productId + 1, current.length * 2));
+                }
+                product = current[productId];
+                if (product == null) product = current[productId] = new ProductState();
+                products = current; // publica a nova entrada
+                return product;
+            } finally {
+                productsLock.unlock();
+            }
+        }
+
+        ProductState[] all() {
+            return products;
+        }
+    }
+
     /**
      * Registra venda de um produto
      */
-    public void recordSale(String productName) {
-        lock.lock();
+    public void recordSale(int productId) {
+        DayState day = state;
+        firstSale(day, productId);
+        extendRun(day, productId);
+    }
+
+    /**
+     * Registra as vendas de um lote, pela ordem do lote
+     * O lote tem de ter os ids globais dos produtos
+     */
+    public void recordSales(EventBatch batch) {
+        DayState day = state;
+        for (int i = 0; i < batch.size(); i++) {
+            int productId = batch.productIdAt(i);
+            firstSale(day, productId);
+            extendRun(day, productId);
+        }
+    }
+
+    // Só a primeira venda do produto no dia adquire o lock do produto
+    private void firstSale(DayState day, int productId) {
+        ProductState product = day.get(productId);
+        if (product != null && product.sold) return;
+        product = day.product(productId);
+
+        List<SimultaneousWaiter> waiters;
+        product.lock.lock();
         try {
-            productsWithSales.add(productName);
-            
-            // Atualizar contador de vendas consecutivas
-            if (productName.equals(lastProduct)) {
-                consecutiveCount.put(productName, consecutiveCount.getOrDefault(productName, 0) + 1);
-            } else {
-                consecutiveCount.put(productName, 1);
-                lastProduct = productName;
-            }
-            
-            // Acordar todas as threads em espera
-            eventOccurred.signalAll();
+            if (product.sold) return;
+            product.sold = true;
+            waiters = product.waiters;
+            product.waiters = null;
         } finally {
-            lock.unlock();
+            product.lock.unlock();
+        }
+        if (waiters != null) {
+            for (SimultaneousWaiter waiter : waiters) {
+                waiter.productSold();
+            }
+        }
+        if (!day.pendingByName.isEmpty()) {
+            List<SimultaneousWaiter> pending;
+            day.pendingLock.lock();
+            try {
+                pending = day.pendingByName.remove(productNames.apply(productId));
+            } finally {
+                day.pendingLock.unlock();
+            }
+            if (pending != null) {
+                for (SimultaneousWaiter waiter : pending) {
+                    waiter.productSold();
+                }
+            }
         }
     }
-    
+
+    private void extendRun(DayState day, int productId) {
+        Run run;
+        Run next;
+        do {
+            run = day.currentRun.get();
+            next = run != null && run.product == productId
+                ? new Run(productId, run.length + 1)
+                : new Run(productId, 1);
+        } while (!day.currentRun.compareAndSet(run, next));
+
+        Run longest;
+        do {
+            longest = day.longestRun.get();
+            if (longest != null && longest.length >= next.length) return;
+        } while (!day.longestRun.compareAndSet(longest, next));
+
+        // Só as esperas com limiar até ao novo máximo podem ter ficado satisfeitas
+        Map.Entry<Integer, Queue<CompletableFuture<String>>> entry;
+        while ((entry = day.consecutiveWaiters.firstEntry()) != null && entry.getKey() <= next.length) {
+            if (!day.consecutiveWaiters.remove(entry.getKey(), entry.getValue())) continue;
+            String name = productNames.apply(next.product);
+            for (CompletableFuture<String> waiter : entry.getValue()) {
+                waiter.complete(name);
+            }
+        }
+    }
+
     /**
-     * Espera por vendas simultâneas de dois produtos
-     * Bloqueada até ambos os produtos terem vendas no dia ou até o dia acabar
+     * Futuro que completa com true quando ambos os produtos tiverem vendas
+     * no dia corrente, ou com false se o dia acabar antes
      */
-    public boolean waitForSimultaneousSales(String product1, String product2, long timeoutMs, int currentDay) {
-        lock.lock();
+    public CompletableFuture<Boolean> onSimultaneousSales(int product1, int product2) {
+        DayState day = state;
+        int[] products = product1 == product2 ? new int[]{product1} : new int[]{product1, product2};
+        SimultaneousWaiter waiter = new SimultaneousWaiter(products.length);
+        for (int id : products) {
+            awaitFirstSale(day, waiter, id);
+        }
+
+        // Se expirar ou for cancelada, deixa de ocupar as listas dos produtos
+        waiter.future.whenComplete((result, error) -> {
+            if (error == null) return;
+            for (int id : products) {
+                stopWaiting(day, waiter, id);
+            }
+        });
+        if (day.ended) waiter.future.complete(false);
+        return waiter.future;
+    }
+
+    /**
+     * Como onSimultaneousSales(int, int), por nome
+     * Um nome ainda sem id fica pendente até à primeira venda do produto
+     */
+    public CompletableFuture<Boolean> onSimultaneousSales(String product1, String product2) {
+        int id1 = productIds.applyAsInt(product1);
+        int id2 = productIds.applyAsInt(product2);
+        if (id1 >= 0 && id2 >= 0) return onSimultaneousSales(id1, id2);
+
+        DayState day = state;
+        String[] products = product1.equals(product2) ? new String[]{product1} : new String[]{product1, product2};
+        SimultaneousWaiter waiter = new SimultaneousWaiter(products.length);
+        for (String name : products) {
+            awaitFirstSale(day, waiter, name);
+        }
+
+        waiter.future.whenComplete((result, error) -> {
+            if (error == null) return;
+            for (String name : products) {
+                day.removePending(name, waiter);
+                int id = productIds.applyAsInt(name);
+                if (id >= 0) stopWaiting(day, waiter, id);
+            }
+        });
+        if (day.ended) waiter.future.complete(false);
+        return waiter.future;
+    }
+
+    private static void awaitFirstSale(DayState day, SimultaneousWaiter waiter, int productId) {
+        ProductState product = day.product(productId);
+        boolean sold;
+        product.lock.lock();
         try {
-            long deadline = System.currentTimeMillis() + timeoutMs;
-            
-            while (!productsWithSales.contains(product1) || !productsWithSales.contains(product2)) {
-                long remaining = deadline - System.currentTimeMillis();
-                if (remaining <= 0) {
-                    return false; // Timeout
-                }
-                
-                // Wait com timeout
-                if (!eventOccurred.await(remaining, java.util.concurrent.TimeUnit.MILLISECONDS)) {
-                    return false;
-                }
+            sold = product.sold;
+            if (!sold) {
+                if (product.waiters == null) product.waiters = new ArrayList<>(2);
+                product.waiters.add(waiter);
             }
-            
-            return true;
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            return false;
         } finally {
-            lock.unlock();
+            product.lock.unlock();
+        }
+        if (sold) waiter.productSold();
+    }
+
+    private void awaitFirstSale(DayState day, SimultaneousWaiter waiter, String name) {
+        int id = productIds.applyAsInt(name);
+        if (id < 0) {
+            // Regista primeiro e só depois volta a procurar o id: uma primeira
+            // venda que registe o produto entretanto encontra a espera pendente
+            day.pendingLock.lock();
+            try {
+                day.pendingByName.computeIfAbsent(name, n -> new ArrayList<>(2)).add(waiter);
+            } finally {
+                day.pendingLock.unlock();
+            }
+            id = productIds.applyAsInt(name);
+            // Quem tirar a espera da lista pendente é quem trata dela
+            if (id < 0 || !day.removePending(name, waiter)) return;
+        }
+        awaitFirstSale(day, waiter, id);
+    }
+
+    private static void stopWaiting(DayState day, SimultaneousWaiter waiter, int productId) {
+        ProductState product = day.get(productId);
+        if (product == null) return;
+        product.lock.lock();
+        try {
+            if (product.waiters != null) product.waiters.remove(waiter);
+        } finally {
+            product.lock.unlock();
         }
     }
-    
+
     /**
-     * Espera por n vendas consecutivas do mesmo produto
+     * Futuro que completa com o produto que atingiu count vendas consecutivas
+     * no dia corrente, ou com null se o dia acabar antes
      */
-    public String waitForConsecutiveSales(int count, long timeoutMs) {
-        lock.lock();
+    public CompletableFuture<String> onConsecutiveSales(int count) {
+        DayState day = state;
+        int threshold = Math.max(1, count);
+        Run longest = day.longestRun.get();
+        if (longest != null && longest.length >= threshold) {
+            return CompletableFuture.completedFuture(productNames.apply(longest.product));
+        }
+
+        CompletableFuture<String> future = new CompletableFuture<>();
+        Queue<CompletableFuture<String>> queue =
+            day.consecutiveWaiters.computeIfAbsent(threshold, t -> new ConcurrentLinkedQueue<>());
+        queue.add(future);
+        future.whenComplete((result, error) -> {
+            if (error != null) queue.remove(future);
+        });
+
+        // A sequência pode ter chegado ao limiar entre a verificação e o registo
+        longest = day.longestRun.get();
+        if (longest != null && longest.length >= threshold) future.complete(productNames.apply(longest.product));
+        if (day.ended) future.complete(null);
+        return future;
+    }
+
+    /**
+     * Esperas do dia corrente ainda por completar
+     * Percorre todos os produtos; só para métricas
+     */
+    public int waiting() {
+        DayState day = state;
+        Set<Object> waiting = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (ProductState product : day.all()) {
+            if (product == null) continue;
+            product.lock.lock();
+            try {
+                if (product.waiters != null) waiting.addAll(product.waiters);
+            } finally {
+                product.lock.unlock();
+            }
+        }
+        day.pendingLock.lock();
         try {
-            long deadline = System.currentTimeMillis() + timeoutMs;
-            
-            while (true) {
-                // Verificar se algum produto tem o número de vendas consecutivas desejado
-                for (Map.Entry<String, Integer> entry : consecutiveCount.entrySet()) {
-                    if (entry.getValue() >= count) {
-                        return entry.getKey();
-                    }
-                }
-                
-                long remaining = deadline - System.currentTimeMillis();
-                if (remaining <= 0) {
-                    return null; // Timeout
-                }
-                
-                if (!eventOccurred.await(remaining, java.util.concurrent.TimeUnit.MILLISECONDS)) {
-                    return null;
-                }
+            for (List<SimultaneousWaiter> waiters : day.pendingByName.values()) {
+                waiting.addAll(waiters);
             }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            return null;
         } finally {
-            lock.unlock();
+            day.pendingLock.unlock();
         }
+        for (Queue<CompletableFuture<String>> queue : day.consecutiveWaiters.values()) {
+            waiting.addAll(queue);
+        }
+        return waiting.size();
     }
-    
+
     /**
      * Reset para novo dia
+     * As esperas do dia que acabou completam com false / null
      */
     public void reset() {
-        lock.lock();
+        DayState ended = state;
+        state = new DayState();
+        ended.ended = true;
+
+        for (ProductState product : ended.all()) {
+            if (product == null) continue;
+            List<SimultaneousWaiter> waiters;
+            product.lock.lock();
+            try {
+                waiters = product.waiters;
+                product.waiters = null;
+            } finally {
+                product.lock.unlock();
+            }
+            if (waiters != null) {
+                for (SimultaneousWaiter waiter : waiters) {
+                    waiter.future.complete(false);
+                }
+            }
+        }
+        List<SimultaneousWaiter> pending = new ArrayList<>();
+        ended.pendingLock.lock();
         try {
-            productsWithSales.clear();
-            consecutiveCount.clear();
-            lastProduct = null;
+            for (List<SimultaneousWaiter> waiters : ended.pendingByName.values()) {
+                pending.addAll(waiters);
+            }
+            ended.pendingByName.clear();
         } finally {
-            lock.unlock();
+            ended.pendingLock.unlock();
+        }
+        for (SimultaneousWaiter waiter : pending) {
+            waiter.future.complete(false);
+        }
+        Map.Entry<Integer, Queue<CompletableFuture<String>>> entry;
+        while ((entry = ended.consecutiveWaiters.pollFirstEntry()) != null) {
+            for (CompletableFuture<String> waiter : entry.getValue()) {
+                waiter.complete(null);
+            }
         }
     }
 }
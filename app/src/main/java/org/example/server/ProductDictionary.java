@@ -0,0 +1,169 @@
+package org.example.server;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Dicionário global de produtos (data/products.dat)
+ *
+ * Atribui a cada nome de produto um id inteiro estável: o número da linha
+ * em que o nome aparece no ficheiro (um nome por linha, só se acrescenta).
+ * Os clientes resolvem os nomes uma vez e passam a usar os ids, e o
+ * servidor trabalha com ids nos caminhos quentes.
+ *
+ * Um id só é devolvido depois de o nome estar em disco (force), para que
+ * um id guardado por um cliente continue válido depois de um reinício.
+ * As leituras (idOf / nameOf) não adquirem locks; só a criação de um
+ * produto novo é serializada.
+ */
+public class ProductDictionary {
+    private static final String FILE_NAME = "products.dat";
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    // names[0..size) publicados pela escrita volátil de size
+    private volatile String[] names;
+    private volatile int size;
+
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final FileChannel channel;
+
+    private ProductDictionary(FileChannel channel, List<String> loaded) {
+        this.channel = channel;
+        this.names = loaded.toArray(new String[Math.max(16, loaded.size() * 2)]);
+        for (int id = 0; id < loaded.size(); id++) {
+            ids.putIfAbsent(loaded.get(id), id);
+        }
+        this.size = loaded.size();
+    }
+
+    /**
+     * Abre o dicionário, criando o ficheiro se não existir
+     * Uma última linha sem terminador (escrita interrompida) é descartada
+     */
+    public static ProductDictionary open(File dataDir) throws IOException {
+        dataDir.mkdirs();
+        File file = new File(dataDir, FILE_NAME);
+        List<String> loaded = new ArrayList<>();
+        long validLength = 0;
+        if (file.exists()) {
+            byte[] content = Files.readAllBytes(file.toPath());
+            int lineStart = 0;
+            for (int i = 0; i < content.length; i++) {
+                if (content[i] != '\n') continue;
+                loaded.add(new String(content, lineStart, i - lineStart, StandardCharsets.UTF_8));
+                lineStart = i + 1;
+            }
+            validLength = lineStart;
+        }
+        boolean created = !file.exists();
+        FileChannel channel = FileChannel.open(file.toPath(),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (created) FileSync.forceDirectory(dataDir);
+        channel.truncate(validLength);
+        channel.position(validLength);
+        return new ProductDictionary(channel, loaded);
+    }
+
+    /**
+     * Id do produto, ou -1 se nunca foi registado
+     */
+    public int idOf(String name) {
+        Integer id = ids.get(name);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * Nome do produto com o id dado, ou null se o id não existir
+     */
+    public String nameOf(int id) {
+        if (id < 0 || id >= size) return null;
+        return names[id];
+    }
+
+    public boolean contains(int id) {
+        return id >= 0 && id < size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Id do produto, registando-o (em disco) se for novo
+     */
+    public int intern(String name) throws IOException {
+        Integer id = ids.get(name);
+        if (id != null) return id;
+        return internAll(new String[]{name})[0];
+    }
+
+    /**
+     * Ids de vários produtos; os novos são escritos com um só force
+     */
+    public int[] internAll(String[] products) throws IOException {
+        int[] result = new int[products.length];
+        boolean missing = false;
+        for (int i = 0; i < products.length; i++) {
+            Integer id = ids.get(products[i]);
+            result[i] = id != null ? id : -1;
+            missing |= id == null;
+        }
+        if (!missing) return result;
+
+        appendLock.lock();
+        try {
+            // Escreve primeiro todos os nomes novos; só depois do force ficam visíveis
+            Map<String, Integer> added = new LinkedHashMap<>();
+            StringBuilder lines = new StringBuilder();
+            int next = size;
+            for (int i = 0; i < products.length; i++) {
+                if (result[i] >= 0) continue;
+                String name = products[i];
+                Integer id = ids.get(name);
+                if (id == null) id = added.get(name);
+                if (id == null) {
+                    if (name.indexOf('\n') >= 0) throw new IOException("Nome de produto inválido");
+                    id = next++;
+                    added.put(name, id);
+                    lines.append(name).append('\n');
+                }
+                result[i] = id;
+            }
+            if (added.isEmpty()) return result;
+
+            ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+
+            String[] current = names;
+            if (next > current.length) current = Arrays.copyOf(current, Math.max(next, current.length * 2));
+            for (Map.Entry<String, Integer> entry : added.entrySet()) {
+                current[entry.getValue()] = entry.getKey();
+            }
+            names = current;
+            size = next;
+            ids.putAll(added);
+            return result;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    public void close() throws IOException {
+        appendLock.lock();
+        try {
+            channel.close();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+}
@@ -1,21 +1,25 @@
 package org.example.server;
 
 import java.io.IOException;
+import org.example.logging.Logger;
 
 public class Server {
+    private static final Logger LOG = Logger.get(Server.class);
 
-    public void startServer(String portS, String maxDaysS, String maxSeriesInMemoryS) throws IOException {
+    public void startServer(String portS, String maxDaysS, String maxSeriesInMemoryS, String modeS) throws IOException {
         // Start server
         int port = Integer.parseInt(portS);
         int maxDays = Integer.parseInt(maxDaysS);
         int maxSeriesInMemory = Integer.parseInt(maxSeriesInMemoryS);
+        ExecutionMode mode = ExecutionMode.parse(modeS);
 
-        TimeSeriesServer server = new TimeSeriesServer(port, maxDays, maxSeriesInMemory);
+        TimeSeriesServer server = new TimeSeriesServer(port, maxDays, maxSeriesInMemory, mode);
 
-        System.out.println("Iniciando servidor...");
-        System.out.println("Porta: " + port);
-        System.out.println("Dias máximos: " + maxDays);
-        System.out.println("Séries em memória: " + maxSeriesInMemory);
+        LOG.info("Iniciando servidor...");
+        LOG.info("Porta: {}", port);
+        LOG.info("Dias máximos: {}", maxDays);
+        LOG.info("Séries em memória: {}", maxSeriesInMemory);
+        LOG.info("Modo de execução: {}", mode);
 
         server.start();
     }
@@ -0,0 +1,75 @@
+package org.example.server;
+
+import java.security.SecureRandom;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tokens de sessão emitidos no login
+ *
+ * Um cliente que perde a ligação volta a autenticar-se com o token
+ * (RESUME_SESSION) sem enviar a password. Os tokens só existem em memória,
+ * valem enquanto o servidor estiver ligado e expiram se não forem usados
+ * durante ttl; cada retoma renova o prazo.
+ */
+public class SessionTokens {
+    private static final int TOKEN_BYTES = 16;
+    // De quantas em quantas emissões se limpam os tokens expirados
+    private static final int SWEEP_EVERY = 1024;
+
+    private static class Session {
+        final String username;
+        volatile long expiresAtNanos;
+
+        Session(String username, long expiresAtNanos) {
+            this.username = username;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private final long ttlNanos;
+    private final AtomicInteger issued = new AtomicInteger();
+
+    public SessionTokens(long ttlMs) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, ttlMs));
+    }
+
+    /**
+     * Emite um token novo para o utilizador
+     */
+    public String issue(String username) {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        String token = HexFormat.of().formatHex(bytes);
+        long now = System.nanoTime();
+        sessions.put(token, new Session(username, now + ttlNanos));
+        if (issued.incrementAndGet() % SWEEP_EVERY == 0) {
+            sessions.values().removeIf(session -> session.expiresAtNanos - now < 0);
+        }
+        return token;
+    }
+
+    /**
+     * Utilizador do token, renovando-o, ou null se não existir ou tiver expirado
+     */
+    public String resume(String token) {
+        Session session = sessions.get(token);
+        if (session == null) return null;
+        long now = System.nanoTime();
+        if (session.expiresAtNanos - now < 0) {
+            sessions.remove(token, session);
+            return null;
+        }
+        session.expiresAtNanos = now + ttlNanos;
+        return session.username;
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+}
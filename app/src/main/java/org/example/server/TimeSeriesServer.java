@@ -2,10 +2,13 @@ package org.example.server;
 
 import org.example.domain.*;
 import java.io.*;
-import java.net.*;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.locks.*;
+import java.util.function.IntConsumer;
+import org.example.logging.Logger;
+import org.example.metrics.ServerMetrics;
+import org.example.protocol.ProtocolCommands;
 
 /**
  * Servidor principal de séries temporais
@@ -13,233 +16,640 @@ import java.util.concurrent.locks.*;
  * Usa ReentrantReadWriteLock para sincronização eficiente
  */
 public class TimeSeriesServer {
+    private static final Logger LOG = Logger.get(TimeSeriesServer.class);
     private static final int DEFAULT_PORT = 5000;
-    private static final int THREAD_POOL_SIZE = 10;
+    private static final int WORKER_POOL_SIZE = 32;
+    // Dias frios (fora da janela em memória) mantidos na cache de leitura
+    private static final int COLD_CACHE_DAYS = Integer.getInteger("timeseries.coldCacheDays", 16);
+    // Write-ahead log do dia corrente: sync, periodic ou off
+    private static final String WAL_DURABILITY = System.getProperty("timeseries.wal.durability", "periodic");
+    private static final long WAL_FLUSH_INTERVAL_MS = Long.getLong("timeseries.wal.flushIntervalMs", 5);
+    private static final int WAL_FLUSH_BYTES = Integer.getInteger("timeseries.wal.flushBytes", 64 * 1024);
+    // Validade de um token de sessão sem uso
+    private static final long SESSION_TTL_MS = Long.getLong("timeseries.session.ttlMs", 10 * 60 * 1000);
+    // Ingestão com o WAL desligado
+    private static final TimeSeries.IngestLog NO_LOG = day -> 0;
     
     private final int port;
     private final int maxDays;
     private final int maxSeriesInMemory;
+    private final ExecutionMode executionMode;
     private volatile int currentDay;
     
     // Sincronização de séries temporais
     private final ReentrantReadWriteLock seriesLock = new ReentrantReadWriteLock();
-    private final Map<Integer, TimeSeries> timeSeriesMap = new LinkedHashMap<>();
-    private final TimeSeries currentSeries;
+    // Dias residentes em memória: o dia corrente e os dias fechados, incluindo
+    // os que já saíram da janela mas ainda esperam pela escrita em disco
+    private final Map<Integer, DaySeries> timeSeriesMap = new ConcurrentHashMap<>();
+    // Janela de dias residentes, por ordem; protegida por seriesLock
+    private final Deque<Integer> residentDays = new ArrayDeque<>();
+    private volatile TimeSeries currentSeries;
+    
+    // Etapa de persistência em segundo plano: compacta dias fechados e escreve os despejados
+    private final ExecutorService persistenceExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "day-persister");
+        t.setDaemon(true);
+        return t;
+    });
+    
+    // Cache LRU dos dias lidos do disco, ao lado da janela de dias residentes
+    private final DayCache coldCache = new DayCache(COLD_CACHE_DAYS);
+    
+    // Totais acumulados dos dias fechados, por produto
+    private final LookbackIndex lookbackIndex;
+    // Ids globais dos produtos (data/products.dat)
+    private final ProductDictionary products;
     
     // Autenticação
-    private final ReentrantReadWriteLock authLock = new ReentrantReadWriteLock();
-    private final Map<String, User> users = new ConcurrentHashMap<>();
+    private final UserStore users;
+    private final SessionTokens sessions = new SessionTokens(SESSION_TTL_MS);
     
     // Persistência
     private final File dataDir;
-    private final File usersFile;
+    // Dia corrente e resumo dos dias em disco, para arrancar sem ler eventos
+    private final DayManifest manifest;
+    // Log dos eventos ainda não escritos em ficheiros de dia; null se desligado
+    private final WriteAheadLog wal;
     
-    // Thread pool para aceitar conexões
-    private final ExecutorService connectionExecutor;
+    // Front end ativo (selector NIO ou virtual threads)
+    private volatile NioFrontEnd nioFrontEnd;
+    private volatile VirtualThreadFrontEnd virtualFrontEnd;
     private volatile boolean running = false;
     
     // Notificações
-    private final NotificationManager notificationManager = new NotificationManager();
+    private final NotificationManager notificationManager;
     
-    public TimeSeriesServer(int port, int maxDays, int maxSeriesInMemory) {
+    // Avisados (com o novo dia) depois de cada mudança de dia
+    private final Set<IntConsumer> dayChangeListeners = ConcurrentHashMap.newKeySet();
+    
+    // Histogramas e contadores devolvidos pelo comando STATS
+    private final ServerMetrics metrics = new ServerMetrics(ProtocolCommands::name);
+    
+    public TimeSeriesServer(int port, int maxDays, int maxSeriesInMemory) throws IOException {
+        this(port, maxDays, maxSeriesInMemory, ExecutionMode.NIO);
+    }
+    
+    public TimeSeriesServer(int port, int maxDays, int maxSeriesInMemory, ExecutionMode executionMode)
+        throws IOException {
+        this(port, maxDays, maxSeriesInMemory, executionMode, new File("data"));
+    }
+    
+    public TimeSeriesServer(int port, int maxDays, int maxSeriesInMemory, ExecutionMode executionMode, File dataDir)
+        throws IOException {
         this.port = port;
         this.maxDays = maxDays;
-        this.maxSeriesInMemory = maxSeriesInMemory;
-        this.currentDay = 0;
-        this.currentSeries = new TimeSeries(0);
-        this.dataDir = new File("data");
-        this.usersFile = new File(dataDir, "users.dat");
-        loadUsers();
-        this.connectionExecutor = Executors.newFixedThreadPool(THREAD_POOL_SIZE);
+        this.maxSeriesInMemory = Math.max(1, maxSeriesInMemory);  // o dia corrente fica sempre em memória
+        this.executionMode = executionMode;
+        this.dataDir = dataDir;
+        this.users = UserStore.open(dataDir);
         
-        // Adicionar série do dia 0
-        seriesLock.writeLock().lock();
-        try {
-            timeSeriesMap.put(0, currentSeries);
-        } finally {
-            seriesLock.writeLock().unlock();
+        this.products = ProductDictionary.open(dataDir);
+        this.lookbackIndex = new LookbackIndex(products);
+        this.notificationManager = new NotificationManager(products::nameOf, products::idOf);
+        
+        // Repor o dia corrente a partir do manifesto e do WAL antes de aceitar eventos
+        this.manifest = DayManifest.load(dataDir);
+        recover();
+        this.wal = openWal(currentDay);
+        timeSeriesMap.put(currentDay, currentSeries);
+        residentDays.add(currentDay);
+        registerGauges();
+    }
+    
+    private void registerGauges() {
+        metrics.gauge("day.current", () -> currentDay);
+        metrics.gauge("days.resident", timeSeriesMap::size);
+        metrics.gauge("cache.hits", coldCache::getHits);
+        metrics.gauge("cache.misses", coldCache::getMisses);
+        metrics.gauge("day.loads", coldCache::getLoads);
+        metrics.gauge("log.dropped", Logger::getDropped);
+        metrics.gauge("users", users::size);
+        metrics.gauge("users.forces", users::getForces);
+        metrics.gauge("sessions", sessions::size);
+        metrics.gauge("notifications.waiting", notificationManager::waiting);
+        if (wal != null) {
+            metrics.gauge("wal.records", wal::getRecords);
+            metrics.gauge("wal.bytes", wal::getBytesWritten);
+            metrics.gauge("wal.forces", wal::getForces);
         }
     }
-
-    private synchronized void persistUsers() {
+    
+    private WriteAheadLog openWal(int day) throws IOException {
+        String mode = WAL_DURABILITY.trim().toUpperCase();
+        if (mode.equals("OFF")) return null;
+        WriteAheadLog.Durability durability;
         try {
-            dataDir.mkdirs();
-            try (PrintWriter pw = new PrintWriter(new FileWriter(usersFile))) {
-                for (Map.Entry<String, User> e : users.entrySet()) {
-                    pw.println(e.getKey() + ":" + e.getValue().getPasswordHash());
-                }
-            }
-        } catch (IOException ex) {
-            System.err.println("Erro ao persistir utilizadores: " + ex.getMessage());
+            durability = WriteAheadLog.Durability.valueOf(mode);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Durabilidade do WAL inválida: " + WAL_DURABILITY
+                + " (use sync, periodic ou off)");
         }
+        return new WriteAheadLog(dataDir, day, durability, WAL_FLUSH_INTERVAL_MS, WAL_FLUSH_BYTES);
     }
-
-    // Load users from disk into users map
-    private synchronized void loadUsers() {
-        if (!usersFile.exists()) return;
-        try (BufferedReader br = new BufferedReader(new FileReader(usersFile))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] parts = line.split(":", 2);
-                if (parts.length == 2) {
-                    users.put(parts[0], new User(parts[0], parts[1]));
-                }
+    
+    /**
+     * Recuperação no arranque a partir do manifesto e dos segmentos do WAL
+     * Os totais dos dias em disco vêm do resumo no manifesto, sem abrir os
+     * ficheiros; os dias só são mapeados quando consultados. Ficheiros que o
+     * manifesto não conhece (formato antigo, manifesto perdido) são lidos uma
+     * vez e registados. O dia corrente é reposto em memória a partir do WAL e
+     * os dias fechados que só existiam no WAL são compactados e escritos.
+     */
+    private void recover() throws IOException {
+        for (int day : DayFile.listDays(dataDir)) {
+            if (manifest.getDay(day) != null) continue;
+            SealedTimeSeries series = loadSeries(day);
+            if (series != null) {
+                manifest.addDay(DayManifest.Entry.of(DayFile.fileFor(dataDir, day), DayFile.layoutOf(series), series));
             }
-        } catch (IOException ex) {
-            System.err.println("Erro ao carregar utilizadores: " + ex.getMessage());
+        }
+        
+        List<DayManifest.Entry> persisted = manifest.getDays();
+        List<Integer> segments = WriteAheadLog.listSegments(dataDir);
+        int lastDay = manifest.getCurrentDay();
+        if (!persisted.isEmpty()) lastDay = Math.max(lastDay, persisted.get(persisted.size() - 1).day + 1);
+        if (!segments.isEmpty()) lastDay = Math.max(lastDay, segments.get(segments.size() - 1));
+        
+        Map<Integer, TimeSeries> replayed = new TreeMap<>();
+        List<WriteAheadLog.Record> records = WriteAheadLog.readAll(dataDir);
+        for (WriteAheadLog.Record r : records) {
+            if (r.day > lastDay || manifest.getDay(r.day) != null) continue;
+            int productId = products.intern(r.product);
+            replayed.computeIfAbsent(r.day, d -> new TimeSeries(d, metrics.stripeLockWait))
+                    .addEvent(productId, r.product, r.quantity, r.price, r.timestamp);
+            if (r.day == lastDay) notificationManager.recordSale(productId);
+        }
+        
+        this.currentDay = lastDay;
+        TimeSeries live = replayed.remove(lastDay);
+        this.currentSeries = live != null ? live : new TimeSeries(lastDay, metrics.stripeLockWait);
+        for (TimeSeries day : replayed.values()) {
+            persistSeries(day.getDay(), day.seal());
+        }
+        
+        for (DayManifest.Entry entry : manifest.getDays()) {
+            if (entry.day < lastDay) lookbackIndex.indexDay(entry);
+        }
+        manifest.setCurrentDay(lastDay);
+        manifest.save();
+        
+        for (int segment : segments) {
+            if (segment < lastDay) WriteAheadLog.deleteSegment(dataDir, segment);
+        }
+        if (lastDay > 0 || !records.isEmpty()) {
+            LOG.info("Estado reposto: dia corrente {}, {} dias em disco, {} eventos do WAL",
+                lastDay, manifest.getDays().size(), records.size());
         }
     }
-    
+
     public void start() throws IOException {
         running = true;
         dataDir.mkdirs();
         
-        ServerSocket serverSocket = new ServerSocket(port);
-        System.out.println("Servidor iniciado na porta " + port);
+        LOG.info("Servidor iniciado na porta {} (modo {})", port, executionMode);
         
-        try {
-            while (running) {
-                Socket clientSocket = serverSocket.accept();
-                connectionExecutor.execute(new ClientHandler(this, clientSocket));
+        if (executionMode == ExecutionMode.VIRTUAL) {
+            virtualFrontEnd = new VirtualThreadFrontEnd(this, port);
+            try {
+                virtualFrontEnd.run();
+            } finally {
+                running = false;
+                closeStorage();
             }
+            return;
+        }
+        
+        // Pool de trabalho para executar comandos; as ligações são servidas pelo selector
+        ExecutorService commandExecutor = Executors.newFixedThreadPool(WORKER_POOL_SIZE);
+        nioFrontEnd = new NioFrontEnd(this, port, commandExecutor);
+        try {
+            nioFrontEnd.run();
         } finally {
-            serverSocket.close();
-            connectionExecutor.shutdown();
+            running = false;
+            commandExecutor.shutdown();
+            closeStorage();
         }
     }
     
     /**
-     * Registra novo utilizador
+     * Termina as escritas pendentes e fecha os ficheiros do diretório de dados
+     */
+    public void closeStorage() {
+        drainPersistence();
+        closeFiles();
+    }
+    
+    private void closeFiles() {
+        try {
+            if (wal != null) wal.close();
+        } catch (IOException e) {
+            LOG.warn("Erro ao fechar WAL: {}", e.getMessage());
+        }
+        try {
+            products.close();
+        } catch (IOException e) {
+            LOG.warn("Erro ao fechar dicionário de produtos: {}", e.getMessage());
+        }
+        try {
+            users.close();
+        } catch (IOException e) {
+            LOG.warn("Erro ao fechar utilizadores: {}", e.getMessage());
+        }
+        try {
+            manifest.close();
+        } catch (IOException e) {
+            LOG.warn("Erro ao fechar manifesto: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * Espera que a etapa de persistência termine as escritas pendentes
      */
-    public boolean registerUser(String username, String password) {
-        authLock.writeLock().lock();
+    private void drainPersistence() {
+        persistenceExecutor.shutdown();
         try {
-            if (users.containsKey(username)) {
-                return false;
+            if (!persistenceExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
+                LOG.warn("Escritas de dias ainda pendentes ao terminar");
             }
-            String passwordHash = User.hashPassword(password);
-            users.put(username, new User(username, passwordHash));
-            persistUsers();
-            return true;
-        } finally {
-            authLock.writeLock().unlock();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
     
+    /**
+     * Pára o front end; start() retorna depois de fechar as ligações
+     */
+    public void stop() {
+        running = false;
+        NioFrontEnd nio = nioFrontEnd;
+        if (nio != null) nio.stop();
+        VirtualThreadFrontEnd virtual = virtualFrontEnd;
+        if (virtual != null) virtual.stop();
+    }
+    
+    /**
+     * Registra novo utilizador
+     * Devolve false se já existir; só retorna depois de o registo estar em disco
+     */
+    public boolean registerUser(String username, String password) throws IOException {
+        return users.register(username, User.hashPassword(password));
+    }
+    
     /**
      * Autentica utilizador
      */
     public boolean authenticateUser(String username, String password) {
-        authLock.readLock().lock();
-        try {
-            User user = users.get(username);
-            if (user == null) return false;
-            String passwordHash = User.hashPassword(password);
-            return user.getPasswordHash().equals(passwordHash);
-        } finally {
-            authLock.readLock().unlock();
+        User user = users.get(username);
+        if (user == null) return false;
+        String passwordHash = User.hashPassword(password);
+        return user.getPasswordHash().equals(passwordHash);
+    }
+    
+    /**
+     * Emite um token de sessão para um utilizador já autenticado
+     */
+    public String createSession(String username) {
+        return sessions.issue(username);
+    }
+    
+    /**
+     * Utilizador do token de sessão, ou null se for inválido ou tiver expirado
+     */
+    public String resumeSession(String token) {
+        return sessions.resume(token);
+    }
+    
+    /**
+     * Adiciona evento ao dia atual, regista-o no WAL e notifica listeners
+     * Em durabilidade sync só retorna depois de o registo estar em disco
+     */
+    public void addEvent(String productName, long quantity, double price) throws IOException {
+        addEvent(products.intern(productName), productName, quantity, price);
+    }
+    
+    /**
+     * Adiciona evento de um produto dado pelo id global
+     */
+    public void addEvent(int productId, long quantity, double price) throws IOException {
+        String productName = products.nameOf(productId);
+        if (productName == null) throw new IOException("Produto desconhecido: " + productId);
+        addEvent(productId, productName, quantity, price);
+    }
+    
+    private void addEvent(int productId, String productName, long quantity, double price) throws IOException {
+        long timestamp = System.currentTimeMillis();
+        // Sem o lock do servidor: o registo no WAL é feito sob o lock da stripe
+        // do dia, pelo que o dia só fecha depois de o WAL aceitar os seus
+        // eventos; se falhar, o evento não chega ao dia e o cliente pode
+        // repetir sem o duplicar
+        TimeSeries.IngestLog log = wal == null ? NO_LOG
+            : day -> wal.enqueue(day, productName, quantity, price, timestamp);
+        long position;
+        while ((position = currentSeries.addEvent(productId, productName, quantity, price, timestamp, log))
+                == TimeSeries.CLOSED) {
+            awaitNextDay();
         }
+        // Em sync, a espera pelo force fica fora de qualquer lock
+        if (wal != null) wal.awaitDurable(position);
+        
+        notificationManager.recordSale(productId);
     }
     
     /**
-     * Adiciona evento ao dia atual e notifica listeners
+     * Adiciona um lote de eventos ao dia atual com uma só aquisição do lock
+     * da stripe, regista-o no WAL e notifica listeners
+     * Como em addEvent, o lote só entra no dia depois de o WAL o aceitar
      */
-    public void addEvent(String productName, long quantity, double price) {
-        Event event = new Event(productName, quantity, price, System.currentTimeMillis());
-        currentSeries.addEvent(event);
+    public void addEvents(EventBatch batch) throws IOException {
+        EventBatch resolved = batch.getProductIds() != null
+            ? batch : batch.withProductIds(products.internAll(batch.getProducts()));
+        long timestamp = System.currentTimeMillis();
+        TimeSeries.IngestLog log = wal == null ? NO_LOG
+            : day -> wal.enqueueBatch(day, resolved, timestamp);
+        long position;
+        while ((position = currentSeries.addEvents(resolved, timestamp, log)) == TimeSeries.CLOSED) {
+            awaitNextDay();
+        }
+        if (wal != null) wal.awaitDurable(position);
         
-        notificationManager.recordSale(productName);
+        notificationManager.recordSales(resolved);
+    }
+    
+    // O dia lido foi fechado por nextDay, que troca currentSeries antes de
+    // largar o lock de escrita: esperar por ele chega para ver o dia novo
+    private void awaitNextDay() {
+        seriesLock.readLock().lock();
+        seriesLock.readLock().unlock();
     }
     
     /**
      * Avança para próximo dia e reseta notificações
+     * Sob o lock só se fecha o dia, se indexam os seus totais e se troca o
+     * dia corrente; compactar e escrever em disco fica para a etapa de
+     * persistência, pelo que a mudança de dia não depende do tamanho do dia.
+     * Só retorna depois de o novo dia corrente estar registado no manifesto.
      */
     public void nextDay() {
-        seriesLock.writeLock().lock();
+        int newDay;
+        metrics.seriesWriteLockWait.lock(seriesLock.writeLock());
         try {
+            TimeSeries closed = currentSeries;
+            closed.close();
+            lookbackIndex.indexDay(closed);
+            
+            // Eventos do novo dia vão para um segmento novo do WAL
+            if (wal != null) wal.rollTo(currentDay + 1);
+            
+            // O novo dia fica visível antes de o contador avançar
+            TimeSeries newSeries = new TimeSeries(currentDay + 1, metrics.stripeLockWait);
+            timeSeriesMap.put(currentDay + 1, newSeries);
+            residentDays.add(currentDay + 1);
+            currentSeries = newSeries;
             currentDay++;
             notificationManager.reset();  // Reset de notificações para novo dia
             
-            TimeSeries newSeries = new TimeSeries(currentDay);
-            timeSeriesMap.put(currentDay, newSeries);
-            
-            if (timeSeriesMap.size() > maxSeriesInMemory) {
-                Integer oldestDay = timeSeriesMap.keySet().iterator().next();
-                TimeSeries oldSeries = timeSeriesMap.remove(oldestDay);
-                
-                try {
-                    persistSeries(oldestDay, oldSeries);
-                } catch (IOException e) {
-                    System.err.println("Erro ao persistir série: " + e.getMessage());
-                }
+            newDay = currentDay;
+            persistenceExecutor.execute(() -> sealInBackground(closed));
+            // Inclui dias cuja escrita falhou e voltaram à janela
+            while (residentDays.size() > maxSeriesInMemory) {
+                int oldestDay = residentDays.poll();
+                persistenceExecutor.execute(() -> writeBehind(oldestDay));
             }
         } finally {
             seriesLock.writeLock().unlock();
         }
+        // Durável antes de responder, sem esperar pela compactação do dia fechado
+        recordCurrentDay(newDay);
+        for (IntConsumer listener : dayChangeListeners) {
+            listener.accept(newDay);
+        }
     }
     
     /**
-     * Obtém série temporal para um dia específico
+     * Regista quem deve ser avisado das mudanças de dia
+     * O aviso é feito pela thread que muda o dia, pelo que não deve bloquear
      */
-    public TimeSeries getTimeSeries(int day) {
-        seriesLock.readLock().lock();
+    public void addDayChangeListener(IntConsumer listener) {
+        dayChangeListeners.add(listener);
+    }
+    
+    public void removeDayChangeListener(IntConsumer listener) {
+        dayChangeListeners.remove(listener);
+    }
+    
+    /**
+     * Substitui o dia fechado pela sua fotografia compactada e sem locks
+     */
+    private void sealInBackground(TimeSeries closed) {
+        SealedTimeSeries sealed = closed.seal();
+        timeSeriesMap.replace(closed.getDay(), closed, sealed);
+    }
+    
+    /**
+     * Regista o novo dia corrente no manifesto
+     */
+    private void recordCurrentDay(int day) {
         try {
-            if (timeSeriesMap.containsKey(day)) {
-                return timeSeriesMap.get(day);
+            manifest.recordCurrentDay(day);
+        } catch (IOException e) {
+            LOG.error("Erro ao gravar manifesto: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * Escreve um dia despejado da janela e só depois o liberta da memória
+     * Até a escrita ser durável o dia continua a ser servido a partir da memória;
+     * se falhar, o dia volta à janela e a escrita é repetida na próxima mudança de dia
+     */
+    private void writeBehind(int day) {
+        DaySeries series = timeSeriesMap.get(day);
+        if (series == null) return;
+        SealedTimeSeries sealed = series instanceof SealedTimeSeries
+            ? (SealedTimeSeries) series
+            : ((TimeSeries) series).seal();
+        try {
+            persistSeries(day, sealed);
+            timeSeriesMap.remove(day, series);
+            // O segmento só tem eventos deste dia, que já não depende do WAL
+            if (wal != null) wal.deleteSegmentOf(day);
+        } catch (IOException e) {
+            // Fica em memória: melhor ocupar memória do que perder o dia
+            LOG.error("Erro ao persistir o dia {}: {}", day, e.getMessage());
+            seriesLock.writeLock().lock();
+            try {
+                residentDays.addFirst(day);
+            } finally {
+                seriesLock.writeLock().unlock();
             }
+        }
+    }
+    
+    /**
+     * Quantidade vendida do produto no dia corrente e nos daysLookback dias anteriores
+     */
+    public long getQuantity(String product, int daysLookback) {
+        return getQuantity(products.idOf(product), daysLookback);
+    }
+    
+    /**
+     * Como getQuantity(String, int), com o produto dado pelo id global
+     */
+    public long getQuantity(int productId, int daysLookback) {
+        if (daysLookback < 0) return 0;
+        metrics.seriesReadLockWait.lock(seriesLock.readLock());
+        try {
+            LookbackIndex.Totals closed = closedDayTotals(productId, daysLookback);
+            return closed.quantity + currentSeries.calculateQuantity(productId);
         } finally {
             seriesLock.readLock().unlock();
         }
-        
-        // Tentar carregar do disco
+    }
+    
+    /**
+     * Volume de vendas do produto no dia corrente e nos daysLookback dias anteriores
+     */
+    public double getVolume(String product, int daysLookback) {
+        return getVolume(products.idOf(product), daysLookback);
+    }
+    
+    public double getVolume(int productId, int daysLookback) {
+        if (daysLookback < 0) return 0;
+        metrics.seriesReadLockWait.lock(seriesLock.readLock());
         try {
-            return loadSeries(day);
-        } catch (IOException e) {
-            System.err.println("Erro ao carregar série: " + e.getMessage());
-            return null;
+            LookbackIndex.Totals closed = closedDayTotals(productId, daysLookback);
+            return closed.volume + currentSeries.calculateVolume(productId);
+        } finally {
+            seriesLock.readLock().unlock();
         }
     }
     
     /**
-     * Persiste série temporal para disco
+     * Média das médias diárias e preço máximo, considerando só os dias com vendas
      */
-    private void persistSeries(int day, TimeSeries series) throws IOException {
-        File file = new File(dataDir, "series_" + day + ".dat");
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(file))) {
-            oos.writeInt(day);
-            List<Event> events = series.getAllEvents();
-            oos.writeInt(events.size());
-            for (Event event : events) {
-                oos.writeObject(event);
+    public AggregationResult.PriceStats getPriceStats(String product, int daysLookback) {
+        return getPriceStats(products.idOf(product), daysLookback);
+    }
+    
+    public AggregationResult.PriceStats getPriceStats(int productId, int daysLookback) {
+        if (daysLookback < 0) return new AggregationResult.PriceStats(0, 0, currentDay);
+        metrics.seriesReadLockWait.lock(seriesLock.readLock());
+        try {
+            LookbackIndex.Totals closed = closedDayTotals(productId, daysLookback);
+            AggregationResult.PriceStats live = currentSeries.calculatePriceStats(productId, currentDay);
+            
+            double sumAvg = closed.averagePriceSum;
+            double maxPrice = closed.maxPrice;
+            int count = closed.daysWithSales;
+            if (live.maximum > 0) {
+                sumAvg += live.average;
+                maxPrice = Math.max(maxPrice, live.maximum);
+                count++;
+            }
+            return new AggregationResult.PriceStats(sumAvg / Math.max(count, 1), maxPrice, currentDay);
+        } finally {
+            seriesLock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Agregados do produto em cada dia desde fromDay até ao dia corrente
+     * Os dias fechados não mudam, pelo que o cliente os pode guardar em cache
+     * e pedir só os que lhe faltam e a contribuição do dia corrente.
+     */
+    public AggregationResult.DayAggregates getDayAggregates(int productId, int fromDay) {
+        metrics.seriesReadLockWait.lock(seriesLock.readLock());
+        try {
+            int today = currentDay;
+            int firstDay = Math.max(0, Math.min(fromDay, today));
+            AggregationResult.DayAggregates result = new AggregationResult.DayAggregates(today, firstDay);
+            for (int day = firstDay; day < today; day++) {
+                LookbackIndex.Totals totals = lookbackIndex.query(productId, day, day);
+                int i = day - firstDay;
+                result.quantities[i] = totals.quantity;
+                result.volumes[i] = totals.volume;
+                result.averagePrices[i] = totals.averagePriceSum;
+                result.maxPrices[i] = totals.maxPrice;
+                result.hasSales[i] = totals.daysWithSales > 0;
             }
+            AggregationResult.PriceStats live = currentSeries.calculatePriceStats(productId, today);
+            int last = result.size() - 1;
+            result.quantities[last] = currentSeries.calculateQuantity(productId);
+            result.volumes[last] = currentSeries.calculateVolume(productId);
+            result.averagePrices[last] = live.average;
+            result.maxPrices[last] = live.maximum;
+            result.hasSales[last] = live.maximum > 0;
+            return result;
+        } finally {
+            seriesLock.readLock().unlock();
         }
     }
     
+    // Deve ser chamado com seriesLock adquirido
+    private LookbackIndex.Totals closedDayTotals(int productId, int daysLookback) {
+        int fromDay = Math.max(0, currentDay - daysLookback);
+        return lookbackIndex.query(productId, fromDay, currentDay - 1);
+    }
+    
     /**
-     * Carrega série temporal do disco
+     * Obtém série temporal para um dia específico
+     * Os dias fechados são imutáveis, pelo que a leitura não precisa de locks
      */
-    private TimeSeries loadSeries(int day) throws IOException {
-        File file = new File(dataDir, "series_" + day + ".dat");
-        if (!file.exists()) return null;
+    public DaySeries getTimeSeries(int day) {
+        DaySeries series = timeSeriesMap.get(day);
+        if (series != null) return series;
+        if (day < 0 || day >= currentDay) return null;
         
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
-            int loadedDay = ois.readInt();
-            TimeSeries series = new TimeSeries(loadedDay);
-            int eventCount = ois.readInt();
-            
-            for (int i = 0; i < eventCount; i++) {
-                Event event = (Event) ois.readObject();
-                series.addEvent(event);
+        // Cache fria; numa falha, um único carregamento do disco por dia
+        try {
+            return coldCache.get(day, this::loadSeries);
+        } catch (IOException e) {
+            LOG.error("Erro ao carregar série: {}", e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Persiste série temporal para disco no formato binário de DayFile
+     * e regista o dia e o seu resumo no manifesto
+     */
+    private void persistSeries(int day, SealedTimeSeries series) throws IOException {
+        File file = DayFile.fileFor(dataDir, day);
+        DayFile.Layout layout = DayFile.write(file, series);
+        manifest.recordDay(DayManifest.Entry.of(file, layout, series));
+        metrics.persistedBytes.add(layout.fileSize);
+        metrics.persistedDays.increment();
+    }
+    
+    /**
+     * Carrega série temporal do disco, mapeando o ficheiro do dia
+     * Um ficheiro no formato antigo é convertido uma vez e depois removido
+     */
+    private SealedTimeSeries loadSeries(int day) throws IOException {
+        DayManifest.Entry entry = manifest.getDay(day);
+        File file = entry != null ? new File(dataDir, entry.fileName) : DayFile.fileFor(dataDir, day);
+        if (file.exists()) {
+            if (entry != null && file.length() != entry.layout.fileSize) {
+                throw new IOException("Ficheiro de dia não corresponde ao manifesto: " + file);
             }
-            
-            return series;
-        } catch (ClassNotFoundException e) {
-            throw new IOException("Erro ao desserializar eventos", e);
+            return DayFile.map(file);
+        }
+        
+        File legacy = DayFile.legacyFileFor(dataDir, day);
+        if (!legacy.exists()) return null;
+        SealedTimeSeries migrated = DayFile.readLegacy(legacy);
+        persistSeries(day, migrated);
+        if (!legacy.delete()) {
+            LOG.warn("Não foi possível remover {}", legacy);
         }
+        return DayFile.map(file);
     }
     
     public int getCurrentDay() { return currentDay; }
     public int getMaxDays() { return maxDays; }
+    public ExecutionMode getExecutionMode() { return executionMode; }
+    public DayCache getColdCache() { return coldCache; }
     public TimeSeries getCurrentSeries() { return currentSeries; }
     public NotificationManager getNotificationManager() { return notificationManager; }
+    public ProductDictionary getProducts() { return products; }
+    public ServerMetrics getMetrics() { return metrics; }
 }
@@ -0,0 +1,270 @@
+package org.example.server;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.example.domain.User;
+import org.example.logging.Logger;
+
+/**
+ * Utilizadores registados (data/users.dat), num log só de acréscimo
+ *
+ * Cada registo acrescenta uma linha "utilizador:hash" ao ficheiro, no mesmo
+ * formato do ficheiro antigo, em vez de o reescrever inteiro. Os registos
+ * concorrentes partilham o mesmo force: o primeiro a esperar escreve tudo o
+ * que está pendente e os outros aguardam esse force (group commit).
+ * Um nome em registo fica reservado (reserved) e só passa para o mapa de
+ * utilizadores depois de a linha estar em disco.
+ *
+ * Se uma escrita falhar, falham só os registos desse lote; a escrita
+ * seguinte reabre o ficheiro e corta-o no fim da última linha em disco.
+ *
+ * Ao abrir, linhas repetidas, mal formadas ou uma última linha incompleta
+ * são ignoradas; se houver alguma, o ficheiro é compactado (reescrito só
+ * com as entradas válidas, num temporário que depois substitui o original).
+ *
+ * A autenticação só lê o mapa em memória e não adquire locks.
+ */
+public class UserStore implements AutoCloseable {
+    private static final Logger LOG = Logger.get(UserStore.class);
+
+    private static final String FILE_NAME = "users.dat";
+
+    private final Map<String, User> users = new ConcurrentHashMap<>();
+    // Nomes com registo em curso, ainda não em disco
+    private final Set<String> reserved = ConcurrentHashMap.newKeySet();
+    private final File file;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition flushed = lock.newCondition();
+
+    /**
+     * Linha à espera de ser escrita; o resultado é marcado por quem a escreve
+     */
+    private static class PendingLine {
+        final byte[] bytes;
+        boolean written = false;
+        IOException error;
+
+        PendingLine(String line) {
+            this.bytes = line.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    // Protegidos por lock
+    private final List<PendingLine> pending = new ArrayList<>();
+    private boolean flushing = false;
+    private boolean closed = false;
+
+    // Só usados por quem está a fazer o flush (flushing)
+    private FileChannel channel;
+    private long durableSize;
+    private boolean broken = false;
+
+    private final LongAdder forces = new LongAdder();
+
+    private UserStore(File file) throws IOException {
+        this.file = file;
+        this.channel = load();
+    }
+
+    public static UserStore open(File dataDir) throws IOException {
+        dataDir.mkdirs();
+        return new UserStore(new File(dataDir, FILE_NAME));
+    }
+
+    private FileChannel load() throws IOException {
+        int ignored = 0;
+        if (file.exists()) {
+            byte[] content = Files.readAllBytes(file.toPath());
+            int lineStart = 0;
+            for (int i = 0; i < content.length; i++) {
+                if (content[i] != '\n') continue;
+                String line = new String(content, lineStart, i - lineStart, StandardCharsets.UTF_8);
+                lineStart = i + 1;
+                String[] parts = line.split(":", 2);
+                if (parts.length != 2 || parts[0].isEmpty()
+                    || users.putIfAbsent(parts[0], new User(parts[0], parts[1])) != null) {
+                    ignored++;
+                }
+            }
+            if (lineStart < content.length) ignored++;
+        }
+        if (ignored > 0) {
+            compact();
+            LOG.info("users.dat compactado: {} linhas descartadas, {} utilizadores", ignored, users.size());
+        }
+        boolean created = !file.exists();
+        FileChannel opened = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (created) FileSync.forceDirectory(file.getAbsoluteFile().getParentFile());
+        durableSize = opened.size();
+        opened.position(durableSize);
+        return opened;
+    }
+
+    // Depois de uma escrita falhada: ficheiro reaberto sem os bytes do lote
+    private void reopen() throws IOException {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // O canal antigo já não é usado
+        }
+        FileChannel reopened = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            reopened.truncate(durableSize);
+            reopened.position(durableSize);
+        } catch (IOException e) {
+            reopened.close();
+            throw e;
+        }
+        channel = reopened;
+        broken = false;
+    }
+
+    // Reescreve o ficheiro só com os utilizadores em memória
+    private void compact() throws IOException {
+        File tmp = new File(file.getParentFile(), FILE_NAME + ".tmp");
+        StringBuilder content = new StringBuilder();
+        for (User user : users.values()) {
+            content.append(line(user));
+        }
+        try (FileChannel out = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(false);
+        }
+        FileSync.replace(tmp.toPath(), file);
+    }
+
+    private static String line(User user) {
+        return user.getUsername() + ":" + user.getPasswordHash() + "\n";
+    }
+
+    /**
+     * Utilizador com o nome dado, ou null
+     */
+    public User get(String username) {
+        return users.get(username);
+    }
+
+    public int size() {
+        return users.size();
+    }
+
+    public long getForces() {
+        return forces.sum();
+    }
+
+    /**
+     * Regista um utilizador; só retorna depois de a linha estar em disco
+     * Devolve false se o nome já existir ou estiver a ser registado
+     */
+    public boolean register(String username, String passwordHash) throws IOException {
+        if (username.isEmpty() || username.indexOf(':') >= 0 || username.indexOf('\n') >= 0) {
+            throw new IOException("Nome de utilizador inválido");
+        }
+        if (users.containsKey(username) || !reserved.add(username)) return false;
+        try {
+            // Pode ter sido publicado entre a verificação e a reserva
+            if (users.containsKey(username)) return false;
+            User user = new User(username, passwordHash);
+            PendingLine line = new PendingLine(line(user));
+            lock.lock();
+            try {
+                if (closed) throw new IOException("Registo de utilizadores fechado");
+                pending.add(line);
+            } finally {
+                lock.unlock();
+            }
+            awaitWritten(line);
+            users.put(username, user);
+            return true;
+        } finally {
+            reserved.remove(username);
+        }
+    }
+
+    /**
+     * Espera que a linha esteja em disco
+     * Se ninguém estiver a escrever, esta thread escreve todo o pendente
+     */
+    private void awaitWritten(PendingLine line) throws IOException {
+        lock.lock();
+        try {
+            while (!line.written) {
+                if (line.error != null) throw new IOException("Registo de utilizadores indisponível", line.error);
+                if (flushing) {
+                    flushed.awaitUninterruptibly();
+                    continue;
+                }
+                flushing = true;
+                List<PendingLine> batch = new ArrayList<>(pending);
+                pending.clear();
+                IOException error = null;
+                lock.unlock();
+                try {
+                    write(batch);
+                } catch (IOException e) {
+                    error = e;
+                } finally {
+                    lock.lock();
+                }
+                flushing = false;
+                for (PendingLine written : batch) {
+                    if (error != null) {
+                        written.error = error;
+                    } else {
+                        written.written = true;
+                    }
+                }
+                flushed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Só chamado por quem está a fazer o flush
+    private void write(List<PendingLine> batch) throws IOException {
+        if (broken) reopen();
+        try {
+            for (PendingLine line : batch) {
+                ByteBuffer buffer = ByteBuffer.wrap(line.bytes);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            channel.force(false);
+            forces.increment();
+            durableSize = channel.position();
+        } catch (IOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            closed = true;
+            while (flushing) {
+                flushed.awaitUninterruptibly();
+            }
+            channel.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package org.example.server;
+
+import java.io.*;
+import java.net.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+import org.example.protocol.BinaryProtocol;
+import org.example.logging.Logger;
+
+/**
+ * Front end com virtual threads
+ * Cada ligação tem uma virtual thread que lê frames com I/O bloqueante e
+ * cada pedido é executado na sua própria virtual thread, pelo que pedidos
+ * da mesma ligação terminam por qualquer ordem. As esperas longas apenas
+ * estacionam a virtual thread e libertam a carrier thread.
+ * Cada ligação tem no máximo ClientHandler.MAX_IN_FLIGHT pedidos em
+ * execução; a thread de leitura para até algum terminar.
+ * As virtual threads dos pedidos são de um executor da ligação, fechado
+ * antes de handler.close(): os pedidos em curso terminam antes da limpeza.
+ */
+public class VirtualThreadFrontEnd {
+    private static final Logger LOG = Logger.get(VirtualThreadFrontEnd.class);
+
+    private final TimeSeriesServer server;
+    private final int port;
+    private volatile ServerSocket serverSocket;
+    private volatile boolean running = false;
+
+    public VirtualThreadFrontEnd(TimeSeriesServer server, int port) {
+        this.server = server;
+        this.port = port;
+    }
+
+    /**
+     * Aceita ligações na thread que o chama até stop()
+     */
+    public void run() throws IOException {
+        running = true;
+        try (ServerSocket socket = new ServerSocket(port);
+             ExecutorService connections = Executors.newVirtualThreadPerTaskExecutor()) {
+            serverSocket = socket;
+            while (running) {
+                Socket clientSocket;
+                try {
+                    clientSocket = socket.accept();
+                } catch (SocketException e) {
+                    if (!running) break;
+                    throw e;
+                }
+                connections.execute(() -> serve(clientSocket));
+            }
+            connections.shutdownNow();
+        }
+    }
+
+    public void stop() {
+        running = false;
+        ServerSocket socket = serverSocket;
+        if (socket == null) return;
+        try {
+            socket.close();
+        } catch (IOException e) {
+            LOG.warn("Erro ao fechar socket: {}", e.getMessage());
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            DataInputStream dis = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            ReentrantLock writeLock = new ReentrantLock();
+            ClientHandler handler = new ClientHandler(server, payload -> {
+                writeLock.lock();
+                try {
+                    BinaryProtocol.writeFrame(out, payload);
+                } finally {
+                    writeLock.unlock();
+                }
+            });
+            Semaphore inFlight = new Semaphore(ClientHandler.MAX_IN_FLIGHT);
+            try {
+                // close() do executor espera pelos pedidos em curso
+                try (ExecutorService requests = Executors.newVirtualThreadPerTaskExecutor()) {
+                    while (true) {
+                        byte[] frame = BinaryProtocol.readFrame(dis, handler::maxFrameSize);
+                        long receivedNanos = System.nanoTime();
+                        inFlight.acquire();
+                        requests.execute(() -> {
+                            try {
+                                handler.handleFrame(frame, receivedNanos);
+                            } catch (IOException | RuntimeException e) {
+                                LOG.warn("Erro ao processar cliente: {}", e.getMessage());
+                                closeQuietly(socket);
+                            } finally {
+                                inFlight.release();
+                            }
+                        });
+                    }
+                }
+            } finally {
+                handler.close();
+            }
+        } catch (InterruptedException e) {
+            // Servidor a parar
+            Thread.currentThread().interrupt();
+        } catch (EOFException e) {
+            // Cliente desconectado normalmente
+        } catch (IOException e) {
+            if (!socket.isClosed()) LOG.warn("Erro ao processar cliente: {}", e.getMessage());
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            LOG.warn("Erro ao fechar socket: {}", e.getMessage());
+        }
+    }
+}
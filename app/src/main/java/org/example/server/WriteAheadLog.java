@@ -0,0 +1,452 @@
+package org.example.server;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+import org.example.domain.EventBatch;
+import org.example.logging.Logger;
+
+/**
+ * Write-ahead log dos eventos do dia corrente, com group commit
+ *
+ * Cada registo guarda o dia, o produto, a quantidade, o preço e o timestamp,
+ * protegido por CRC32. Os registos acumulam num buffer e uma thread de
+ * escrita grava-os de uma vez, seguidos de um único FileChannel.force, quando
+ * o buffer atinge flushBytes ou o registo mais antigo espera há flushInterval.
+ *
+ * Durabilidade:
+ *   SYNC     append só retorna depois do force que cobre o seu registo
+ *            (um force por lote, partilhado por todos os que esperam)
+ *   PERIODIC append retorna logo; o force acontece no intervalo configurado
+ *
+ * O log é dividido em segmentos wal_N.log, um por dia corrente. O servidor
+ * regista cada evento no segmento do dia em que o aplica, pelo que um
+ * segmento pode ser apagado quando o ficheiro do seu dia estiver escrito em
+ * disco, independentemente dos outros dias.
+ */
+public class WriteAheadLog implements AutoCloseable {
+    private static final Logger LOG = Logger.get(WriteAheadLog.class);
+
+    public enum Durability { SYNC, PERIODIC }
+
+    private static final String PREFIX = "wal_";
+    private static final String SUFFIX = ".log";
+
+    private final File dataDir;
+    private final Durability durability;
+    private final long flushIntervalNanos;
+    private final int flushBytes;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition dataAvailable = lock.newCondition();
+    private final Condition durable = lock.newCondition();
+
+    // Protegidos por lock
+    private int segmentDay;
+    private ByteBuffer pending;
+    private final Deque<Batch> rolledBatches = new ArrayDeque<>();
+    private long firstPendingNanos;
+    private long appendedBytes = 0;
+    private long durableBytes = 0;
+    private boolean flushRequested = false;
+    private boolean closed = false;
+    private IOException failure;
+
+    // Só usados pela thread de escrita
+    private FileChannel channel;
+    private int channelDay = -1;
+    private final Thread flusher;
+
+    // Métricas
+    private final LongAdder records = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder forces = new LongAdder();
+
+    /**
+     * Bytes de um segmento, à espera de serem escritos
+     */
+    private static class Batch {
+        final int segmentDay;
+        final ByteBuffer data;
+
+        Batch(int segmentDay, ByteBuffer data) {
+            this.segmentDay = segmentDay;
+            this.data = data;
+        }
+    }
+
+    /**
+     * Registo lido do log durante a recuperação
+     */
+    public static class Record {
+        public final int day;
+        public final String product;
+        public final long quantity;
+        public final double price;
+        public final long timestamp;
+
+        Record(int day, String product, long quantity, double price, long timestamp) {
+            this.day = day;
+            this.product = product;
+            this.quantity = quantity;
+            this.price = price;
+            this.timestamp = timestamp;
+        }
+    }
+
+    public WriteAheadLog(File dataDir, int currentDay, Durability durability,
+                         long flushIntervalMs, int flushBytes) throws IOException {
+        this.dataDir = dataDir;
+        this.durability = durability;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, flushIntervalMs));
+        this.flushBytes = Math.max(512, flushBytes);
+        this.segmentDay = currentDay;
+        this.pending = ByteBuffer.allocate(this.flushBytes * 2);
+
+        dataDir.mkdirs();
+        openSegment(currentDay);
+        this.flusher = new Thread(this::flushLoop, "wal-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Regista um evento do dia dado
+     */
+    public void append(int day, String product, long quantity, double price, long timestamp) throws IOException {
+        awaitDurable(enqueue(day, product, quantity, price, timestamp));
+    }
+
+    /**
+     * Regista um lote de eventos do dia dado, com uma só espera pelo force
+     */
+    public void appendBatch(int day, EventBatch batch, long timestamp) throws IOException {
+        awaitDurable(enqueueBatch(day, batch, timestamp));
+    }
+
+    /**
+     * Aceita um evento sem esperar pelo force; devolve a posição a passar a awaitDurable
+     */
+    public long enqueue(int day, String product, long quantity, double price, long timestamp) throws IOException {
+        byte[] record = encode(day, product, quantity, price, timestamp);
+        long position;
+        lock.lock();
+        try {
+            position = enqueueRecord(record);
+        } finally {
+            lock.unlock();
+        }
+        records.increment();
+        return position;
+    }
+
+    /**
+     * Aceita um lote sem esperar pelo force; devolve a posição do último registo
+     */
+    public long enqueueBatch(int day, EventBatch batch, long timestamp) throws IOException {
+        byte[][] encoded = new byte[batch.size()][];
+        for (int i = 0; i < batch.size(); i++) {
+            encoded[i] = encode(day, batch.productAt(i), batch.quantityAt(i), batch.priceAt(i), timestamp);
+        }
+        long position = 0;
+        lock.lock();
+        try {
+            for (byte[] record : encoded) {
+                position = enqueueRecord(record);
+            }
+        } finally {
+            lock.unlock();
+        }
+        records.add(encoded.length);
+        return position;
+    }
+
+    // Deve ser chamado com o lock adquirido
+    private long enqueueRecord(byte[] record) throws IOException {
+        if (failure != null) throw new IOException("WAL indisponível", failure);
+        if (closed) throw new IOException("WAL fechado");
+        if (pending.remaining() < record.length) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + record.length));
+            pending.flip();
+            bigger.put(pending);
+            pending = bigger;
+        }
+        if (pending.position() == 0) {
+            firstPendingNanos = System.nanoTime();
+            dataAvailable.signal();
+        }
+        pending.put(record);
+        appendedBytes += record.length;
+        if (pending.position() >= flushBytes) dataAvailable.signal();
+        return appendedBytes;
+    }
+
+    /**
+     * Em sync, espera pelo force que cobre a posição dada; em periodic retorna logo
+     */
+    public void awaitDurable(long position) throws IOException {
+        if (durability != Durability.SYNC || position <= 0) return;
+        lock.lock();
+        try {
+            while (durableBytes < position) {
+                if (failure != null) throw new IOException("WAL indisponível", failure);
+                if (closed && !flusher.isAlive()) throw new IOException("WAL fechado");
+                durable.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Passa a escrever no segmento do novo dia corrente
+     * Os registos já aceites ficam no segmento anterior
+     */
+    public void rollTo(int day) {
+        lock.lock();
+        try {
+            if (pending.position() > 0) {
+                pending.flip();
+                rolledBatches.add(new Batch(segmentDay, pending));
+                pending = ByteBuffer.allocate(flushBytes * 2);
+            }
+            segmentDay = day;
+            flushRequested = true;
+            dataAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Apaga o segmento de um dia cujo ficheiro já está escrito em disco
+     * O segmento corrente nunca é apagado
+     */
+    public void deleteSegmentOf(int day) {
+        int current;
+        lock.lock();
+        try {
+            current = segmentDay;
+        } finally {
+            lock.unlock();
+        }
+        if (day != current) deleteSegment(dataDir, day);
+    }
+
+    private void flushLoop() {
+        while (true) {
+            List<Batch> batches = new ArrayList<>();
+            long target;
+            lock.lock();
+            try {
+                while (pending.position() == 0 && rolledBatches.isEmpty() && !closed) {
+                    dataAvailable.awaitUninterruptibly();
+                }
+                if (pending.position() == 0 && rolledBatches.isEmpty()) return; // fechado e vazio
+                while (!closed && !flushRequested && rolledBatches.isEmpty() && pending.position() < flushBytes) {
+                    long wait = firstPendingNanos + flushIntervalNanos - System.nanoTime();
+                    if (wait <= 0) break;
+                    try {
+                        dataAvailable.awaitNanos(wait);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                }
+                batches.addAll(rolledBatches);
+                rolledBatches.clear();
+                if (pending.position() > 0) {
+                    pending.flip();
+                    batches.add(new Batch(segmentDay, pending));
+                    pending = ByteBuffer.allocate(flushBytes * 2);
+                }
+                flushRequested = false;
+                target = appendedBytes;
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                for (Batch batch : batches) {
+                    if (batch.segmentDay != channelDay) {
+                        channel.force(false);
+                        forces.increment();
+                        openSegment(batch.segmentDay);
+                    }
+                    while (batch.data.hasRemaining()) {
+                        bytesWritten.add(channel.write(batch.data));
+                    }
+                }
+                channel.force(false);
+                forces.increment();
+            } catch (IOException e) {
+                LOG.error("Erro ao escrever WAL: {}", e.getMessage());
+                lock.lock();
+                try {
+                    failure = e;
+                    durable.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                return;
+            }
+
+            lock.lock();
+            try {
+                durableBytes = target;
+                durable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Só chamado no construtor ou pela thread de escrita
+    private void openSegment(int day) throws IOException {
+        if (channel != null) channel.close();
+        File file = segmentFile(dataDir, day);
+        boolean created = !file.exists();
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        channelDay = day;
+        // Um segmento novo só é durável com a sua entrada no diretório
+        if (created) FileSync.forceDirectory(dataDir);
+    }
+
+    /**
+     * Escreve o que estiver pendente e termina a thread de escrita
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            closed = true;
+            dataAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.lock();
+        try {
+            durable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (channel != null) channel.close();
+    }
+
+    public Durability getDurability() { return durability; }
+    public long getRecords() { return records.sum(); }
+    public long getBytesWritten() { return bytesWritten.sum(); }
+    public long getForces() { return forces.sum(); }
+
+    // ---- Formato dos registos e recuperação ----
+
+    private static byte[] encode(int day, String product, long quantity, double price, long timestamp) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(32 + product.length());
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeInt(0); // comprimento, preenchido abaixo
+        out.writeInt(day);
+        out.writeUTF(product);
+        out.writeLong(quantity);
+        out.writeDouble(price);
+        out.writeLong(timestamp);
+        out.writeInt(0); // crc, preenchido abaixo
+        byte[] record = buffer.toByteArray();
+
+        int payloadLength = record.length - 8;
+        CRC32 crc = new CRC32();
+        crc.update(record, 4, payloadLength);
+        ByteBuffer view = ByteBuffer.wrap(record);
+        view.putInt(0, payloadLength);
+        view.putInt(record.length - 4, (int) crc.getValue());
+        return record;
+    }
+
+    /**
+     * Lê todos os registos válidos dos segmentos existentes, por ordem
+     * Um segmento com a cauda incompleta ou corrompida (escrita interrompida)
+     * é truncado no último registo válido.
+     */
+    public static List<Record> readAll(File dataDir) throws IOException {
+        List<Record> result = new ArrayList<>();
+        for (int segment : listSegments(dataDir)) {
+            File file = segmentFile(dataDir, segment);
+            long validLength = 0;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                while (true) {
+                    int payloadLength;
+                    try {
+                        payloadLength = in.readInt();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    if (payloadLength <= 0 || payloadLength > (1 << 20)) break;
+                    byte[] payload = new byte[payloadLength];
+                    int storedCrc;
+                    try {
+                        in.readFully(payload);
+                        storedCrc = in.readInt();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    CRC32 crc = new CRC32();
+                    crc.update(payload);
+                    if ((int) crc.getValue() != storedCrc) break;
+
+                    DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+                    result.add(new Record(record.readInt(), record.readUTF(), record.readLong(),
+                        record.readDouble(), record.readLong()));
+                    validLength += 8 + payloadLength;
+                }
+            }
+            if (validLength < file.length()) {
+                LOG.warn("WAL {} truncado em {} bytes", file.getName(), validLength);
+                try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                    ch.truncate(validLength);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Segmentos existentes, por ordem crescente de dia
+     */
+    public static List<Integer> listSegments(File dataDir) {
+        List<Integer> segments = new ArrayList<>();
+        String[] names = dataDir.list();
+        if (names == null) return segments;
+        for (String name : names) {
+            if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX)) continue;
+            try {
+                segments.add(Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+            } catch (NumberFormatException e) {
+                // Ignorar ficheiros com nomes inesperados
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    public static void deleteSegment(File dataDir, int day) {
+        File file = segmentFile(dataDir, day);
+        if (!file.delete() && file.exists()) {
+            LOG.warn("Não foi possível remover {}", file);
+        }
+    }
+
+    private static File segmentFile(File dataDir, int day) {
+        return new File(dataDir, PREFIX + day + SUFFIX);
+    }
+}
@@ -0,0 +1,181 @@
+package org.example.domain;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class TimeSeriesTest {
+    private static final double EPSILON = 1e-6;
+    private static final int THREADS = 8;
+    private static final int EVENTS_PER_THREAD = 2000;
+    private static final String[] PRODUCTS = {"A", "B", "C", "D", "E", "F", "G"};
+
+    private interface Writer {
+        void write(int thread, int i) throws Exception;
+    }
+
+    private static void runThreads(Writer writer) throws InterruptedException {
+        List<Throwable> errors = new ArrayList<>();
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            threads[t] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < EVENTS_PER_THREAD; i++) {
+                        writer.write(thread, i);
+                    }
+                } catch (Throwable e) {
+                    synchronized (errors) {
+                        errors.add(e);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(errors.toString(), errors.isEmpty());
+    }
+
+    // Evento determinístico da thread; timestamps únicos
+    private static Event event(int thread, int i) {
+        long timestamp = (long) i * THREADS + thread;
+        return new Event(PRODUCTS[(int) (timestamp % PRODUCTS.length)], 1 + (thread + i) % 5,
+            1 + (timestamp % 97) / 4.0, timestamp);
+    }
+
+    // Referência com uma só stripe, escrita por ordem temporal
+    private static TimeSeries reference(List<Event> events) {
+        List<Event> sorted = new ArrayList<>(events);
+        sorted.sort(Comparator.comparingLong(Event::getTimestamp));
+        TimeSeries reference = new TimeSeries(0, null, 1);
+        for (Event event : sorted) {
+            reference.addEvent(event);
+        }
+        return reference;
+    }
+
+    @Test
+    public void concurrentWritesMatchASingleStripeReference() throws InterruptedException {
+        TimeSeries series = new TimeSeries(0, null, THREADS);
+        List<Event> written = new ArrayList<>();
+        runThreads((thread, i) -> {
+            Event event = event(thread, i);
+            assertTrue(series.addEvent(event));
+            synchronized (written) {
+                written.add(event);
+            }
+        });
+        TimeSeries reference = reference(written);
+
+        assertSameAggregates(reference, series);
+        SealedTimeSeries sealed = series.seal();
+        assertFalse(series.addEvent(event(0, EVENTS_PER_THREAD)));
+        assertSameAggregates(reference, sealed);
+        // Cada stripe está por ordem de escrita; comparam-se os conjuntos
+        assertSameEvents(sortedByTime(reference.getAllEvents()), sortedByTime(sealed.getAllEvents()));
+    }
+
+    @Test
+    public void mergedStripesAreInTimestampOrder() throws InterruptedException {
+        TimeSeries series = new TimeSeries(0, null, THREADS);
+        // Uma thread de cada vez, por ordem de timestamp, para as stripes
+        // ficarem ordenadas mesmo que duas threads partilhem uma stripe
+        Semaphore[] turns = new Semaphore[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            turns[t] = new Semaphore(t == 0 ? 1 : 0);
+        }
+        List<Event> written = new ArrayList<>();
+        runThreads((thread, i) -> {
+            turns[thread].acquire();
+            Event event = event(thread, i);
+            assertTrue(series.addEvent(event));
+            written.add(event);
+            turns[(thread + 1) % THREADS].release();
+        });
+        TimeSeries reference = reference(written);
+        List<Event> expected = reference.getAllEvents();
+
+        assertSameEvents(expected, series.getAllEvents());
+        Set<String> some = Set.of("A", "C", "G", "unknown");
+        assertSameCursor(reference.openCursor(some), series.openCursor(some));
+        assertSameCursor(reference.openCursor(Set.of(PRODUCTS)), series.openCursor(Set.of(PRODUCTS)));
+
+        SealedTimeSeries sealed = series.seal();
+        assertSameEvents(expected, sealed.getAllEvents());
+        assertSameCursor(reference.openCursor(some), sealed.openCursor(some));
+        assertSameAggregates(reference, sealed);
+    }
+
+    private static List<Event> sortedByTime(List<Event> events) {
+        List<Event> sorted = new ArrayList<>(events);
+        sorted.sort(Comparator.comparingLong(Event::getTimestamp));
+        return sorted;
+    }
+
+    private static void assertSameEvents(List<Event> expected, List<Event> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Event e = expected.get(i);
+            Event a = actual.get(i);
+            assertEquals("timestamp " + i, e.getTimestamp(), a.getTimestamp());
+            assertEquals(e.getProductName(), a.getProductName());
+            assertEquals(e.getQuantity(), a.getQuantity());
+            assertEquals(e.getPrice(), a.getPrice(), 0.0);
+        }
+    }
+
+    private static void assertSameCursor(EventCursor expected, EventCursor actual) {
+        List<String> expectedRows = drain(expected);
+        List<String> actualRows = drain(actual);
+        assertEquals(expectedRows.size(), actualRows.size());
+        assertEquals(expectedRows, actualRows);
+    }
+
+    private static List<String> drain(EventCursor cursor) {
+        List<String> rows = new ArrayList<>();
+        while (cursor.hasMore()) {
+            EventBatch batch = cursor.next(100);
+            for (int i = 0; i < batch.size(); i++) {
+                rows.add(batch.productAt(i) + " " + batch.quantityAt(i) + " " + batch.priceAt(i));
+            }
+        }
+        return rows;
+    }
+
+    private static void assertSameAggregates(DaySeries expected, DaySeries actual) {
+        for (String product : PRODUCTS) {
+            assertEquals(product, expected.calculateQuantity(product, 0, 0), actual.calculateQuantity(product, 0, 0));
+            assertEquals(product, expected.calculateVolume(product, 0, 0),
+                actual.calculateVolume(product, 0, 0), EPSILON);
+            AggregationResult.PriceStats e = expected.calculatePriceStats(product, 0, 0);
+            AggregationResult.PriceStats a = actual.calculatePriceStats(product, 0, 0);
+            assertEquals(product, e.average, a.average, EPSILON);
+            assertEquals(product, e.maximum, a.maximum, 0.0);
+        }
+        Map<String, double[]> expectedTotals = totals(expected);
+        Map<String, double[]> actualTotals = totals(actual);
+        assertEquals(expectedTotals.keySet(), actualTotals.keySet());
+        for (Map.Entry<String, double[]> entry : expectedTotals.entrySet()) {
+            double[] e = entry.getValue();
+            double[] a = actualTotals.get(entry.getKey());
+            for (int k = 0; k < e.length; k++) {
+                assertEquals(entry.getKey(), e[k], a[k], EPSILON);
+            }
+        }
+    }
+
+    private static Map<String, double[]> totals(DaySeries series) {
+        Map<String, double[]> totals = new HashMap<>();
+        series.forEachProduct((product, quantity, volume, averagePrice, maxPrice) ->
+            totals.put(product, new double[] {quantity, volume, averagePrice, maxPrice}));
+        return totals;
+    }
+}
@@ -0,0 +1,111 @@
+package org.example.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class LookbackIndexTest {
+    private static final double EPSILON = 1e-9;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ProductDictionary products;
+    private LookbackIndex index;
+
+    @Before
+    public void setUp() throws IOException {
+        products = ProductDictionary.open(folder.newFolder());
+        index = new LookbackIndex(products);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        products.close();
+    }
+
+    // Resumo de um dia com um só produto; o preço médio é o volume por unidade
+    private static DayManifest.Entry day(int day, String product, long quantity, double volume, double maxPrice) {
+        double average = quantity > 0 ? volume / quantity : 0;
+        return new DayManifest.Entry(day, "day_" + day + ".tsd", new DayFile.Layout(0, 0, 0), 1,
+            new String[] {product}, new long[] {quantity}, new double[] {volume},
+            new double[] {average}, new double[] {maxPrice});
+    }
+
+    @Test
+    public void rangeTotalsMatchTheDaysInTheRange() throws IOException {
+        for (int d = 0; d < 10; d++) {
+            index.indexDay(day(d, "A", d + 1, 10.0 * (d + 1), d + 1));
+        }
+        int a = products.idOf("A");
+
+        LookbackIndex.Totals totals = index.query(a, 2, 5);
+        assertEquals(3 + 4 + 5 + 6, totals.quantity);
+        assertEquals(180.0, totals.volume, EPSILON);
+        assertEquals(4 * 10.0, totals.averagePriceSum, EPSILON);
+        assertEquals(4, totals.daysWithSales);
+        assertEquals(6.0, totals.maxPrice, 0.0);
+
+        assertEquals(55, index.query(a, -100, 100).quantity);
+        assertEquals(1, index.query(a, 0, 0).quantity);
+        assertEquals(0, index.query(a, 10, 20).quantity);
+        assertEquals(0, index.query(a, 5, 4).quantity);
+    }
+
+    @Test
+    public void daysWithoutSalesOfTheProductAreSkipped() throws IOException {
+        for (int d = 0; d < 10; d += 2) {
+            index.indexDay(day(d, "B", 1, 5.0, 5.0 + d));
+        }
+        int b = products.idOf("B");
+
+        assertEquals(0, index.query(b, 1, 1).quantity);
+        assertEquals(0.0, index.query(b, 1, 1).maxPrice, 0.0);
+        LookbackIndex.Totals totals = index.query(b, 1, 5);
+        assertEquals(2, totals.quantity);
+        assertEquals(2, totals.daysWithSales);
+        assertEquals(9.0, totals.maxPrice, 0.0);
+    }
+
+    @Test
+    public void unknownProductHasNoTotals() {
+        assertEquals(0, index.query(-1, 0, 10).quantity);
+        assertEquals(0, index.query(12345, 0, 10).quantity);
+    }
+
+    @Test
+    public void rangeMaximumMatchesBruteForce() throws IOException {
+        // Dias suficientes para vários níveis da sparse table e para os arrays crescerem
+        int days = 150;
+        Random random = new Random(42);
+        double[] max = new double[days];
+        long[] quantity = new long[days];
+        for (int d = 0; d < days; d++) {
+            quantity[d] = 1 + random.nextInt(20);
+            max[d] = 1 + random.nextInt(1000) / 10.0;
+            index.indexDay(day(d, "C", quantity[d], quantity[d] * max[d] / 2, max[d]));
+        }
+        int c = products.idOf("C");
+
+        for (int from = 0; from < days; from++) {
+            for (int to = from; to < days; to++) {
+                double expectedMax = 0;
+                long expectedQuantity = 0;
+                for (int d = from; d <= to; d++) {
+                    expectedMax = Math.max(expectedMax, max[d]);
+                    expectedQuantity += quantity[d];
+                }
+                LookbackIndex.Totals totals = index.query(c, from, to);
+                assertEquals("máximo em [" + from + ", " + to + "]", expectedMax, totals.maxPrice, 0.0);
+                assertEquals(expectedQuantity, totals.quantity);
+                assertEquals(to - from + 1, totals.daysWithSales);
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package org.example.server;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class NotificationManagerTest {
+    // Dicionário de produtos em memória, no lugar de ProductDictionary
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private final List<String> names = new CopyOnWriteArrayList<>();
+
+    private NotificationManager manager;
+
+    @Before
+    public void setUp() {
+        ids.clear();
+        names.clear();
+        manager = new NotificationManager(this::nameOf, name -> ids.getOrDefault(name, -1));
+    }
+
+    private String nameOf(int id) {
+        return id < names.size() ? names.get(id) : null;
+    }
+
+    private int intern(String name) {
+        return ids.computeIfAbsent(name, n -> {
+            names.add(n);
+            return names.size() - 1;
+        });
+    }
+
+    private void sell(String name) {
+        manager.recordSale(intern(name));
+    }
+
+    @Test
+    public void simultaneousWaiterWakesOnlyForItsOwnProducts() {
+        int a = intern("A");
+        int b = intern("B");
+        CompletableFuture<Boolean> waiter = manager.onSimultaneousSales(a, b);
+
+        sell("C");
+        assertFalse(waiter.isDone());
+        sell("A");
+        sell("A");
+        assertFalse(waiter.isDone());
+        sell("B");
+        assertTrue(waiter.getNow(false));
+        assertEquals(0, manager.waiting());
+    }
+
+    @Test
+    public void consecutiveWaiterWakesOnlyAtItsThreshold() {
+        CompletableFuture<String> three = manager.onConsecutiveSales(3);
+        CompletableFuture<String> five = manager.onConsecutiveSales(5);
+
+        sell("A");
+        sell("A");
+        sell("B");
+        sell("B");
+        assertFalse(three.isDone());
+        sell("B");
+        assertEquals("B", three.getNow(null));
+        assertFalse(five.isDone());
+        assertEquals(1, manager.waiting());
+
+        // Já atingido no dia: completa logo
+        assertEquals("B", manager.onConsecutiveSales(2).getNow(null));
+    }
+
+    @Test
+    public void pendingNameWaiterRacingWithTheFirstSaleIsCountedOnce() throws Exception {
+        CyclicBarrier start = new CyclicBarrier(2);
+        for (int i = 0; i < 10000; i++) {
+            setUp();
+            String product = "X" + i;
+            Thread seller = new Thread(() -> {
+                try {
+                    start.await();
+                    sell(product);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            seller.start();
+            start.await();
+            // Y nunca vende: se a venda de X contar duas vezes, a espera completa
+            CompletableFuture<Boolean> waiter = manager.onSimultaneousSales(product, "Y");
+            seller.join();
+
+            assertFalse("iteração " + i, waiter.isDone());
+            sell("Y");
+            assertTrue("iteração " + i, waiter.getNow(false));
+        }
+    }
+
+    @Test
+    public void timeoutDeregistersTheWaiter() throws Exception {
+        int a = intern("A");
+        CompletableFuture<Boolean> byId = manager.onSimultaneousSales(a, intern("B"));
+        CompletableFuture<Boolean> byName = manager.onSimultaneousSales("A", "Z");
+        CompletableFuture<String> consecutive = manager.onConsecutiveSales(10);
+        assertEquals(3, manager.waiting());
+
+        byId.orTimeout(10, TimeUnit.MILLISECONDS);
+        byName.orTimeout(10, TimeUnit.MILLISECONDS);
+        consecutive.orTimeout(10, TimeUnit.MILLISECONDS);
+        // A limpeza corre na thread que expira a espera
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (manager.waiting() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(byId.isCompletedExceptionally());
+        assertTrue(byName.isCompletedExceptionally());
+        assertTrue(consecutive.isCompletedExceptionally());
+        assertEquals(0, manager.waiting());
+    }
+
+    @Test
+    public void resetCompletesWaitersOfTheEndedDay() {
+        int a = intern("A");
+        CompletableFuture<Boolean> byId = manager.onSimultaneousSales(a, intern("B"));
+        CompletableFuture<Boolean> byName = manager.onSimultaneousSales("P", "Q");
+        CompletableFuture<String> consecutive = manager.onConsecutiveSales(2);
+        sell("A");
+
+        manager.reset();
+        assertFalse(byId.getNow(true));
+        assertFalse(byName.getNow(true));
+        assertTrue(consecutive.isDone());
+        assertNull(consecutive.getNow("?"));
+        assertEquals(0, manager.waiting());
+
+        // As vendas do dia anterior não contam no novo dia
+        CompletableFuture<Boolean> next = manager.onSimultaneousSales(a, intern("B"));
+        sell("B");
+        assertFalse(next.isDone());
+        sell("A");
+        assertTrue(next.getNow(false));
+    }
+}
@@ -0,0 +1,126 @@
+package org.example.server;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class TimeSeriesServerManifestTest {
+    private static final double EPSILON = 1e-9;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static TimeSeriesServer open(File dir, int maxSeriesInMemory) throws IOException {
+        return new TimeSeriesServer(0, 30, maxSeriesInMemory, ExecutionMode.NIO, dir);
+    }
+
+    // Dias 0 e 1 fechados, dia 2 corrente
+    private static void populate(TimeSeriesServer server) throws IOException {
+        server.addEvent("A", 2, 10.0);
+        server.addEvent("B", 1, 5.0);
+        server.nextDay();
+        server.addEvent("A", 3, 20.0);
+        server.nextDay();
+        server.addEvent("A", 4, 1.0);
+        server.addEvent("B", 2, 2.0);
+    }
+
+    private static void assertPopulated(TimeSeriesServer server) {
+        assertEquals(2, server.getCurrentDay());
+        assertEquals(4, server.getQuantity("A", 0));
+        assertEquals(9, server.getQuantity("A", 2));
+        assertEquals(3, server.getQuantity("B", 2));
+        assertEquals(2 * 10.0 + 3 * 20.0 + 4 * 1.0, server.getVolume("A", 2), EPSILON);
+        assertEquals(20.0, server.getPriceStats("A", 2).maximum, 0.0);
+    }
+
+    private static void append(File file, byte[] bytes) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(bytes);
+        }
+    }
+
+    @Test
+    public void currentDayIsInTheManifestWhenNextDayReturns() throws IOException {
+        File dir = folder.newFolder();
+        TimeSeriesServer server = open(dir, 1);
+        try {
+            for (int i = 0; i < 10000; i++) {
+                server.addEvent("A", 1, 1.0);
+            }
+            server.nextDay();
+            server.nextDay();
+            // Lido do disco sem parar o servidor, como depois de uma falha
+            assertEquals(2, DayManifest.load(dir).getCurrentDay());
+        } finally {
+            server.closeStorage();
+        }
+    }
+
+    @Test
+    public void tornManifestLogTailIsIgnored() throws IOException {
+        File dir = folder.newFolder();
+        TimeSeriesServer server = open(dir, 1);
+        populate(server);
+        server.closeStorage();
+
+        // Registo incompleto no fim do log do manifesto
+        append(new File(dir, "manifest.log"), new byte[] {0, 0, 0, 9, 1, 0});
+
+        server = open(dir, 1);
+        try {
+            assertPopulated(server);
+            server.nextDay();
+        } finally {
+            server.closeStorage();
+        }
+
+        // Os registos seguintes ficam a seguir ao último válido
+        server = open(dir, 1);
+        try {
+            assertEquals(3, server.getCurrentDay());
+            assertEquals(9, server.getQuantity("A", 3));
+        } finally {
+            server.closeStorage();
+        }
+    }
+
+    @Test
+    public void lostManifestIsRebuiltFromTheDayFiles() throws IOException {
+        File dir = folder.newFolder();
+        TimeSeriesServer server = open(dir, 1);
+        populate(server);
+        server.closeStorage();
+
+        assertTrue(new File(dir, "manifest.dat").delete());
+        new File(dir, "manifest.log").delete();
+
+        server = open(dir, 1);
+        try {
+            assertPopulated(server);
+        } finally {
+            server.closeStorage();
+        }
+    }
+
+    @Test
+    public void corruptedManifestIsRebuiltFromTheDayFiles() throws IOException {
+        File dir = folder.newFolder();
+        TimeSeriesServer server = open(dir, 1);
+        populate(server);
+        server.closeStorage();
+
+        append(new File(dir, "manifest.dat"), new byte[] {1});
+
+        server = open(dir, 1);
+        try {
+            assertPopulated(server);
+        } finally {
+            server.closeStorage();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package org.example.server;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class TimeSeriesServerRecoveryTest {
+    private static final double EPSILON = 1e-9;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static TimeSeriesServer open(File dir, int maxSeriesInMemory) throws IOException {
+        return new TimeSeriesServer(0, 30, maxSeriesInMemory, ExecutionMode.NIO, dir);
+    }
+
+    // Dias 0 e 1 fechados, dia 2 corrente
+    private static void populate(TimeSeriesServer server) throws IOException {
+        server.addEvent("A", 2, 10.0);
+        server.addEvent("B", 1, 5.0);
+        server.nextDay();
+        server.addEvent("A", 3, 20.0);
+        server.nextDay();
+        server.addEvent("A", 4, 1.0);
+        server.addEvent("B", 2, 2.0);
+    }
+
+    private static void assertPopulated(TimeSeriesServer server) {
+        assertEquals(2, server.getCurrentDay());
+        assertEquals(4, server.getQuantity("A", 0));
+        assertEquals(9, server.getQuantity("A", 2));
+        assertEquals(3, server.getQuantity("B", 2));
+        assertEquals(2 * 10.0 + 3 * 20.0 + 4 * 1.0, server.getVolume("A", 2), EPSILON);
+        assertEquals(20.0, server.getPriceStats("A", 2).maximum, 0.0);
+    }
+
+    private static void append(File file, byte[] bytes) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(bytes);
+        }
+    }
+
+    @Test
+    public void closedDaysComeFromTheManifestAndTheLiveDayFromTheWal() throws IOException {
+        File dir = folder.newFolder();
+        // Só o dia corrente em memória: os dias fechados são escritos em disco
+        TimeSeriesServer server = open(dir, 1);
+        populate(server);
+        server.closeStorage();
+        assertTrue(new File(dir, "day_0.tsd").exists());
+        assertTrue(new File(dir, "day_1.tsd").exists());
+        assertEquals(List.of(2), WriteAheadLog.listSegments(dir));
+
+        server = open(dir, 1);
+        try {
+            assertPopulated(server);
+        } finally {
+            server.closeStorage();
+        }
+    }
+
+    @Test
+    public void closedDaysOnlyInTheWalAreReplayedAndWritten() throws IOException {
+        File dir = folder.newFolder();
+        // Janela grande: nenhum dia chega a ser escrito antes de parar
+        TimeSeriesServer server = open(dir, 10);
+        populate(server);
+        server.closeStorage();
+        assertFalse(new File(dir, "day_0.tsd").exists());
+
+        server = open(dir, 10);
+        try {
+            assertPopulated(server);
+        } finally {
+            server.closeStorage();
+        }
+        assertTrue(new File(dir, "day_0.tsd").exists());
+        assertTrue(new File(dir, "day_1.tsd").exists());
+        assertEquals(List.of(2), WriteAheadLog.listSegments(dir));
+    }
+
+    @Test
+    public void tornWalTailIsIgnored() throws IOException {
+        File dir = folder.newFolder();
+        TimeSeriesServer server = open(dir, 1);
+        populate(server);
+        server.closeStorage();
+
+        // Registo incompleto no fim do WAL
+        append(new File(dir, "wal_2.log"), new byte[] {0, 0, 0, 40, 0, 0, 0, 2, 0});
+
+        server = open(dir, 1);
+        try {
+            assertPopulated(server);
+            server.addEvent("A", 1, 1.0);
+            assertEquals(5, server.getQuantity("A", 0));
+        } finally {
+            server.closeStorage();
+        }
+
+        server = open(dir, 1);
+        try {
+            assertEquals(5, server.getQuantity("A", 0));
+            assertEquals(10, server.getQuantity("A", 2));
+        } finally {
+            server.closeStorage();
+        }
+    }
+}
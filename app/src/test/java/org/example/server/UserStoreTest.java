@@ -0,0 +1,125 @@
+package org.example.server;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class UserStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static String content(File dir) throws IOException {
+        return new String(Files.readAllBytes(new File(dir, "users.dat").toPath()), StandardCharsets.UTF_8);
+    }
+
+    private static void append(File dir, String text) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(new File(dir, "users.dat"), true)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    // Fecha o canal por baixo do UserStore: a próxima escrita falha
+    private static void failNextWrite(UserStore store) throws Exception {
+        Field channel = UserStore.class.getDeclaredField("channel");
+        channel.setAccessible(true);
+        ((FileChannel) channel.get(store)).close();
+    }
+
+    @Test
+    public void concurrentRegistrationsOfOneNameHaveOneWinner() throws Exception {
+        File dir = folder.newFolder();
+        int threads = 16;
+        CyclicBarrier start = new CyclicBarrier(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (UserStore store = UserStore.open(dir)) {
+            for (int round = 0; round < 20; round++) {
+                String name = "user" + round;
+                List<Future<Boolean>> results = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    String hash = "hash" + t;
+                    results.add(executor.submit(() -> {
+                        start.await();
+                        return store.register(name, hash);
+                    }));
+                }
+                int winners = 0;
+                for (Future<Boolean> result : results) {
+                    if (result.get()) winners++;
+                }
+                assertEquals(name, 1, winners);
+                assertNotNull(store.get(name));
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // Uma só linha por nome
+        String[] lines = content(dir).split("\n");
+        assertEquals(20, lines.length);
+        try (UserStore reopened = UserStore.open(dir)) {
+            assertEquals(20, reopened.size());
+        }
+    }
+
+    @Test
+    public void tornLastLineIsDroppedOnOpen() throws IOException {
+        File dir = folder.newFolder();
+        append(dir, "ana:h1\nrui:h2\nzeca:h");
+
+        try (UserStore store = UserStore.open(dir)) {
+            assertEquals(2, store.size());
+            assertEquals("h2", store.get("rui").getPasswordHash());
+            assertNull(store.get("zeca"));
+            // Compactado: a nova linha não fica colada à incompleta
+            assertEquals("ana:h1\nrui:h2\n".length(), content(dir).length());
+            assertTrue(store.register("zeca", "h3"));
+        }
+
+        try (UserStore store = UserStore.open(dir)) {
+            assertEquals(3, store.size());
+            assertEquals("h3", store.get("zeca").getPasswordHash());
+        }
+    }
+
+    @Test
+    public void failedWriteIsTruncatedByTheNextOne() throws Exception {
+        File dir = folder.newFolder();
+        try (UserStore store = UserStore.open(dir)) {
+            assertTrue(store.register("ana", "h1"));
+
+            // Restos de uma escrita interrompida a meio, seguidos de uma falha
+            append(dir, "rui:meia-lin");
+            failNextWrite(store);
+            try {
+                store.register("rui", "h2");
+                fail("a escrita devia ter falhado");
+            } catch (IOException expected) {
+                // O registo falhado não fica reservado nem publicado
+            }
+            assertNull(store.get("rui"));
+
+            assertTrue(store.register("rui", "h3"));
+            assertTrue(store.register("zeca", "h4"));
+        }
+
+        assertEquals("ana:h1\nrui:h3\nzeca:h4\n", content(dir));
+        try (UserStore store = UserStore.open(dir)) {
+            assertEquals(3, store.size());
+            assertEquals("h3", store.get("rui").getPasswordHash());
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package org.example.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class WriteAheadLogTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static WriteAheadLog open(File dir, int day) throws IOException {
+        return new WriteAheadLog(dir, day, WriteAheadLog.Durability.SYNC, 1, 4096);
+    }
+
+    @Test
+    public void readAllReturnsRecordsOfEverySegmentInOrder() throws IOException {
+        File dir = folder.newFolder();
+        try (WriteAheadLog wal = open(dir, 0)) {
+            wal.append(0, "A", 1, 10.0, 100);
+            wal.append(0, "B", 2, 20.0, 101);
+            wal.rollTo(1);
+            wal.append(1, "A", 3, 30.0, 102);
+        }
+
+        List<WriteAheadLog.Record> records = WriteAheadLog.readAll(dir);
+        assertEquals(List.of(0, 1), WriteAheadLog.listSegments(dir));
+        assertEquals(3, records.size());
+        assertRecord(records.get(0), 0, "A", 1, 10.0, 100);
+        assertRecord(records.get(1), 0, "B", 2, 20.0, 101);
+        assertRecord(records.get(2), 1, "A", 3, 30.0, 102);
+    }
+
+    @Test
+    public void readAllTruncatesTornTail() throws IOException {
+        File dir = folder.newFolder();
+        try (WriteAheadLog wal = open(dir, 0)) {
+            wal.append(0, "A", 1, 10.0, 100);
+            wal.append(0, "A", 2, 20.0, 101);
+        }
+        File segment = new File(dir, "wal_0.log");
+        long complete = segment.length();
+        long firstRecord = complete / 2;
+
+        // Escrita interrompida a meio do segundo registo
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.setLength(complete - 5);
+        }
+        List<WriteAheadLog.Record> records = WriteAheadLog.readAll(dir);
+        assertEquals(1, records.size());
+        assertRecord(records.get(0), 0, "A", 1, 10.0, 100);
+        assertEquals(firstRecord, segment.length());
+
+        // Os registos seguintes ficam a seguir ao último válido
+        try (WriteAheadLog wal = open(dir, 0)) {
+            wal.append(0, "B", 3, 30.0, 102);
+        }
+        records = WriteAheadLog.readAll(dir);
+        assertEquals(2, records.size());
+        assertRecord(records.get(1), 0, "B", 3, 30.0, 102);
+    }
+
+    @Test
+    public void readAllStopsAtCorruptedRecord() throws IOException {
+        File dir = folder.newFolder();
+        try (WriteAheadLog wal = open(dir, 0)) {
+            wal.append(0, "A", 1, 10.0, 100);
+            wal.append(0, "A", 2, 20.0, 101);
+            wal.append(0, "A", 3, 30.0, 102);
+        }
+        File segment = new File(dir, "wal_0.log");
+        long recordLength = segment.length() / 3;
+
+        // Um byte trocado no segundo registo invalida o seu CRC
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            long position = recordLength + 10;
+            file.seek(position);
+            int value = file.read();
+            file.seek(position);
+            file.write(value ^ 0xFF);
+        }
+        List<WriteAheadLog.Record> records = WriteAheadLog.readAll(dir);
+        assertEquals(1, records.size());
+        assertRecord(records.get(0), 0, "A", 1, 10.0, 100);
+        assertEquals(recordLength, segment.length());
+    }
+
+    @Test
+    public void readAllIgnoresInvalidLength() throws IOException {
+        File dir = folder.newFolder();
+        try (WriteAheadLog wal = open(dir, 0)) {
+            wal.append(0, "A", 1, 10.0, 100);
+        }
+        File segment = new File(dir, "wal_0.log");
+        long valid = segment.length();
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.seek(valid);
+            file.writeInt(-1);
+            file.write(new byte[16]);
+        }
+        assertEquals(1, WriteAheadLog.readAll(dir).size());
+        assertEquals(valid, segment.length());
+    }
+
+    private static void assertRecord(WriteAheadLog.Record record, int day, String product,
+                                     long quantity, double price, long timestamp) {
+        assertEquals(day, record.day);
+        assertEquals(product, record.product);
+        assertEquals(quantity, record.quantity);
+        assertEquals(price, record.price, 0.0);
+        assertEquals(timestamp, record.timestamp);
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Benchmarks JMH dos caminhos quentes do servidor.
+ *
+ * ./gradlew :jmh:jmh                              corre todos
+ * ./gradlew :jmh:jmh -PjmhIncludes=Aggregation    só os que contêm o padrão
+ *
+ * Os resultados ficam em jmh/build/results/jmh/results.json.
+ */
+
+plugins {
+    java
+    alias(libs.plugins.jmh)
+}
+
+repositories {
+    mavenCentral()
+}
+
+dependencies {
+    jmh(project(":app"))
+}
+
+java {
+    toolchain {
+        languageVersion = JavaLanguageVersion.of(21)
+    }
+    sourceCompatibility = JavaVersion.VERSION_21
+    targetCompatibility = JavaVersion.VERSION_21
+}
+
+jmh {
+    jmhVersion = libs.versions.jmh.get()
+    resultFormat = "JSON"
+    resultsFile = layout.buildDirectory.file("results/jmh/results.json")
+    providers.gradleProperty("jmhIncludes").orNull?.let { includes = listOf(it) }
+}
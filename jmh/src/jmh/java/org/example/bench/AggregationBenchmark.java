@@ -0,0 +1,55 @@
+package org.example.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.example.domain.AggregationResult;
+import org.example.domain.DaySeries;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Quantidade, volume e estatísticas de preço de um produto num dia
+ * Mede o dia corrente (em stripes) e o dia fechado (SealedTimeSeries)
+ * para vários tamanhos de dia e números de produtos.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AggregationBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int events;
+
+    @Param({"10", "10000"})
+    public int products;
+
+    @Param({"live", "sealed"})
+    public String kind;
+
+    private DaySeries series;
+    private String product;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String[] names = Workload.products(products);
+        series = kind.equals("sealed")
+            ? Workload.sealedDay(0, events, names)
+            : Workload.day(0, events, names);
+        product = names[names.length / 2];
+    }
+
+    @Benchmark
+    public long quantity() {
+        return series.calculateQuantity(product, 0, 0);
+    }
+
+    @Benchmark
+    public double volume() {
+        return series.calculateVolume(product, 0, 0);
+    }
+
+    @Benchmark
+    public AggregationResult.PriceStats priceStats() {
+        return series.calculatePriceStats(product, 0, 0);
+    }
+}
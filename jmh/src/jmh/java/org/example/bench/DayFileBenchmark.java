@@ -0,0 +1,74 @@
+package org.example.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.example.domain.SealedTimeSeries;
+import org.example.server.DayFile;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Escrita e leitura de um dia fechado em disco
+ * São as operações por trás de persistSeries / loadSeries do servidor,
+ * sem a atualização do manifesto.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DayFileBenchmark {
+    @Param({"10000", "1000000"})
+    public int events;
+
+    @Param({"100"})
+    public int products;
+
+    private File dir;
+    private File written;
+    private File mapped;
+    private SealedTimeSeries series;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("jmh-dayfile").toFile();
+        series = Workload.sealedDay(0, events, Workload.products(products));
+        written = DayFile.fileFor(dir, 0);
+        mapped = DayFile.fileFor(dir, 1);
+        DayFile.write(mapped, series);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public DayFile.Layout write() throws IOException {
+        return DayFile.write(written, series);
+    }
+
+    /**
+     * Mapeia o ficheiro e lê um agregado, como numa consulta a um dia frio
+     */
+    @Benchmark
+    public long mapAndQuery() throws IOException {
+        return DayFile.map(mapped).calculateQuantity("produto-0", 0, 0);
+    }
+
+    /**
+     * Mapeia o ficheiro e percorre todos os eventos
+     */
+    @Benchmark
+    public int mapAndScan() throws IOException {
+        return DayFile.map(mapped).getAllEvents().size();
+    }
+}
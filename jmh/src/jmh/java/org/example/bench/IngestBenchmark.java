@@ -0,0 +1,84 @@
+package org.example.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.example.domain.EventBatch;
+import org.example.domain.TimeSeries;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Ingestão no dia corrente com 1, 4 e tantas threads quantos os processadores
+ * A série é recriada a cada iteração para não crescer sem limite.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IngestBenchmark {
+    @Param({"16", "1024"})
+    public int products;
+
+    private static final int BATCH_SIZE = 64;
+
+    private String[] names;
+    private EventBatch batch;
+    private TimeSeries series;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() {
+        names = Workload.products(products);
+        int[] productIndex = new int[BATCH_SIZE];
+        long[] quantities = new long[BATCH_SIZE];
+        double[] prices = new double[BATCH_SIZE];
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            productIndex[i] = i % names.length;
+            quantities[i] = 1 + i % 10;
+            prices[i] = 1 + i;
+        }
+        batch = new EventBatch(names, productIndex, quantities, prices);
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpIteration() {
+        series = new TimeSeries(0);
+    }
+
+    /**
+     * Produto escolhido por thread, para não medir a geração de aleatórios
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        String product(String[] names) {
+            next = next + 1 == names.length ? 0 : next + 1;
+            return names[next];
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean addEvent1Thread(Cursor cursor) {
+        return series.addEvent(cursor.product(names), 1, 2.5, 0);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean addEvent4Threads(Cursor cursor) {
+        return series.addEvent(cursor.product(names), 1, 2.5, 0);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean addEventMaxThreads(Cursor cursor) {
+        return series.addEvent(cursor.product(names), 1, 2.5, 0);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    @OperationsPerInvocation(BATCH_SIZE)
+    public boolean addEventsBatchMaxThreads() {
+        return series.addEvents(batch, 0);
+    }
+}
@@ -0,0 +1,64 @@
+package org.example.bench;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.example.domain.EventBatch;
+import org.example.protocol.BinaryProtocol;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Codificação de lotes de eventos no formato com dicionário do protocolo
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SerializationBenchmark {
+    @Param({"100", "10000"})
+    public int events;
+
+    @Param({"10", "1000"})
+    public int products;
+
+    private List<Object[]> eventList;
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        String[] names = Workload.products(products);
+        SplittableRandom random = new SplittableRandom(42);
+        eventList = new ArrayList<>(events);
+        for (int i = 0; i < events; i++) {
+            eventList.add(new Object[]{
+                names[random.nextInt(names.length)],
+                (long) (1 + random.nextInt(10)),
+                1 + random.nextDouble(100)
+            });
+        }
+        encoded = serialize();
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + events * 24);
+        DataOutputStream dos = new DataOutputStream(bytes);
+        BinaryProtocol.serializeEvents(dos, eventList);
+        dos.flush();
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public List<Object[]> deserialize() throws IOException {
+        return BinaryProtocol.deserializeEvents(new DataInputStream(new ByteArrayInputStream(encoded)));
+    }
+
+    @Benchmark
+    public EventBatch deserializeBatch() throws IOException {
+        return BinaryProtocol.deserializeEventBatch(new DataInputStream(new ByteArrayInputStream(encoded)));
+    }
+}
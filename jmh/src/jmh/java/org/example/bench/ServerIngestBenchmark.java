@@ -0,0 +1,112 @@
+package org.example.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.example.domain.EventBatch;
+import org.example.server.ExecutionMode;
+import org.example.server.TimeSeriesServer;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Ingestão pelo servidor (TimeSeriesServer.addEvent/addEvents), com o WAL
+ * Ao contrário de IngestBenchmark, inclui o dicionário de produtos, o registo
+ * no WAL e as notificações, por cada modo de durabilidade.
+ * Cada iteração começa um dia novo; o anterior é escrito em segundo plano,
+ * como no servidor.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ServerIngestBenchmark {
+    // Lido pelo servidor ao carregar a classe: cada fork usa um só modo
+    @Param({"off", "periodic", "sync"})
+    public String durability;
+
+    @Param({"16", "1024"})
+    public int products;
+
+    private static final int BATCH_SIZE = 64;
+
+    private File dir;
+    private String[] names;
+    private EventBatch batch;
+    private TimeSeriesServer server;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() throws IOException {
+        System.setProperty("timeseries.wal.durability", durability);
+        dir = Files.createTempDirectory("jmh-ingest").toFile();
+        server = new TimeSeriesServer(0, 30, 1, ExecutionMode.NIO, dir);
+
+        names = Workload.products(products);
+        int[] productIndex = new int[BATCH_SIZE];
+        long[] quantities = new long[BATCH_SIZE];
+        double[] prices = new double[BATCH_SIZE];
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            productIndex[i] = i % names.length;
+            quantities[i] = 1 + i % 10;
+            prices[i] = 1 + i;
+        }
+        batch = new EventBatch(names, productIndex, quantities, prices);
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpIteration() {
+        server.nextDay();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.closeStorage();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    /**
+     * Produto escolhido por thread, para não medir a geração de aleatórios
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        String product(String[] names) {
+            next = next + 1 == names.length ? 0 : next + 1;
+            return names[next];
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void addEvent1Thread(Cursor cursor) throws IOException {
+        server.addEvent(cursor.product(names), 1, 2.5);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void addEvent4Threads(Cursor cursor) throws IOException {
+        server.addEvent(cursor.product(names), 1, 2.5);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void addEventMaxThreads(Cursor cursor) throws IOException {
+        server.addEvent(cursor.product(names), 1, 2.5);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void addEventsBatchMaxThreads() throws IOException {
+        server.addEvents(batch);
+    }
+}
@@ -0,0 +1,40 @@
+package org.example.bench;
+
+import java.util.SplittableRandom;
+import org.example.domain.SealedTimeSeries;
+import org.example.domain.TimeSeries;
+
+/**
+ * Dados sintéticos partilhados pelos benchmarks
+ * Gerados com semente fixa, para que as execuções sejam comparáveis
+ */
+final class Workload {
+    private Workload() {}
+
+    static String[] products(int count) {
+        String[] products = new String[count];
+        for (int i = 0; i < count; i++) {
+            products[i] = "produto-" + i;
+        }
+        return products;
+    }
+
+    /**
+     * Dia com events eventos distribuídos uniformemente pelos produtos
+     */
+    static TimeSeries day(int day, int events, String[] products) {
+        TimeSeries series = new TimeSeries(day);
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < events; i++) {
+            series.addEvent(products[random.nextInt(products.length)],
+                1 + random.nextInt(10), 1 + random.nextDouble(100), i);
+        }
+        return series;
+    }
+
+    static SealedTimeSeries sealedDay(int day, int events, String[] products) {
+        TimeSeries series = day(day, events, products);
+        series.close();
+        return series.seal();
+    }
+}
@@ -12,3 +12,4 @@ plugins {
 
 rootProject.name = "SD2526"
 include("app")
+include("jmh")